@@ -35,8 +35,11 @@ package com.comino.flight;
 
 import java.io.File;
 import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 import java.util.prefs.Preferences;
 
 import org.mavlink.messages.MAV_CMD;
@@ -48,10 +51,15 @@ import com.comino.flight.base.UBXRTCM3Base;
 import com.comino.flight.control.SITLController;
 import com.comino.flight.log.FileHandler;
 import com.comino.flight.log.MavlinkLogReader;
+import com.comino.flight.mavlink.MAVLinkMessageRouter;
+import com.comino.flight.mavlink.MAVLinkRecorder;
+import com.comino.flight.mavlink.MAVLinkReplayer;
+import com.comino.flight.model.AnalysisDataModelMetaData;
 import com.comino.flight.model.service.AnalysisModelService;
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.panel.control.FlightControlPanel;
 import com.comino.flight.parameter.PX4Parameters;
+import com.comino.flight.parameter.ParameterWriter;
 import com.comino.flight.prefs.MAVPreferences;
 import com.comino.flight.prefs.dialog.PreferencesDialog;
 import com.comino.flight.tabs.FlightTabs;
@@ -75,6 +83,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Label;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
 import javafx.scene.image.Image;
@@ -107,6 +116,21 @@ public class MainApp extends Application  {
 	@FXML
 	private MenuItem r_px4log;
 
+	@FXML
+	private MenuItem m_record;
+
+	@FXML
+	private Menu m_replay;
+
+	@FXML
+	private MenuItem m_replay1;
+
+	@FXML
+	private MenuItem m_replay10;
+
+	@FXML
+	private MenuItem m_replay100;
+
 	@FXML
 	private MenuItem m_prefs;
 
@@ -119,6 +143,9 @@ public class MainApp extends Application  {
 	@FXML
 	private MenuBar menubar;
 
+	private MAVLinkRecorder  recorder = null;
+	private MAVLinkReplayer  replayer = null;
+
 
 	public MainApp() {
 		super();
@@ -131,6 +158,10 @@ public class MainApp extends Application  {
 		super.init();
 		try {
 
+			// metadata is parsed in the background while the controller is set up
+			CompletableFuture<Void> metadata = StartupTimer.runAsync("Key figure metadata",
+					AnalysisDataModelMetaData::getInstance);
+
 			FXMLLoadHelper.setApplication(this);
 
 			String peerAddress = null;
@@ -174,22 +205,35 @@ public class MainApp extends Application  {
 			control.enableFileLogging(true,userPrefs.get(MAVPreferences.PREFS_DIR,
 					System.getProperty("user.home"))+"/MAVGCL");
 
+			StartupTimer.mark("Controller");
+
 
 			MSPLogger.getInstance(control);
 
 			StateProperties.getInstance(control);
 
+			MAVLinkMessageRouter.getInstance(control);
+
 			StateProperties.getInstance().getConnectedProperty().addListener((o,ov,nv) -> {
 				if(nv.booleanValue()) {
 	              control.sendMSPLinkCmd(MSP_CMD.MSP_TRANSFER_MICROSLAM);
 				}
 			});
 
+			// loads its metadata in the background
+			PX4Parameters.getInstance(control);
+			ParameterWriter.getInstance(control);
+
+			StartupTimer.mark("Logger, state and MAVLink routing");
+
+			metadata.join();
+			StartupTimer.mark("Wait for key figure metadata");
+
 			AnalysisModelService.getInstance(control);
 
 			UBXRTCM3Base.getInstance(control);
 
-			PX4Parameters.getInstance(control);
+			StartupTimer.mark("Services");
 
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -205,7 +249,10 @@ public class MainApp extends Application  {
 			this.primaryStage.setTitle("MAVGCL Analysis");
 			FileHandler.getInstance(primaryStage,control);
 			initRootLayout();
+			StartupTimer.mark("Toolkit and root layout");
 			showMAVGCLApplication();
+			StartupTimer.mark("Application panels");
+			StartupTimer.report();
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
@@ -314,6 +361,31 @@ public class MainApp extends Application  {
 			}
 		});
 
+		m_record.setOnAction(event -> {
+			if(recorder==null) {
+				recorder = new MAVLinkRecorder();
+				MAVLinkMessageRouter.getInstance().subscribeAll(recorder);
+			}
+			if(recorder.isRecording()) {
+				recorder.stop();
+				m_record.setText("Record MAVLink capture");
+				return;
+			}
+			String path = MAVPreferences.getInstance().get(MAVPreferences.PREFS_DIR,System.getProperty("user.home"));
+			File file = new File(path+"/"+new SimpleDateFormat("ddMMyy-HHmmss'."+MAVLinkRecorder.EXTENSION+"'").format(new Date()));
+			try {
+				recorder.start(file);
+				MSPLogger.getInstance().writeLocalMsg("Recording MAVLink capture to "+file.getName());
+				m_record.setText("Stop MAVLink capture");
+			} catch (IOException e) {
+				System.err.println(this.getClass().getSimpleName()+":"+e.getMessage());
+			}
+		});
+
+		m_replay1.setOnAction(event -> replayCapture(1));
+		m_replay10.setOnAction(event -> replayCapture(10));
+		m_replay100.setOnAction(event -> replayCapture(100));
+
 		m_export.setOnAction(event -> {
 			if(AnalysisModelService.getInstance().getModelList().size()>0)
 				FileHandler.getInstance().fileExport();
@@ -326,6 +398,7 @@ public class MainApp extends Application  {
 
 		m_dump.setOnAction(event -> {
 			AnalysisModelService.getInstance().dumpUlogFields();
+			MAVLinkMessageRouter.getInstance().dumpStatistics();
 		});
 
 		m_about.setOnAction(event -> {
@@ -341,6 +414,20 @@ public class MainApp extends Application  {
 	}
 
 
+	private void replayCapture(float speed) {
+		if(replayer!=null && replayer.isRunning()) {
+			replayer.stop();
+			return;
+		}
+		File file = FileHandler.getInstance().selectCaptureFile();
+		if(file==null)
+			return;
+		MSPLogger.getInstance().writeLocalMsg("Replaying MAVLink capture "+file.getName()+" at "+(int)speed+"x");
+		replayer = new MAVLinkReplayer(file, MAVLinkMessageRouter.getInstance()).setSpeed(speed);
+		replayer.start();
+	}
+
+
 	public void showMAVGCLApplication() {
 
 		try {
@@ -0,0 +1,89 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Measures the phases of the application startup. Phases on the startup thread are taken between
+ * two marks, background phases are measured by their own task.
+ */
+public class StartupTimer {
+
+	private static final List<String> phases = new ArrayList<String>();
+
+	private static long start_ns = System.nanoTime();
+	private static long last_ns  = start_ns;
+
+	/**
+	 * Records the time since the previous mark as phase
+	 */
+	public static synchronized void mark(String phase) {
+		long now = System.nanoTime();
+		phases.add(String.format("  %-36s %6d ms", phase, (now - last_ns) / 1000000));
+		last_ns = now;
+	}
+
+	/**
+	 * Runs the task in the background and records its duration as phase
+	 */
+	public static CompletableFuture<Void> runAsync(String phase, Runnable task) {
+		return supplyAsync(phase, () -> { task.run(); return null; });
+	}
+
+	public static <T> CompletableFuture<T> supplyAsync(String phase, Supplier<T> task) {
+		return CompletableFuture.supplyAsync(() -> {
+			long t = System.nanoTime();
+			T result = task.get();
+			synchronized(StartupTimer.class) {
+				phases.add(String.format("  %-36s %6d ms (background)", phase, (System.nanoTime() - t) / 1000000));
+			}
+			return result;
+		});
+	}
+
+	public static synchronized void report() {
+		System.out.println("Startup phases:");
+		for(String p : phases)
+			System.out.println(p);
+		System.out.println(String.format("  %-36s %6d ms (JVM uptime %d ms)", "Total",
+				(System.nanoTime() - start_ns) / 1000000, ManagementFactory.getRuntimeMXBean().getUptime()));
+		phases.clear();
+	}
+}
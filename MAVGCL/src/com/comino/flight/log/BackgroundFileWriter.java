@@ -0,0 +1,222 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes records to a file from a background thread in large sequential writes. The queue is
+ * bounded: if the writer falls behind, records are dropped instead of filling the heap.
+ * close() does not block; the thread writes the queued records, calls {@link #finish()} and
+ * closes the file. Subclasses add a header in {@link #opened()} and frame records in
+ * {@link #received(byte[])}.
+ */
+public class BackgroundFileWriter implements Runnable {
+
+	private static final long   IDLE_MS = 1000;
+	private static final byte[] EOF     = new byte[0];
+
+	private final BlockingQueue<byte[]> queue;
+	private final ByteBuffer  buffer;
+	private final FileChannel channel;
+	private final File        file;
+	private final Thread      previous;
+	private final Thread      worker;
+
+	private long position = 0;
+
+	private volatile boolean  closing   = false;
+	private volatile Runnable completed = null;
+
+	private volatile long records = 0;
+	private volatile long bytes   = 0;
+	private volatile long dropped = 0;
+
+	/**
+	 * Opens the file. It is truncated by the writer thread once the previous writer, which may
+	 * still be writing the same file, has finished.
+	 * @param previous the preceding writer of the file, may be null
+	 */
+	public BackgroundFileWriter(File file, String name, int buffer_size, int queue_size,
+			BackgroundFileWriter previous) throws IOException {
+		this.channel  = new RandomAccessFile(file, "rw").getChannel();
+		this.file     = file;
+		this.queue    = new ArrayBlockingQueue<byte[]>(queue_size);
+		this.buffer   = ByteBuffer.allocateDirect(buffer_size);
+		this.previous = previous!=null ? previous.worker : null;
+		this.worker   = new Thread(this);
+		worker.setName(name);
+		worker.setDaemon(true);
+	}
+
+	public void start() {
+		worker.start();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getRecordCount() {
+		return records;
+	}
+
+	public long getBytesWritten() {
+		return bytes;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	public boolean isClosing() {
+		return closing;
+	}
+
+	/**
+	 * Queues a record, returns false if it was dropped
+	 */
+	public boolean offer(byte[] record) {
+		if(closing || !queue.offer(record)) {
+			dropped++;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Queues the end of the file and returns; if the queue is full, the writer ends when it is drained
+	 * @param completed run by the writer thread after the file is closed, may be null
+	 */
+	public void close(Runnable completed) {
+		if(closing)
+			return;
+		this.completed = completed;
+		closing = true;
+		queue.offer(EOF);
+	}
+
+	@Override
+	public void run() {
+		try {
+			if(previous!=null)
+				previous.join();
+			channel.truncate(0);
+			opened();
+			while(true) {
+				byte[] record = queue.poll(IDLE_MS, TimeUnit.MILLISECONDS);
+				if(record==EOF)
+					break;
+				if(record==null) {
+					if(closing)
+						break;
+					flush();
+					continue;
+				}
+				received(record);
+				records++;
+			}
+			finish();
+			flush();
+		} catch(Exception e) {
+			System.err.println(this.getClass().getSimpleName()+":"+e.getMessage());
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) { }
+			closed();
+			if(completed!=null)
+				completed.run();
+		}
+	}
+
+	/**
+	 * Called by the writer thread before the first record, e.g. to write a header
+	 */
+	protected void opened() throws IOException {
+	}
+
+	/**
+	 * Called by the writer thread for each queued record
+	 */
+	protected void received(byte[] record) throws IOException {
+		write(ByteBuffer.wrap(record));
+	}
+
+	/**
+	 * Called by the writer thread after the last record, e.g. to write an index
+	 */
+	protected void finish() throws IOException {
+	}
+
+	/**
+	 * Called by the writer thread after the file is closed
+	 */
+	protected void closed() {
+	}
+
+	/**
+	 * @return the file offset of the next write
+	 */
+	protected long getPosition() {
+		return position;
+	}
+
+	protected void write(ByteBuffer data) throws IOException {
+		int length = data.remaining();
+		if(buffer.remaining() < length)
+			flush();
+		if(length > buffer.capacity()) {
+			while(data.hasRemaining())
+				channel.write(data);
+		} else
+			buffer.put(data);
+		position += length; bytes = position;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
@@ -46,7 +46,10 @@ import java.util.Date;
 import java.util.prefs.Preferences;
 
 import com.comino.flight.log.px4log.PX4toModelConverter;
+import com.comino.flight.log.tlog.TlogReader;
+import com.comino.flight.log.tlog.TlogToModelConverter;
 import com.comino.flight.log.ulog.UlogtoModelConverter;
+import com.comino.flight.mavlink.MAVLinkRecorder;
 import com.comino.flight.model.AnalysisDataModel;
 import com.comino.flight.model.service.AnalysisModelService;
 import com.comino.flight.observables.StateProperties;
@@ -115,7 +118,8 @@ public class FileHandler {
 		FileChooser fileChooser = getFileDialog("Open MAVGCL model file...",
 				new ExtensionFilter("MAVGCL Model Files", "*.mgc"),
 				new ExtensionFilter("ULog Files", "*.ulg"),
-				new ExtensionFilter("PX4Log Files", "*.px4log"));
+				new ExtensionFilter("PX4Log Files", "*.px4log"),
+				new ExtensionFilter("MAVLink Telemetry Logs", "*.tlog"));
 
 		File file = fileChooser.showOpenDialog(stage);
 		try {
@@ -147,6 +151,13 @@ public class FileHandler {
 					converter.doConversion();
 					StateProperties.getInstance().getLogLoadedProperty().set(true);
 				}
+				if(file.getName().endsWith("tlog")) {
+					TlogToModelConverter converter = new TlogToModelConverter(new TlogReader(file),modelService.getModelList());
+					converter.doConversion();
+					if(converter.getParameters().size()>0)
+						PX4Parameters.getInstance().setParametersFromLog(converter.getParameters());
+					StateProperties.getInstance().getLogLoadedProperty().set(true);
+				}
 				stage.getScene().setCursor(Cursor.DEFAULT);
 				name = file.getName();
 			}
@@ -187,6 +198,20 @@ public class FileHandler {
 	}
 
 
+	public File selectCaptureFile() {
+		FileChooser fileChooser = getFileDialog("Open MAVLink capture...",
+				new ExtensionFilter("MAVLink Captures", "*."+MAVLinkRecorder.EXTENSION));
+		return fileChooser.showOpenDialog(stage);
+	}
+
+
+	public File selectParameterProfile() {
+		FileChooser fileChooser = getFileDialog("Apply parameter profile...",
+				new ExtensionFilter("Parameter Files", "*.params", "*.txt"));
+		return fileChooser.showOpenDialog(stage);
+	}
+
+
 	public void autoSave() throws IOException {
 		stage.getScene().setCursor(Cursor.WAIT);
 		name = new SimpleDateFormat("ddMMyy-HHmmss'.mgc'").format(new Date());
@@ -51,6 +51,7 @@ import org.mavlink.messages.lquac.msg_log_request_list;
 
 import com.comino.flight.log.px4log.PX4toModelConverter;
 import com.comino.flight.log.ulog.UlogtoModelConverter;
+import com.comino.flight.mavlink.MAVLinkMessageRouter;
 import com.comino.flight.model.service.AnalysisModelService;
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.prefs.MAVPreferences;
@@ -85,7 +86,7 @@ public class MavlinkLogReader implements IMAVLinkListener {
 
 	public MavlinkLogReader(IMAVController control) {
 		this.control = control;
-		this.control.addMAVLinkListener(this);
+		MAVLinkMessageRouter.getInstance(control).subscribe(this, msg_log_entry.class, msg_log_data.class);
 		this.state = StateProperties.getInstance();
 	}
 
@@ -0,0 +1,257 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.log.tlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.mavlink.MAVLinkCRC;
+
+/**
+ * Memory mapped access to MAVLink telemetry logs (tlog). Each record is an 8 byte big endian
+ * timestamp in us followed by a MAVLink 1 or 2 frame.
+ *
+ * A sparse seek index with one entry per INDEX_STEP bytes is built on open, so that
+ * the file can be split into independently decodable chunks and seeked by time.
+ */
+public class TlogReader {
+
+	public static final int INDEX_STEP = 256 * 1024;
+
+	private static final long MAX_SPAN_US = 7L * 24 * 3600 * 1000000;
+
+	private final MappedByteBuffer buffer;
+	private final int size;
+
+	private int[]  index_offset = new int[0];
+	private long[] index_tms    = new long[0];
+
+	private long tms_start = -1;
+	private long tms_end   = -1;
+
+
+	public TlogReader(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("tlog too large: "+file.getName());
+			this.size   = (int)channel.size();
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			this.buffer.order(ByteOrder.BIG_ENDIAN);
+		}
+		buildIndex();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getStartMicroseconds() {
+		return tms_start;
+	}
+
+	public long getSizeMicroseconds() {
+		return tms_end - tms_start;
+	}
+
+	/**
+	 * @return number of entries in the sparse seek index
+	 */
+	public int getIndexSize() {
+		return index_offset.length;
+	}
+
+	public int getIndexOffset(int i) {
+		return index_offset[i];
+	}
+
+	/**
+	 * @return offset of the last indexed record at or before the given log time
+	 */
+	public int seek(long tms_us) {
+		int lo = 0, hi = index_tms.length - 1, res = 0;
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if(index_tms[mid] - tms_start <= tms_us) {
+				res = mid; lo = mid + 1;
+			} else
+				hi = mid - 1;
+		}
+		return index_offset.length > 0 ? index_offset[res] : 0;
+	}
+
+	public long getTimestamp(int offset) {
+		return buffer.getLong(offset);
+	}
+
+	/**
+	 * @return length of the record at offset or -1 if there is no valid record
+	 */
+	public int getRecordLength(int offset) {
+		if(offset + 8 + 8 > size)
+			return -1;
+		int frame = getFrameLength(offset + 8);
+		if(frame < 0 || offset + 8 + frame > size)
+			return -1;
+		return 8 + frame;
+	}
+
+	/**
+	 * @return 1 or 2 for MAVLink 1 or MAVLink 2 frames
+	 */
+	public int getProtocolVersion(int offset) {
+		return (buffer.get(offset + 8) & 0xFF) == 0xFD ? 2 : 1;
+	}
+
+	public int getMessageId(int offset) {
+		int p = offset + 8;
+		if(getProtocolVersion(offset)==2)
+			return (buffer.get(p+7) & 0xFF) | (buffer.get(p+8) & 0xFF) << 8 | (buffer.get(p+9) & 0xFF) << 16;
+		return buffer.get(p+5) & 0xFF;
+	}
+
+	public int getSystemId(int offset) {
+		return buffer.get(offset + 8 + (getProtocolVersion(offset)==2 ? 5 : 3)) & 0xFF;
+	}
+
+	public int getComponentId(int offset) {
+		return buffer.get(offset + 8 + (getProtocolVersion(offset)==2 ? 6 : 4)) & 0xFF;
+	}
+
+	public byte[] getPayload(int offset) {
+		int p = offset + 8;
+		byte[] payload = new byte[buffer.get(p+1) & 0xFF];
+		int start = p + (getProtocolVersion(offset)==2 ? 10 : 6);
+		for(int i = 0; i < payload.length; i++)
+			payload[i] = buffer.get(start + i);
+		return payload;
+	}
+
+	/**
+	 * @return true if the checksum of the frame at offset matches, using the CRC_EXTRA of its message
+	 */
+	public boolean checkCRC(int offset, int crc_extra) {
+		int p = offset + 8;
+		int end = p + (getProtocolVersion(offset)==2 ? 10 : 6) + (buffer.get(p+1) & 0xFF);
+		int crc = MAVLinkCRC.crc_init();
+		for(int i = p + 1; i < end; i++)
+			crc = MAVLinkCRC.crc_accumulate(buffer.get(i), crc);
+		crc = MAVLinkCRC.crc_accumulate((byte)crc_extra, crc);
+		return crc == ((buffer.get(end) & 0xFF) | (buffer.get(end+1) & 0xFF) << 8);
+	}
+
+	/**
+	 * @return offset of the first valid record at or after offset, or -1
+	 */
+	public int sync(int offset) {
+		for(int p = offset; p < size - 16; p++) {
+			if(isRecord(p)) {
+				int next = p + getRecordLength(p);
+				if(next >= size || isRecord(next))
+					return p;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isRecord(int offset) {
+		if(getRecordLength(offset) < 0)
+			return false;
+		if(tms_start < 0)
+			return true;
+		long t = buffer.getLong(offset) - tms_start;
+		return t >= 0 && t < MAX_SPAN_US;
+	}
+
+	private int getFrameLength(int p) {
+		int stx = buffer.get(p) & 0xFF;
+		int len = buffer.get(p+1) & 0xFF;
+		if(stx==0xFE)
+			return len + 8;
+		if(stx==0xFD) {
+			int incompat = buffer.get(p+2) & 0xFF;
+			if((incompat & ~0x01) != 0)
+				return -1;
+			return len + 12 + ((incompat & 0x01) != 0 ? 13 : 0);
+		}
+		return -1;
+	}
+
+	private void buildIndex() {
+		int first = sync(0);
+		if(first < 0)
+			return;
+		tms_start = buffer.getLong(first);
+
+		int n = size / INDEX_STEP + 1;
+		int[]  offsets = new int[n];
+		long[] tms     = new long[n];
+		int count = 0;
+
+		for(int step = 0; step < size; step += INDEX_STEP) {
+			int p = step == 0 ? first : sync(step);
+			if(p < 0)
+				break;
+			if(count > 0 && p <= offsets[count-1])
+				continue;
+			offsets[count] = p; tms[count] = buffer.getLong(p);
+			count++;
+		}
+
+		index_offset = new int[count];
+		index_tms    = new long[count];
+		System.arraycopy(offsets, 0, index_offset, 0, count);
+		System.arraycopy(tms, 0, index_tms, 0, count);
+
+		// end time from the last record of the file
+		int p = index_offset[count-1];
+		tms_end = tms_start;
+		while(p >= 0 && p < size) {
+			int len = getRecordLength(p);
+			if(len < 0) {
+				p = sync(p+1);
+				continue;
+			}
+			long t = buffer.getLong(p);
+			if(t > tms_end && t - tms_start < MAX_SPAN_US)
+				tms_end = t;
+			p += len;
+		}
+	}
+}
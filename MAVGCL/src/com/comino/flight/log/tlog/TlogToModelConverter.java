@@ -0,0 +1,341 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.log.tlog;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.mavlink.IMAVLinkCRC;
+import org.mavlink.messages.MAV_AUTOPILOT;
+import org.mavlink.messages.MAVLinkMessage;
+import org.mavlink.messages.MAVLinkMessageFactory;
+import org.mavlink.messages.lquac.msg_heartbeat;
+import org.mavlink.messages.lquac.msg_param_value;
+import org.mavlink.messages.lquac.msg_statustext;
+
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.KeyFigureMetaData;
+import com.comino.flight.model.service.AnalysisModelService;
+import com.comino.flight.parameter.ParamUtils;
+import com.comino.msp.model.segment.LogMessage;
+
+/**
+ * Converts a tlog into the analysis model using the TlogSource mappings of the key figures.
+ * The file is split at sparse index entries into chunks that are decoded in parallel, each into
+ * sparse collector slots. The slots are then merged in order, holding the last value of each
+ * key figure. Only frames with a valid checksum sent by the vehicle are used; the vehicle is the
+ * sender of the first autopilot HEARTBEAT.
+ */
+public class TlogToModelConverter {
+
+	private static final int CHUNK_SIZE = 4 * TlogReader.INDEX_STEP;
+
+	private final TlogReader reader;
+	private final List<AnalysisDataModel> list;
+
+	private final AnalysisDataModelMetaData meta = AnalysisDataModelMetaData.getInstance();
+	private final Map<String,Object> parameters  = new HashMap<String,Object>();
+
+	private final Map<Class<?>,List<KeyFigureMetaData>> keyfigures = new HashMap<Class<?>,List<KeyFigureMetaData>>();
+
+	private Set<Integer> msg_ids  = null;
+	private final Map<Integer,Integer> payload_lengths = new HashMap<Integer,Integer>();
+	private long interval_us = 0;
+
+	private int vehicle_sysid  = -1;
+	private int vehicle_compid = -1;
+
+
+	public TlogToModelConverter(TlogReader reader, List<AnalysisDataModel> list) {
+		this.reader = reader;
+		this.list   = list;
+	}
+
+	public Map<String,Object> getParameters() {
+		return parameters;
+	}
+
+	public void doConversion() throws IOException {
+
+		long tms = System.currentTimeMillis();
+
+		list.clear();
+
+		if(reader.getIndexSize()==0)
+			throw new IOException("No MAVLink records found");
+
+		interval_us = AnalysisModelService.getInstance().getCollectorInterval_ms() * 1000;
+		msg_ids = getTlogSourceIds();
+		for(int id : msg_ids)
+			payload_lengths.put(id, getPayloadLength(id));
+		payload_lengths.put(msg_heartbeat.MAVLINK_MSG_ID_HEARTBEAT, getPayloadLength(msg_heartbeat.MAVLINK_MSG_ID_HEARTBEAT));
+		findVehicle();
+
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		int step = Math.max(1, CHUNK_SIZE / TlogReader.INDEX_STEP);
+		for(int i = 0; i < reader.getIndexSize(); i += step) {
+			int end = i + step < reader.getIndexSize() ? reader.getIndexOffset(i + step) : reader.size();
+			chunks.add(new Chunk(reader.getIndexOffset(i), end));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(
+				Math.min(chunks.size(), Runtime.getRuntime().availableProcessors()));
+		try {
+			List<Future<Chunk>> results = pool.invokeAll(chunks);
+			for(Future<Chunk> f : results)
+				f.get();
+		} catch (Exception e) {
+			throw new IOException(e.getMessage());
+		} finally {
+			pool.shutdown();
+		}
+
+		int errors = 0; int crc_errors = 0;
+		for(Chunk c : chunks) {
+			errors += c.errors; crc_errors += c.crc_errors;
+		}
+		if(errors > 0 || crc_errors > 0)
+			System.out.println(crc_errors+" MAVLink records with invalid checksum and "+errors+" not decodable records skipped");
+
+		int slots = (int)(reader.getSizeMicroseconds() / interval_us) + 1;
+		AnalysisDataModel[] sparse = new AnalysisDataModel[slots];
+		for(Chunk c : chunks) {
+			parameters.putAll(c.parameters);
+			c.slots.forEach((i,m) -> {
+				if(i < slots) {
+					if(sparse[i]==null) sparse[i] = m;
+					else sparse[i].merge(m);
+				}
+			});
+		}
+
+		AnalysisDataModel last = new AnalysisDataModel();
+		for(int i = 0; i < slots; i++) {
+			AnalysisDataModel model = last.clone();
+			model.msg = null;
+			if(sparse[i]!=null)
+				model.merge(sparse[i]);
+			model.tms = i * interval_us;
+			model.calculateVirtualKeyFigures(meta);
+			list.add(model);
+			last = model;
+		}
+
+		System.out.println(list.size()+" entries read from "+reader.size()/1024+" kb in "+chunks.size()+" chunks. Timespan is "
+				+reader.getSizeMicroseconds()/1e6f+" sec. Time "+(System.currentTimeMillis()-tms)+" ms");
+	}
+
+
+	// the vehicle is the sender of the first HEARTBEAT of an autopilot, GCS heartbeats use MAV_AUTOPILOT_INVALID
+	private void findVehicle() {
+		int p = reader.getIndexOffset(0);
+		while(p >= 0 && p < reader.size()) {
+			int len = reader.getRecordLength(p);
+			if(len < 0) {
+				p = reader.sync(p + 1);
+				continue;
+			}
+			if(reader.getMessageId(p)==msg_heartbeat.MAVLINK_MSG_ID_HEARTBEAT && checkCRC(p)) {
+				try {
+					msg_heartbeat hb = (msg_heartbeat)decode(p);
+					if(hb.autopilot != MAV_AUTOPILOT.MAV_AUTOPILOT_INVALID) {
+						vehicle_sysid  = reader.getSystemId(p);
+						vehicle_compid = reader.getComponentId(p);
+						System.out.println("Vehicle in tlog: sysid "+vehicle_sysid+" compid "+vehicle_compid);
+						return;
+					}
+				} catch(Exception e) { }
+			}
+			p += len;
+		}
+		System.out.println("No vehicle HEARTBEAT in tlog, all senders are used");
+	}
+
+	// key figures and parameters from the autopilot, status texts from all components of the vehicle
+	private boolean isVehicle(int p, int id) {
+		if(vehicle_sysid < 0)
+			return true;
+		if(reader.getSystemId(p) != vehicle_sysid)
+			return false;
+		return id==msg_statustext.MAVLINK_MSG_ID_STATUSTEXT || reader.getComponentId(p)==vehicle_compid;
+	}
+
+	private boolean checkCRC(int p) {
+		int id = reader.getMessageId(p);
+		return id < IMAVLinkCRC.MAVLINK_MESSAGE_CRCS.length && reader.checkCRC(p, IMAVLinkCRC.MAVLINK_MESSAGE_CRCS[id]);
+	}
+
+	// truncated MAVLink 2 payloads are zero-extended to the length lquac decodes
+	private MAVLinkMessage decode(int p) throws Exception {
+		int id = reader.getMessageId(p);
+		byte[] payload = reader.getPayload(p);
+		int length = payload_lengths.get(id);
+		if(payload.length < length)
+			payload = Arrays.copyOf(payload, length);
+		return MAVLinkMessageFactory.getMessage(id, reader.getSystemId(p), reader.getComponentId(p), payload);
+	}
+
+	// MAVLink 2 truncates trailing zeros of the payload, lquac decodes the full length
+	private int getPayloadLength(int id) {
+		try {
+			MAVLinkMessage msg = MAVLinkMessageFactory.getMessage(id, 0, 0, new byte[255]);
+			return msg!=null ? msg.payload_length : 0;
+		} catch (Exception e) {
+			return 0;
+		}
+	}
+
+	private Set<Integer> getTlogSourceIds() {
+		Set<Integer> ids = new HashSet<Integer>();
+		ids.add(msg_statustext.MAVLINK_MSG_ID_STATUSTEXT);
+		ids.add(msg_param_value.MAVLINK_MSG_ID_PARAM_VALUE);
+		meta.getKeyFigures().forEach((k) -> {
+			KeyFigureMetaData.DataSource source = k.sources.get(KeyFigureMetaData.TLG_SOURCE);
+			if(source!=null && source.class_n!=null) {
+				try {
+					Class<?> c = Class.forName(KeyFigureMetaData.MAV_PACKAGE+source.class_n);
+					keyfigures.computeIfAbsent(c, l -> new ArrayList<KeyFigureMetaData>()).add(k);
+					for(Field f : c.getFields())
+						if(f.getName().startsWith("MAVLINK_MSG_ID_"))
+							ids.add(f.getInt(null));
+				} catch (Exception e) {
+					System.err.println(this.getClass().getSimpleName()+": Unknown MAVLink message "+source.class_n);
+				}
+			}
+		});
+		return ids;
+	}
+
+
+	private class Chunk implements Callable<Chunk> {
+
+		private final int start;
+		private final int end;
+
+		final Map<Integer,AnalysisDataModel> slots = new HashMap<Integer,AnalysisDataModel>();
+		final Map<String,Object> parameters = new HashMap<String,Object>();
+
+		int errors = 0;
+		int crc_errors = 0;
+
+		Chunk(int start, int end) {
+			this.start = start;
+			this.end   = end;
+		}
+
+		@Override
+		public Chunk call() throws Exception {
+			int p = start; int slot = -1;
+			AnalysisDataModel model = null;
+
+			while(p >= 0 && p < end) {
+				int len = reader.getRecordLength(p);
+				if(len < 0) {
+					p = reader.sync(p + 1);
+					continue;
+				}
+
+				long t = reader.getTimestamp(p) - reader.getStartMicroseconds();
+				int id = reader.getMessageId(p);
+				if(t >= 0 && t <= reader.getSizeMicroseconds() && msg_ids.contains(id) && isVehicle(p, id)) {
+					MAVLinkMessage msg = decode(p);
+					if(msg!=null) {
+						if((int)(t / interval_us) != slot) {
+							slot  = (int)(t / interval_us);
+							model = slots.get(slot);
+							if(model==null) {
+								model = new AnalysisDataModel();
+								slots.put(slot, model);
+							}
+						}
+						if(msg instanceof msg_param_value) {
+							msg_param_value param = (msg_param_value)msg;
+							parameters.put(param.getParam_id().trim(), (float)ParamUtils.paramToVal(param.param_type, param.param_value));
+						}
+						else if(msg instanceof msg_statustext) {
+							msg_statustext text = (msg_statustext)msg;
+							model.msg = new LogMessage(text.getText().trim(), text.severity);
+						}
+						else
+							setValues(model, msg);
+					}
+				}
+				p += len;
+			}
+			return this;
+		}
+
+		private MAVLinkMessage decode(int p) {
+			if(!checkCRC(p)) {
+				crc_errors++;
+				return null;
+			}
+			try {
+				return TlogToModelConverter.this.decode(p);
+			} catch(Exception e) {
+				errors++;
+				return null;
+			}
+		}
+
+		// only the key figures mapped to this message class are evaluated
+		private void setValues(AnalysisDataModel model, MAVLinkMessage msg) {
+			List<KeyFigureMetaData> list = keyfigures.get(msg.getClass());
+			if(list==null)
+				return;
+			for(KeyFigureMetaData k : list) {
+				try {
+					Float val = k.getValueFromTlogMessage(msg);
+					if(val!=null)
+						model.setValue(k, val);
+				} catch(Exception e) {
+					model.setValue(k, Float.NaN);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.log.ulog;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.comino.flight.log.BackgroundFileWriter;
+
+/**
+ * Appends the raw ULog byte stream received via MAVLink to a .ulg file.
+ * Chunks are written by a {@link BackgroundFileWriter}, so close() does not block.
+ */
+public class ULogFileWriter {
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+	private static final int QUEUE_SIZE  = 4096;
+
+	private volatile BackgroundFileWriter writer = null;
+	private BackgroundFileWriter last = null;
+
+	public synchronized boolean open(File file) {
+		close();
+		try {
+			last = new BackgroundFileWriter(file, "ULog file writer", BUFFER_SIZE, QUEUE_SIZE, last) {
+				@Override
+				protected void closed() {
+					System.out.println("ULog file closed: "+(getBytesWritten()/1024)+" kb"
+							+ (getDropped() > 0 ? ", "+getDropped()+" chunks dropped" : ""));
+				}
+			};
+		} catch (IOException e) {
+			System.err.println(this.getClass().getSimpleName()+":"+e.getMessage());
+			return false;
+		}
+		writer = last;
+		writer.start();
+		System.out.println("ULog streamed to "+file.getAbsolutePath());
+		return true;
+	}
+
+	public boolean isOpen() {
+		return writer!=null;
+	}
+
+	public synchronized File getFile() {
+		return last!=null ? last.getFile() : null;
+	}
+
+	public synchronized long getBytesWritten() {
+		return last!=null ? last.getBytesWritten() : 0;
+	}
+
+	public void write(int[] data, int offset, int len) {
+		BackgroundFileWriter w = writer;
+		if(w==null || len <= offset)
+			return;
+		byte[] chunk = new byte[len - offset];
+		for(int i = offset; i < len; i++)
+			chunk[i - offset] = (byte)(data[i] & 0x00FF);
+		w.offer(chunk);
+	}
+
+	/**
+	 * Queues the end of the file and returns; the writer thread closes the file
+	 */
+	public synchronized void close() {
+		if(writer==null)
+			return;
+		writer.close(null);
+		writer = null;
+	}
+}
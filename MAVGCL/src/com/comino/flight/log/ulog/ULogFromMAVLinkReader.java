@@ -33,8 +33,14 @@
 
 package com.comino.flight.log.ulog;
 
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Map;
-import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.mavlink.messages.MAV_CMD;
 import org.mavlink.messages.MAV_SEVERITY;
@@ -43,11 +49,13 @@ import org.mavlink.messages.lquac.msg_logging_data;
 import org.mavlink.messages.lquac.msg_logging_data_acked;
 import org.mavlink.messages.lquac.msg_serial_control;
 
+import com.comino.flight.mavlink.MAVLinkMessageRouter;
 import com.comino.flight.prefs.MAVPreferences;
 import com.comino.jmavlib.extensions.UlogMAVLinkParser;
 import com.comino.mav.control.IMAVController;
 import com.comino.msp.log.MSPLogger;
 import com.comino.msp.main.control.listener.IMAVLinkListener;
+import com.comino.msp.utils.ExecutorService;
 
 
 public class ULogFromMAVLinkReader implements IMAVLinkListener {
@@ -56,16 +64,23 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 	private final int STATE_HEADER_WAIT				= 1;
 	private final int STATE_DATA            		= 2;
 
+	private static final int STARTUP_TIMEOUT_MS     = 4000;
+
 	private IMAVController control   = null;
 	private int state = STATE_HEADER_IDLE;
 	private UlogMAVLinkParser parser = null;
+	private ULogFileWriter    writer = null;
 	private int package_processed = 0;
 
+	private CompletableFuture<Boolean> startup = null;
+	private ScheduledFuture<?>         timeout = null;
+
 
 	public ULogFromMAVLinkReader(IMAVController control)  {
 		this.parser = new UlogMAVLinkParser();
+		this.writer = new ULogFileWriter();
 		this.control = control;
-		this.control.addMAVLinkListener(this);
+		MAVLinkMessageRouter.getInstance(control).subscribe(this, msg_logging_data_acked.class, msg_logging_data.class);
 	}
 
 	public Map<String, Object> getData() {
@@ -76,31 +91,44 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 		return parser.getFieldList();
 	}
 
-	public void enableLogging(boolean enable) {
+	/**
+	 * Requests start or stop of ULog streaming without blocking the caller.
+	 * The returned future completes with true as soon as the header has been
+	 * received and data is streamed, or with false if the vehicle did not
+	 * respond within the timeout (logging then falls back to MAVLink).
+	 */
+	public synchronized Future<Boolean> enableLogging(boolean enable) {
 
 		state=STATE_HEADER_IDLE;
+		completeStartup(false);
+		writer.close();
 
 		if(!MAVPreferences.getInstance().getBoolean(MAVPreferences.ULOGGER, false)) {
-			return;
+			return CompletableFuture.completedFuture(false);
 		}
 
-		long tms = System.currentTimeMillis();
+		if(!enable)  {
+			control.sendMAVLinkCmd(MAV_CMD.MAV_CMD_LOGGING_STOP);
+			return CompletableFuture.completedFuture(false);
+		}
 
-		if(enable)  {
-			MSPLogger.getInstance().writeLocalMsg("Try to start ULog streaming",MAV_SEVERITY.MAV_SEVERITY_NOTICE);
-			control.sendMAVLinkCmd(MAV_CMD.MAV_CMD_LOGGING_START,0);
-			while(state!=STATE_DATA ) {
-				LockSupport.parkNanos(10000000);
-				if((System.currentTimeMillis()-tms)>4000) {
-					MSPLogger.getInstance().writeLocalMsg("Logging via MAVLink streaming",MAV_SEVERITY.MAV_SEVERITY_NOTICE);
-					control.sendMAVLinkCmd(MAV_CMD.MAV_CMD_LOGGING_STOP);
+		MSPLogger.getInstance().writeLocalMsg("Try to start ULog streaming",MAV_SEVERITY.MAV_SEVERITY_NOTICE);
+
+		final CompletableFuture<Boolean> request = new CompletableFuture<Boolean>();
+		startup = request;
+		timeout = ExecutorService.get().schedule(() -> {
+			synchronized(ULogFromMAVLinkReader.this) {
+				if(startup != request || state==STATE_DATA)
 					return;
-				}
+				MSPLogger.getInstance().writeLocalMsg("Logging via MAVLink streaming",MAV_SEVERITY.MAV_SEVERITY_NOTICE);
+				control.sendMAVLinkCmd(MAV_CMD.MAV_CMD_LOGGING_STOP);
+				state=STATE_HEADER_IDLE;
+				completeStartup(false);
 			}
-			MSPLogger.getInstance().writeLocalMsg("Logging via ULog streaming",MAV_SEVERITY.MAV_SEVERITY_NOTICE);
-		} else {
-			control.sendMAVLinkCmd(MAV_CMD.MAV_CMD_LOGGING_STOP);
-		}
+		}, STARTUP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+		control.sendMAVLinkCmd(MAV_CMD.MAV_CMD_LOGGING_START,0);
+		return request;
 	}
 
 	public boolean isLogging() {
@@ -122,18 +150,30 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 			ack.isValid = true;
 			ack.sequence = log.sequence;
 			control.sendMAVLinkMessage(ack);
+
+			// the vehicle retransmits packets whose ack was lost
+			if(state==STATE_HEADER_WAIT && isDuplicate(log.sequence))
+				return;
+
 			parser.addToBuffer(log.data, log.length,log.first_message_offset, package_processed == log.sequence);
 			if(package_processed != log.sequence) {
 				System.err.println(package_processed+":"+log.sequence);
+				if(writer.isOpen()) {
+					System.err.println("ULOG header sequence failed, file closed");
+					writer.close();
+				}
+				package_processed = log.sequence;
 			}
 
 			if(state==STATE_HEADER_IDLE || state==STATE_DATA) {
 				if(parser.checkHeader()) {
 					state = STATE_HEADER_WAIT;
 					System.out.println("Start reading header");
+					openLogFile();
 				} else
 					return;
 			}
+			writer.write(log.data, 0, log.length);
 			parser.parseHeader();
 			package_processed++;
 		}
@@ -149,6 +189,9 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 				parser.buildSubscriptions();
 				System.out.println("Header valid: "+parser.getSystemInfo());
 				state = STATE_DATA;
+				if(startup!=null)
+					MSPLogger.getInstance().writeLocalMsg("Logging via ULog streaming",MAV_SEVERITY.MAV_SEVERITY_NOTICE);
+				completeStartup(true);
 			}
 
 			if(state==STATE_DATA) {
@@ -157,7 +200,9 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 					System.err.println("ULOG Sequence failed");
 					control.sendMAVLinkCmd(MAV_CMD.MAV_CMD_LOGGING_STOP);
 					state=STATE_HEADER_IDLE;
-				}
+					writer.close();
+				} else
+					writer.write(log.data, 0, log.length);
 				parser.addToBuffer(log.data, log.length,log.first_message_offset, true);
 				parser.parseData();
 				package_processed++;
@@ -165,6 +210,31 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 		}
 	}
 
+	// sequence is a 16 bit counter
+	private boolean isDuplicate(int sequence) {
+		int behind = (package_processed - sequence) & 0xFFFF;
+		return behind > 0 && behind < 0x8000;
+	}
+
+	private void openLogFile() {
+		if(!MAVPreferences.getInstance().getBoolean(MAVPreferences.ULOGFILE, false))
+			return;
+		String path = MAVPreferences.getInstance().get(MAVPreferences.PREFS_DIR,System.getProperty("user.home"));
+		String name = new SimpleDateFormat("ddMMyy-HHmmss'.ulg'").format(new Date());
+		writer.open(new File(path+"/"+name));
+	}
+
+	private void completeStartup(boolean result) {
+		if(timeout!=null) {
+			timeout.cancel(false);
+			timeout = null;
+		}
+		if(startup!=null) {
+			startup.complete(result);
+			startup = null;
+		}
+	}
+
 	//  helpers for dev
 //	final protected static char[] hexArray = "0123456789ABCDEF".toCharArray();
 //	public static String bytesToHex(byte[] bytes, int len) {
@@ -0,0 +1,219 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.mavlink;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.comino.msp.main.control.listener.IMAVLinkListener;
+
+/**
+ * Decouples a slow listener from the MAVLink receive thread. Messages are put into a
+ * bounded queue and delivered by a worker thread owned by this queue.
+ */
+public class MAVLinkListenerQueue implements IMAVLinkListener, Runnable {
+
+	public enum OverflowPolicy {
+		/** drop the oldest queued message */
+		DROP_OLDEST,
+		/** keep only the latest message per message type */
+		COALESCE_LATEST,
+		/** block the receive thread until there is space */
+		BLOCK
+	}
+
+	private final IMAVLinkListener listener;
+	private final OverflowPolicy   policy;
+	private final int              capacity;
+
+	private final Object[] ring;
+	private int head  = 0;
+	private int size  = 0;
+
+	private final Map<Class<?>,Object> latest;
+	private final Thread               worker;
+
+	private boolean stopped = false;
+
+	private volatile long dropped   = 0;
+	private volatile long coalesced = 0;
+	private volatile long delivered = 0;
+	private volatile long total_ns  = 0;
+	private volatile long max_ns    = 0;
+
+
+	public MAVLinkListenerQueue(IMAVLinkListener listener, OverflowPolicy policy, int capacity) {
+		this.listener = listener;
+		this.policy   = policy;
+		this.capacity = capacity;
+
+		if(policy==OverflowPolicy.COALESCE_LATEST) {
+			this.latest = new LinkedHashMap<Class<?>,Object>();
+			this.ring   = null;
+		} else {
+			this.latest = null;
+			this.ring   = new Object[capacity];
+		}
+
+		worker = new Thread(this);
+		worker.setName("MAVLink listener "+listener.getClass().getSimpleName());
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	public IMAVLinkListener getListener() {
+		return listener;
+	}
+
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized int getDepth() {
+		return latest!=null ? latest.size() : size;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	public long getDelivered() {
+		return delivered;
+	}
+
+	public float getAverageLatency_us() {
+		return delivered > 0 ? total_ns / delivered / 1000f : 0;
+	}
+
+	public float getMaxLatency_us() {
+		return max_ns / 1000f;
+	}
+
+	/**
+	 * Stops the worker thread, queued messages are discarded
+	 */
+	public synchronized void stop() {
+		stopped = true;
+		notifyAll();
+		worker.interrupt();
+	}
+
+	@Override
+	public synchronized void received(Object msg) {
+		if(stopped)
+			return;
+		switch(policy) {
+		case COALESCE_LATEST:
+			if(latest.put(msg.getClass(), msg)!=null)
+				coalesced++;
+			else if(latest.size() > capacity) {
+				Iterator<Object> i = latest.values().iterator();
+				i.next(); i.remove(); dropped++;
+			}
+			break;
+		case BLOCK:
+			while(size==capacity) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					return;
+				}
+				if(stopped)
+					return;
+			}
+			offer(msg);
+			break;
+		default:
+			if(size==capacity) {
+				ring[head] = null;
+				head = (head + 1) % capacity; size--; dropped++;
+			}
+			offer(msg);
+		}
+		notifyAll();
+	}
+
+	@Override
+	public void run() {
+		Object msg = null;
+		while(true) {
+			try {
+				msg = take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			long t = System.nanoTime();
+			try {
+				listener.received(msg);
+			} catch(Exception e) {
+				System.err.println(listener.getClass().getSimpleName()+": "+e.getMessage());
+			}
+			t = System.nanoTime() - t;
+			delivered++; total_ns += t;
+			if(t > max_ns) max_ns = t;
+		}
+	}
+
+	private void offer(Object msg) {
+		ring[(head + size) % capacity] = msg;
+		size++;
+	}
+
+	private synchronized Object take() throws InterruptedException {
+		Object msg = null;
+		while(getDepth()==0 && !stopped)
+			wait();
+		if(stopped)
+			throw new InterruptedException();
+		if(latest!=null) {
+			Iterator<Object> i = latest.values().iterator();
+			msg = i.next(); i.remove();
+		} else {
+			msg = ring[head]; ring[head] = null;
+			head = (head + 1) % capacity; size--;
+			notifyAll();
+		}
+		return msg;
+	}
+}
@@ -0,0 +1,293 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.mavlink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.comino.mav.control.IMAVController;
+import com.comino.msp.main.control.listener.IMAVLinkListener;
+
+/**
+ * Registers once with the controller and dispatches each MAVLink message only to the
+ * listeners that subscribed to its message class. Dispatch time is measured per listener.
+ * Slow listeners should subscribe asynchronously, so that they are served by their own
+ * worker thread via a bounded {@link MAVLinkListenerQueue}.
+ */
+public class MAVLinkMessageRouter implements IMAVLinkListener {
+
+	private static volatile MAVLinkMessageRouter instance = null;
+
+	private final Map<Class<?>,Subscriber[]> subscribers = new ConcurrentHashMap<Class<?>,Subscriber[]>();
+	private final Map<IMAVLinkListener,Subscriber> all   = new ConcurrentHashMap<IMAVLinkListener,Subscriber>();
+
+	private volatile Subscriber[] wildcard = new Subscriber[0];
+
+	private long received = 0;
+
+
+	public static synchronized MAVLinkMessageRouter getInstance(IMAVController control) {
+		if(instance==null)
+			instance = new MAVLinkMessageRouter(control);
+		return instance;
+	}
+
+	public static MAVLinkMessageRouter getInstance() {
+		return instance;
+	}
+
+	private MAVLinkMessageRouter(IMAVController control) {
+		control.addMAVLinkListener(this);
+	}
+
+	/**
+	 * Subscribe listener to the given MAVLink message classes. An asynchronous listener stays
+	 * asynchronous.
+	 */
+	public synchronized void subscribe(IMAVLinkListener listener, Class<?>... messages) {
+		subscribe(getSubscriber(listener, null), messages);
+	}
+
+	/**
+	 * Subscribe listener to the given MAVLink message classes, delivering in its own thread.
+	 * Existing subscriptions of the listener are delivered by the new queue as well.
+	 */
+	public synchronized void subscribeAsync(IMAVLinkListener listener, MAVLinkListenerQueue.OverflowPolicy policy,
+			int capacity, Class<?>... messages) {
+		subscribe(getSubscriber(listener, new MAVLinkListenerQueue(listener, policy, capacity)), messages);
+	}
+
+	/**
+	 * Subscribe listener to all MAVLink messages
+	 */
+	public synchronized void subscribeAll(IMAVLinkListener listener) {
+		subscribeAll(getSubscriber(listener, null));
+	}
+
+	/**
+	 * Subscribe listener to all MAVLink messages, delivering in its own thread
+	 */
+	public synchronized void subscribeAllAsync(IMAVLinkListener listener, MAVLinkListenerQueue.OverflowPolicy policy,
+			int capacity) {
+		subscribeAll(getSubscriber(listener, new MAVLinkListenerQueue(listener, policy, capacity)));
+	}
+
+	public synchronized void unsubscribe(IMAVLinkListener listener) {
+		Subscriber s = all.remove(listener);
+		if(s==null)
+			return;
+		subscribers.replaceAll((c,list) -> remove(list,s));
+		wildcard = remove(wildcard,s);
+		if(s.queue!=null)
+			s.queue.stop();
+	}
+
+	private void subscribe(Subscriber s, Class<?>... messages) {
+		for(Class<?> c : messages) {
+			Subscriber[] list = subscribers.get(c);
+			if(list==null)
+				list = new Subscriber[0];
+			if(contains(list,s))
+				continue;
+			list = Arrays.copyOf(list, list.length+1);
+			list[list.length-1] = s;
+			subscribers.put(c, list);
+		}
+	}
+
+	private void subscribeAll(Subscriber s) {
+		if(contains(wildcard,s))
+			return;
+		Subscriber[] list = Arrays.copyOf(wildcard, wildcard.length+1);
+		list[list.length-1] = s;
+		wildcard = list;
+	}
+
+	public List<Statistics> getStatistics() {
+		return new ArrayList<Statistics>(all.values());
+	}
+
+	public long getReceivedCount() {
+		return received;
+	}
+
+	@Override
+	public void received(Object msg) {
+		received++;
+		Subscriber[] list = subscribers.get(msg.getClass());
+		if(list!=null) {
+			for(Subscriber s : list)
+				s.dispatch(msg);
+		}
+		for(Subscriber s : wildcard)
+			s.dispatch(msg);
+	}
+
+	public void dumpStatistics() {
+		System.out.println("MAVLink messages received: "+received);
+		for(Statistics s : getStatistics())
+			System.out.println(s);
+	}
+
+	private Subscriber getSubscriber(IMAVLinkListener listener, MAVLinkListenerQueue queue) {
+		Subscriber s = all.get(listener);
+		if(s!=null && queue==null)
+			return s;
+		Subscriber n = new Subscriber(listener, queue);
+		all.put(listener, n);
+		if(s!=null) {
+			subscribers.replaceAll((c,list) -> replace(list,s,n));
+			wildcard = replace(wildcard,s,n);
+			if(s.queue!=null)
+				s.queue.stop();
+		}
+		return n;
+	}
+
+	private static boolean contains(Subscriber[] list, Subscriber s) {
+		for(Subscriber e : list)
+			if(e==s) return true;
+		return false;
+	}
+
+	private static Subscriber[] replace(Subscriber[] list, Subscriber s, Subscriber n) {
+		Subscriber[] r = list.clone();
+		for(int i = 0; i < r.length; i++)
+			if(r[i]==s) r[i] = n;
+		return r;
+	}
+
+	private static Subscriber[] remove(Subscriber[] list, Subscriber s) {
+		Subscriber[] n = new Subscriber[list.length];
+		int i = 0;
+		for(Subscriber e : list)
+			if(e!=s) n[i++] = e;
+		return Arrays.copyOf(n, i);
+	}
+
+
+	public static class Statistics {
+
+		protected final String name;
+		protected final MAVLinkListenerQueue queue;
+
+		protected volatile long count    = 0;
+		protected volatile long total_ns = 0;
+		protected volatile long max_ns   = 0;
+
+		protected Statistics(String name, MAVLinkListenerQueue queue) {
+			this.name  = name;
+			this.queue = queue;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public float getAverageLatency_us() {
+			return count > 0 ? total_ns / count / 1000f : 0;
+		}
+
+		public float getMaxLatency_us() {
+			return max_ns / 1000f;
+		}
+
+		public boolean isAsync() {
+			return queue!=null;
+		}
+
+		/**
+		 * @return current number of queued messages, 0 for synchronous listeners
+		 */
+		public int getQueueDepth() {
+			return queue!=null ? queue.getDepth() : 0;
+		}
+
+		public int getQueueCapacity() {
+			return queue!=null ? queue.getCapacity() : 0;
+		}
+
+		public long getDropped() {
+			return queue!=null ? queue.getDropped() : 0;
+		}
+
+		public long getCoalesced() {
+			return queue!=null ? queue.getCoalesced() : 0;
+		}
+
+		public void reset() {
+			count = 0; total_ns = 0; max_ns = 0;
+		}
+
+		public String toString() {
+			if(queue!=null)
+				return String.format("%-30s %10d msgs  avg %8.1f us  max %10.1f us  queue %4d/%-4d  dropped %6d  coalesced %8d"
+						+ "  worker avg %8.1f us  max %10.1f us", name, count, getAverageLatency_us(), getMaxLatency_us(),
+						getQueueDepth(), getQueueCapacity(), getDropped(), getCoalesced(),
+						queue.getAverageLatency_us(), queue.getMaxLatency_us());
+			return String.format("%-30s %10d msgs  avg %8.1f us  max %10.1f us", name, count,
+					getAverageLatency_us(), getMaxLatency_us());
+		}
+	}
+
+	private static class Subscriber extends Statistics {
+
+		private final IMAVLinkListener listener;
+
+		Subscriber(IMAVLinkListener listener, MAVLinkListenerQueue queue) {
+			super(listener.getClass().getSimpleName(), queue);
+			this.listener = queue!=null ? queue : listener;
+		}
+
+		void dispatch(Object msg) {
+			long t = System.nanoTime();
+			try {
+				listener.received(msg);
+			} catch(Exception e) {
+				System.err.println(name+": "+e.getMessage());
+			}
+			t = System.nanoTime() - t;
+			count++; total_ns += t;
+			if(t > max_ns) max_ns = t;
+		}
+	}
+}
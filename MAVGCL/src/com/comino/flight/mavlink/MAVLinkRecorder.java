@@ -0,0 +1,137 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.mavlink;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.mavlink.messages.MAVLinkMessage;
+
+import com.comino.flight.log.BackgroundFileWriter;
+import com.comino.msp.main.control.listener.IMAVLinkListener;
+
+/**
+ * Appends every received MAVLink message to a binary capture file, which can be played
+ * back by {@link MAVLinkReplayer}. Messages are written by a {@link BackgroundFileWriter};
+ * if it falls behind, messages are dropped.
+ *
+ * File layout (little endian):
+ * header:  MAGIC[8] | start time epoch ms [8]
+ * record:  receive time ns since start [8] | frame length [2] | MAVLink frame
+ */
+public class MAVLinkRecorder implements IMAVLinkListener {
+
+	public static final String  EXTENSION   = "mavcap";
+	public static final byte[]  MAGIC       = { 'M','A','V','G','C','L', 0x01, 0x00 };
+	public static final int     HEADER_SIZE = 16;
+	public static final int     RECORD_HEADER_SIZE = 10;
+
+	private static final int   BUFFER_SIZE = 256 * 1024;
+	private static final int   QUEUE_SIZE  = 8192;
+
+	private volatile BackgroundFileWriter writer = null;
+	private BackgroundFileWriter last = null;
+
+	private long tms_start_ns = 0;
+
+	private volatile long errors = 0;
+
+
+	public synchronized void start(File file) throws IOException {
+		stop();
+
+		final long tms_start = System.currentTimeMillis();
+		last = new BackgroundFileWriter(file, "MAVLink recorder", BUFFER_SIZE, QUEUE_SIZE, last) {
+			@Override
+			protected void opened() throws IOException {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				header.put(MAGIC).putLong(tms_start);
+				header.flip();
+				write(header);
+			}
+
+			@Override
+			protected void closed() {
+				System.out.println("MAVLink capture closed: "+getRecordCount()+" messages, "+getBytesWritten()/1024+" kb"
+						+ (errors > 0 ? ", "+errors+" not encodable" : "")
+						+ (getDropped() > 0 ? ", "+getDropped()+" dropped" : ""));
+			}
+		};
+		errors = 0;
+		tms_start_ns = System.nanoTime();
+		writer = last;
+		writer.start();
+	}
+
+	/**
+	 * Queues the end of the capture and returns; the writer thread closes the file
+	 */
+	public synchronized void stop() {
+		if(writer==null)
+			return;
+		writer.close(null);
+		writer = null;
+	}
+
+	public boolean isRecording() {
+		return writer!=null;
+	}
+
+	public synchronized long getMessageCount() {
+		return last!=null ? last.getRecordCount() : 0;
+	}
+
+	public synchronized long getBytesWritten() {
+		return last!=null ? last.getBytesWritten() : 0;
+	}
+
+	@Override
+	public void received(Object o) {
+		BackgroundFileWriter w = writer;
+		if(w==null)
+			return;
+		long t = System.nanoTime() - tms_start_ns;
+		try {
+			byte[] frame = ((MAVLinkMessage)o).encode();
+			byte[] record = new byte[RECORD_HEADER_SIZE + frame.length];
+			ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN).putLong(t).putShort((short)frame.length).put(frame);
+			w.offer(record);
+		} catch(Exception e) {
+			errors++;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.mavlink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mavlink.messages.MAVLinkMessage;
+import org.mavlink.messages.MAVLinkMessageFactory;
+
+import com.comino.msp.main.control.listener.IMAVLinkListener;
+
+/**
+ * Plays back a capture written by {@link MAVLinkRecorder} into an IMAVLinkListener (usually
+ * the {@link MAVLinkMessageRouter}), keeping the recorded timing scaled by the replay speed.
+ * A speed of 0 replays as fast as possible.
+ */
+public class MAVLinkReplayer implements Runnable {
+
+	private final File             file;
+	private final IMAVLinkListener target;
+
+	private volatile float   speed   = 1;
+	private volatile boolean running = false;
+
+	private Thread worker = null;
+
+	private volatile long messages = 0;
+	private volatile long errors   = 0;
+	private volatile long max_lag_ns = 0;
+	private volatile long duration_ns = 0;
+
+
+	public MAVLinkReplayer(File file, IMAVLinkListener target) {
+		this.file   = file;
+		this.target = target;
+	}
+
+	public MAVLinkReplayer setSpeed(float speed) {
+		this.speed = speed;
+		return this;
+	}
+
+	public synchronized void start() {
+		if(running)
+			return;
+		running = true;
+		worker = new Thread(this);
+		worker.setName("MAVLink replay");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	public void join() throws InterruptedException {
+		if(worker!=null)
+			worker.join();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public long getMessageCount() {
+		return messages;
+	}
+
+	public long getErrorCount() {
+		return errors;
+	}
+
+	/**
+	 * @return maximum delay of a message against its scheduled replay time in us
+	 */
+	public float getMaxLag_us() {
+		return max_lag_ns / 1000f;
+	}
+
+	public float getDuration_ms() {
+		return duration_ns / 1e6f;
+	}
+
+	@Override
+	public void run() {
+		messages = 0; errors = 0; max_lag_ns = 0;
+		long t0 = System.nanoTime();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			byte[] magic = new byte[MAVLinkRecorder.MAGIC.length];
+			buffer.get(magic);
+			if(!Arrays.equals(magic, MAVLinkRecorder.MAGIC))
+				throw new IOException("Not a MAVGCL capture: "+file.getName());
+			buffer.getLong();
+
+			t0 = System.nanoTime();
+
+			while(running && buffer.remaining() >= MAVLinkRecorder.RECORD_HEADER_SIZE) {
+				long t   = buffer.getLong();
+				int  len = buffer.getShort() & 0xFFFF;
+				if(buffer.remaining() < len)
+					break;
+				byte[] frame = new byte[len];
+				buffer.get(frame);
+
+				if(speed > 0) {
+					long due = t0 + (long)(t / speed);
+					long wait = due - System.nanoTime();
+					if(wait > 0)
+						LockSupport.parkNanos(wait);
+					else if(-wait > max_lag_ns)
+						max_lag_ns = -wait;
+				}
+
+				MAVLinkMessage msg = decode(frame);
+				if(msg!=null) {
+					target.received(msg);
+					messages++;
+				} else
+					errors++;
+			}
+		} catch(Exception e) {
+			System.err.println(this.getClass().getSimpleName()+":"+e.getMessage());
+		}
+		duration_ns = System.nanoTime() - t0;
+		running = false;
+		System.out.println(String.format("MAVLink replay of %s: %d messages in %.0f ms (%.0f msg/s), %d errors, max lag %.1f ms",
+				file.getName(), messages, getDuration_ms(), messages / (duration_ns / 1e9f), errors, getMaxLag_us()/1000f));
+	}
+
+	// Frames are written by MAVLinkMessage.encode() in MAVLink 2 framing
+	private MAVLinkMessage decode(byte[] frame) {
+		if(frame.length < 12 || (frame[0] & 0xFF) != 0xFD)
+			return null;
+		int msgid = (frame[7] & 0xFF) | (frame[8] & 0xFF) << 8 | (frame[9] & 0xFF) << 16;
+		try {
+			return MAVLinkMessageFactory.getMessage(msgid, frame[5] & 0xFF, frame[6] & 0xFF,
+					Arrays.copyOfRange(frame, 10, frame.length - 2));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Replays a capture as fast as possible to measure the throughput of the decoder.
+	 * Usage: MAVLinkReplayer <capture> [speed]
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		if(args.length < 1) {
+			System.out.println("Usage: MAVLinkReplayer <capture> [speed]");
+			return;
+		}
+		MAVLinkReplayer replayer = new MAVLinkReplayer(new File(args[0]), (msg) -> { });
+		replayer.setSpeed(args.length > 1 ? Float.parseFloat(args[1]) : 0);
+		replayer.start();
+		replayer.join();
+	}
+}
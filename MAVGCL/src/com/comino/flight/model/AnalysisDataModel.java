@@ -46,6 +46,7 @@ public class AnalysisDataModel {
 	public long       tms  = 0;
 	public LogMessage msg  = null;
 	public Slam      slam  = null;
+	public SlamDelta slamDelta = null;
 	public Status   status = null;
 
 	public float    dt_sec = 0;
@@ -69,16 +70,25 @@ public class AnalysisDataModel {
 			d.msg = msg.clone();
 		if(status!=null)
 			d.status = status.clone();
-		if(slam!=null)
-			d.slam = slam.clone();
+		// SLAM is recorded as delta, see SlamState
 		return d;
 	}
 
+	/**
+	 * Overwrites values with all values present in m
+	 */
+	public void merge(AnalysisDataModel m) {
+		data.putAll(m.data);
+		if(m.msg!=null)
+			msg = m.msg;
+	}
+
 	public void clear()  {
 		data.clear();
 		tms = 0;
 		msg = null;
 		slam = null;
+		slamDelta = null;
 		status = null;
 	}
 
@@ -98,6 +108,10 @@ public class AnalysisDataModel {
 			return Float.NaN;
 	}
 
+	public void setValue(KeyFigureMetaData m, float value) {
+		data.put(m.hash, value);
+	}
+
 	public void setValue(String kf,float value) {
 		data.put(kf.toLowerCase().hashCode(), value);
 	}
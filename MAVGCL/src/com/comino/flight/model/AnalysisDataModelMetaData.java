@@ -41,15 +41,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.TreeMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
+/**
+ * Key figure metadata of the analysis model, read with a streaming parser in a single pass
+ */
 public class AnalysisDataModelMetaData extends Observable {
 
 	private static AnalysisDataModelMetaData instance = null;
@@ -63,7 +63,7 @@ public class AnalysisDataModelMetaData extends Observable {
 	private String version = "0.0";
 	private String description = "not provided";
 
-	public static AnalysisDataModelMetaData getInstance() {
+	public static synchronized AnalysisDataModelMetaData getInstance() {
 		if(instance==null)
 			instance = new AnalysisDataModelMetaData();
 		return instance;
@@ -151,21 +151,16 @@ public class AnalysisDataModelMetaData extends Observable {
 
 	private void buildDocument(InputStream is) {
 		try {
-			DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-			Document doc = dBuilder.parse(is);
-
-			if (doc.hasChildNodes()) {
-				version = doc.getElementsByTagName("AnalysisDataModel")
-						.item(0).getAttributes().getNamedItem("version").getTextContent();
-				description = doc.getElementsByTagName("AnalysisDataModel")
-						.item(0).getAttributes().getNamedItem("description").getTextContent();
+			XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(is);
+			try {
+				buildKeyFigureList(xml);
+			} finally {
+				xml.close();
+			}
 
-				buildKeyFigureList(doc.getElementsByTagName("KeyFigure"));
+			sortGroupMaps();
 
-				sortGroupMaps();
-
-				notifyObservers(is);
-			}
+			notifyObservers(is);
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -173,11 +168,9 @@ public class AnalysisDataModelMetaData extends Observable {
 	}
 
 	private void sortGroupMaps() {
-		new Thread(()-> {
-			groups.forEach((g,l) -> {
-				l.sort((KeyFigureMetaData o1, KeyFigureMetaData o2)->o1.desc1.compareTo(o2.desc1));
-			});
-		}).start();
+		groups.forEach((g,l) -> {
+			l.sort((KeyFigureMetaData o1, KeyFigureMetaData o2)->o1.desc1.compareTo(o2.desc1));
+		});
 	}
 
 	private List<KeyFigureMetaData> buildSortedList() {
@@ -190,89 +183,93 @@ public class AnalysisDataModelMetaData extends Observable {
 		return list;
 	}
 
-	private void buildKeyFigureList(NodeList keyfigures) {
-		for (count = 0; count < keyfigures.getLength(); count++) {
-			KeyFigureMetaData keyfigure = buildKeyFigure(keyfigures.item(count));
-			meta.put(keyfigure.hash,keyfigure);
-			if(keyfigure.isVirtual)
-				virt.put(keyfigure.hash,keyfigure);
-		}
-		System.out.println(description+" (version "+version+") with "+count+" keyfigures ");
-	}
-
-	private KeyFigureMetaData buildKeyFigure(Node kf_node) {
-		KeyFigureMetaData keyfigure = new KeyFigureMetaData(
-				kf_node.getAttributes().getNamedItem("key" ).getTextContent(),
-				kf_node.getAttributes().getNamedItem("desc").getTextContent(),
-				kf_node.getAttributes().getNamedItem("uom" ).getTextContent(),
-				kf_node.getAttributes().getNamedItem("mask").getTextContent());
-
-		for(int i=0;i<kf_node.getChildNodes().getLength();i++) {
-			Node node = kf_node.getChildNodes().item(i);
-			if(node.getNodeName().equals("MSPSource")) {
-				buildDataSource(KeyFigureMetaData.MSP_SOURCE, keyfigure,node);
-			}
-			if(node.getNodeName().equals("PX4Source")) {
-				buildDataSource(KeyFigureMetaData.PX4_SOURCE, keyfigure,node);
-			}
+	private void buildKeyFigureList(XMLStreamReader xml) throws Exception {
+		KeyFigureMetaData keyfigure = null;
+		int    type    = -1;
+		String class_n = null, field = null, class_c = null;
+		String[] params = null;
 
-			if(node.getNodeName().equals("ULogSource")) {
-				buildDataSource(KeyFigureMetaData.ULG_SOURCE, keyfigure,node);
-			}
+		count = 0;
+		while(xml.hasNext()) {
+			int event = xml.next();
 
-			if(node.getNodeName().equals("MAVLinkSource")) {
-				buildDataSource(KeyFigureMetaData.MAV_SOURCE, keyfigure,node);
-			}
-
-			if(node.getNodeName().equals("VirtualSource")) {
-				buildDataSource(KeyFigureMetaData.VIR_SOURCE, keyfigure,node);
+			if(event==XMLStreamConstants.END_ELEMENT) {
+				if(keyfigure!=null && type >= 0 && getSourceType(xml.getLocalName()) == type) {
+					keyfigure.setSource(type, class_n, field, class_c, params);
+					type = -1;
+				}
+				if(keyfigure!=null && xml.getLocalName().equals("KeyFigure")) {
+					meta.put(keyfigure.hash,keyfigure);
+					if(keyfigure.isVirtual)
+						virt.put(keyfigure.hash,keyfigure);
+					keyfigure = null; count++;
+				}
+				continue;
 			}
 
-			if(node.getNodeName().equals("Validity")) {
+			if(event!=XMLStreamConstants.START_ELEMENT)
+				continue;
+
+			String name = xml.getLocalName();
+			switch(name) {
+			case "AnalysisDataModel":
+				version     = xml.getAttributeValue(null, "version");
+				description = xml.getAttributeValue(null, "description");
+				break;
+			case "KeyFigure":
+				keyfigure = new KeyFigureMetaData(
+						xml.getAttributeValue(null, "key"),
+						xml.getAttributeValue(null, "desc"),
+						xml.getAttributeValue(null, "uom"),
+						xml.getAttributeValue(null, "mask"));
+				break;
+			case "Converter":
+				// all attributes besides class are parameters, ordered by name
+				if(xml.getAttributeCount() > 1) {
+					Map<String,String> att = new TreeMap<String,String>();
+					for(int i = 0; i < xml.getAttributeCount(); i++)
+						att.put(xml.getAttributeLocalName(i), xml.getAttributeValue(i));
+					class_c = att.remove("class");
+					params  = att.values().toArray(new String[att.size()]);
+				}
+				break;
+			case "Validity":
 				keyfigure.setBounds(
-						Float.parseFloat(node.getAttributes().getNamedItem("min").getTextContent()),
-						Float.parseFloat(node.getAttributes().getNamedItem("max").getTextContent())
-						);
-
-			}
-
-			if(node.getNodeName().equals("Groups")) {
-				for(int j=0;j<node.getChildNodes().getLength();j++) {
-					Node gr_node = node.getChildNodes().item(j);
-					if(gr_node.getNodeName().equals("Group")) {
-						String groupname = gr_node.getTextContent();
-						List<KeyFigureMetaData> group = groups.get(groupname);
-						if(group==null) {
-							group = new ArrayList<KeyFigureMetaData>();
-							groups.put(groupname, group);
-						}
-						group.add(keyfigure);
-					}
+						Float.parseFloat(xml.getAttributeValue(null, "min")),
+						Float.parseFloat(xml.getAttributeValue(null, "max")));
+				break;
+			case "Group":
+				String groupname = xml.getElementText();
+				List<KeyFigureMetaData> group = groups.get(groupname);
+				if(group==null) {
+					group = new ArrayList<KeyFigureMetaData>();
+					groups.put(groupname, group);
+				}
+				group.add(keyfigure);
+				break;
+			default:
+				int source = getSourceType(name);
+				if(source >= 0 && keyfigure!=null) {
+					type    = source;
+					class_n = xml.getAttributeValue(null, "class");
+					field   = xml.getAttributeValue(null, "field");
+					class_c = null; params = null;
 				}
 			}
 		}
-		return keyfigure;
+		System.out.println(description+" (version "+version+") with "+count+" keyfigures ");
 	}
 
-	private void buildDataSource(int type,KeyFigureMetaData keyfigure, Node node) {
-		String[] params = null; String class_c = null;
-
-		for(int j=0;j<node.getChildNodes().getLength();j++) {
-			Node cnode = node.getChildNodes().item(j);
-			if(cnode.getNodeName().equals("Converter")) {
-				NamedNodeMap att = cnode.getAttributes();
-				if(att.getLength()>1) {
-					params = new String[att.getLength()-1];
-					for(int p=1; p<att.getLength();p++)
-						params[p-1] = att.item(p).getTextContent();
-					class_c = att.getNamedItem("class").getTextContent();
-				}
-			}
+	private int getSourceType(String element) {
+		switch(element) {
+		case "MSPSource":     return KeyFigureMetaData.MSP_SOURCE;
+		case "PX4Source":     return KeyFigureMetaData.PX4_SOURCE;
+		case "ULogSource":    return KeyFigureMetaData.ULG_SOURCE;
+		case "MAVLinkSource": return KeyFigureMetaData.MAV_SOURCE;
+		case "TlogSource":    return KeyFigureMetaData.TLG_SOURCE;
+		case "VirtualSource": return KeyFigureMetaData.VIR_SOURCE;
 		}
-		keyfigure.setSource(type,
-				node.getAttributes().getNamedItem("class")!=null ? node.getAttributes().getNamedItem("class").getTextContent() : null,
-						node.getAttributes().getNamedItem("field")!=null ? node.getAttributes().getNamedItem("field").getTextContent() : null,
-								class_c, params);
+		return -1;
 	}
 
 }
@@ -46,9 +46,12 @@ public class KeyFigureMetaData {
 	public static final int PX4_SOURCE = 2;
 	public static final int ULG_SOURCE = 3;
 	public static final int MAV_SOURCE = 4;
+	public static final int TLG_SOURCE = 5;
 
 	public static final int VIR_SOURCE = 9;
 
+	public static final String MAV_PACKAGE = "org.mavlink.messages.lquac.";
+
 	public String desc1;
 	public String desc2;
 	public String uom;
@@ -156,11 +159,22 @@ public class KeyFigureMetaData {
 	}
 
 	public Float getValueFromMAVLinkMessage(Object mavlink_message) throws Exception {
+		return getValueFromMessage(sources.get(MAV_SOURCE), mavlink_message);
+	}
+
+	public Float getValueFromTlogMessage(Object mavlink_message) throws Exception {
+		return getValueFromMessage(sources.get(TLG_SOURCE), mavlink_message);
+	}
+
+	private Float getValueFromMessage(DataSource source, Object mavlink_message) throws Exception {
 		float value = Float.NaN;;
-		DataSource source = sources.get(MAV_SOURCE);
-		if(mavlink_message.getClass().getSimpleName().equals(source.class_n)) {
-		    Field mfield_field = mavlink_message.getClass().getField(source.field);
-		    value = new Double(mfield_field.getDouble(mavlink_message)).floatValue();
+		if(source.mclass==null) {
+			Class<?> mclass = Class.forName(MAV_PACKAGE+source.class_n);
+			source.mfield = mclass.getField(source.field);
+			source.mclass = mclass;
+		}
+		if(mavlink_message.getClass()==source.mclass) {
+		    value = (float)source.mfield.getDouble(mavlink_message);
 			if(source.converter != null)
 				return source.converter.convert(value);
 			return value;
@@ -195,6 +209,10 @@ public class KeyFigureMetaData {
 		public String field;
 		public SourceConverter converter;
 
+		// resolved MAVLink message class and field
+		private volatile Class<?> mclass = null;
+		private Field mfield = null;
+
 		public String toString() {
 			if(class_n!=null)
 				return class_n+"."+field;
@@ -0,0 +1,217 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.model;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.comino.msp.model.segment.Slam;
+import com.comino.msp.utils.BlockPoint2D;
+
+/**
+ * Versioned SLAM map. While recording, update() compares the live map with this state and
+ * returns a delta if something changed. For a recorded model list, moveTo() rebuilds the
+ * state at a sample by applying the deltas from the last position or from the start.
+ */
+public class SlamState {
+
+	private final Map<Integer,BlockPoint2D> blocks = new HashMap<Integer,BlockPoint2D>();
+
+	private int   version    = 0;
+	private float resolution = 0;
+	private float vehicle_x  = 0;
+	private float vehicle_y  = 0;
+
+	// position in the model list for moveTo()
+	private int   index      = -1;
+	private AnalysisDataModel first = null;
+
+
+	public void clear() {
+		blocks.clear();
+		version = 0; index = -1; first = null;
+		vehicle_x = 0; vehicle_y = 0;
+	}
+
+	/**
+	 * Compares the live map with the state and updates the state
+	 * @return the delta or null if neither blocks nor the vehicle cell changed
+	 */
+	public SlamDelta update(Slam slam) {
+		if(slam==null)
+			return null;
+
+		Map<Integer,BlockPoint2D> data;
+		try {
+			// the live map is modified by the MAVLink thread
+			data = new HashMap<Integer,BlockPoint2D>(slam.getData());
+		} catch(ConcurrentModificationException e) {
+			return null;
+		}
+		boolean reset = version == 0 || slam.getResolution() != resolution;
+
+		List<Integer> added   = new ArrayList<Integer>();
+		List<Integer> removed = new ArrayList<Integer>();
+
+		if(reset) {
+			blocks.clear();
+			resolution = slam.getResolution();
+		}
+
+		data.forEach((k,b) -> {
+			if(!blocks.containsKey(k)) {
+				added.add(k);
+				blocks.put(k, new BlockPoint2D(b.x, b.y));
+			}
+		});
+		// all live blocks are contained now, so only a larger state has removed blocks
+		if(blocks.size() > data.size()) {
+			Iterator<Integer> i = blocks.keySet().iterator();
+			while(i.hasNext()) {
+				Integer k = i.next();
+				if(!data.containsKey(k)) {
+					removed.add(k);
+					i.remove();
+				}
+			}
+		}
+
+		boolean moved = resolution > 0 && (cell(slam.getVehicleX()) != cell(vehicle_x)
+				|| cell(slam.getVehicleY()) != cell(vehicle_y));
+
+		if(!reset && !moved && added.isEmpty() && removed.isEmpty())
+			return null;
+
+		vehicle_x = slam.getVehicleX(); vehicle_y = slam.getVehicleY();
+
+		SlamDelta d = new SlamDelta();
+		d.version    = ++version;
+		d.reset      = reset;
+		d.resolution = resolution;
+		d.vehicle_x  = vehicle_x;
+		d.vehicle_y  = vehicle_y;
+		if(!added.isEmpty()) {
+			d.added    = new int[added.size()];
+			d.added_xy = new float[added.size()*2];
+			for(int i=0; i < d.added.length; i++) {
+				BlockPoint2D b = blocks.get(added.get(i));
+				d.added[i] = added.get(i);
+				d.added_xy[i*2] = b.x; d.added_xy[i*2+1] = b.y;
+			}
+		}
+		if(!removed.isEmpty()) {
+			d.removed = new int[removed.size()];
+			for(int i=0; i < d.removed.length; i++)
+				d.removed[i] = removed.get(i);
+		}
+		return d;
+	}
+
+	public void apply(SlamDelta d) {
+		if(d.reset)
+			blocks.clear();
+		if(d.removed!=null)
+			for(int k : d.removed)
+				blocks.remove(k);
+		if(d.added!=null)
+			for(int i=0; i < d.added.length; i++)
+				blocks.put(d.added[i], new BlockPoint2D(d.added_xy[i*2], d.added_xy[i*2+1]));
+		resolution = d.resolution;
+		vehicle_x  = d.vehicle_x;
+		vehicle_y  = d.vehicle_y;
+		version++;
+	}
+
+	/**
+	 * Rebuilds the state at the given sample of a recorded model list. Moving forward applies
+	 * only the deltas in between. Recordings with full SLAM copies per sample are supported.
+	 */
+	public void moveTo(List<AnalysisDataModel> list, int to) {
+		if(list.size()==0)
+			return;
+		to = Math.min(to, list.size()-1);
+		// a different first sample means that the model list was replaced
+		if(to < index || list.get(0)!=first) {
+			blocks.clear(); index = -1; first = list.get(0);
+		}
+		for(int i = index + 1; i <= to; i++) {
+			AnalysisDataModel m = list.get(i);
+			if(m.slamDelta!=null)
+				apply(m.slamDelta);
+			else if(m.slam!=null && i==to)
+				set(m.slam);
+		}
+		index = to;
+	}
+
+	public Map<Integer,BlockPoint2D> getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * @return counter increased with every change
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	public float getResolution() {
+		return resolution;
+	}
+
+	public float getVehicleX() {
+		return vehicle_x;
+	}
+
+	public float getVehicleY() {
+		return vehicle_y;
+	}
+
+	private void set(Slam slam) {
+		blocks.clear();
+		slam.getData().forEach((k,b) -> blocks.put(k, new BlockPoint2D(b.x, b.y)));
+		resolution = slam.getResolution();
+		vehicle_x = slam.getVehicleX(); vehicle_y = slam.getVehicleY();
+		version++;
+	}
+
+	private int cell(float v) {
+		return (int)Math.floor(v / resolution);
+	}
+}
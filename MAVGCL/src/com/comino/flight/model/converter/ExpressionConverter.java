@@ -46,16 +46,11 @@ public class ExpressionConverter extends SourceConverter {
 	@Override
 	public void setParameter(String kfname, String[] params) {
 		this.kfname = kfname;
-		Runnable r = new Runnable() {
-			public void run() {
-				calc = new ExpressionBuilder(params[0]).variable(kfname).build();
-			}
-		};
-		new Thread(r).start();
+		this.calc = new ExpressionBuilder(params[0]).variable(kfname).build();
 	}
 
 	@Override
-	public float convert(float val) {
+	public synchronized float convert(float val) {
 		calc.setVariable(kfname, val);
 		return (float)calc.evaluate();
 	}
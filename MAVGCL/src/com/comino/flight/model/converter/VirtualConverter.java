@@ -47,17 +47,10 @@ public class VirtualConverter extends SourceConverter {
 	public void setParameter(String kfname, String[] params) {
 		this.params = params;
 
-		Runnable r = new Runnable() {
-			public void run() {
-				ExpressionBuilder exp = new ExpressionBuilder(params[0]);
-				if(params.length>0) {
-				for(int i=1;i<params.length;i++)
-				     exp.variable(params[i]);
-				}
-				calc = exp.build();
-			}
-		};
-		new Thread(r).start();
+		ExpressionBuilder exp = new ExpressionBuilder(params[0]);
+		for(int i=1;i<params.length;i++)
+			exp.variable(params[i]);
+		this.calc = exp.build();
 	}
 
 	@Override
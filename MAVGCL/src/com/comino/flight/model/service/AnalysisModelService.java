@@ -36,15 +36,19 @@ package com.comino.flight.model.service;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
 
 import com.comino.flight.log.ulog.ULogFromMAVLinkReader;
+import com.comino.flight.mavlink.MAVLinkMessageRouter;
 import com.comino.flight.model.AnalysisDataModel;
 import com.comino.flight.model.AnalysisDataModelMetaData;
 import com.comino.flight.model.KeyFigureMetaData;
+import com.comino.flight.model.SlamState;
 import com.comino.flight.observables.StateProperties;
 import com.comino.mav.control.IMAVController;
 import com.comino.msp.main.control.listener.IMAVLinkListener;
@@ -73,9 +77,12 @@ public class AnalysisModelService implements IMAVLinkListener {
 	private List<ICollectorRecordingListener>    listener  =  null;
 
 	private VehicleHealthCheck health = null;
+	private SlamState           slam   = new SlamState();
 
 	private int     mode = 0;
 
+	private volatile long recording_start_us = -1;
+
 	private  int  totalTime_sec = 30;
 	private  int collector_interval_us = 50000;
 
@@ -105,7 +112,11 @@ public class AnalysisModelService implements IMAVLinkListener {
 
 		this.ulogger = new ULogFromMAVLinkReader(control);
 
-		control.addMAVLinkListener(this);
+		MAVLinkMessageRouter router = MAVLinkMessageRouter.getInstance(control);
+		meta.addObserver((o,arg) -> {
+			router.unsubscribe(this);
+			router.subscribe(this, getMAVLinkSourceClasses());
+		});
 
 		Thread c = new Thread(new CombinedConverter());
 		c.start();
@@ -264,6 +275,14 @@ public class AnalysisModelService implements IMAVLinkListener {
 		return mode != STOPPED ;
 	}
 
+	/**
+	 * @return current time in us on the time base of the collected models, -1 if not collecting
+	 */
+	public long getRecordingTimeUs() {
+		long start = recording_start_us;
+		return start < 0 ? -1 : System.nanoTime() / 1000 - start;
+	}
+
 
 	public int getMode() {
 		return mode;
@@ -275,6 +294,22 @@ public class AnalysisModelService implements IMAVLinkListener {
 	}
 
 
+	private Class<?>[] getMAVLinkSourceClasses() {
+		Set<Class<?>> classes = new HashSet<Class<?>>();
+		meta.getKeyFigures().forEach((k) -> {
+			KeyFigureMetaData.DataSource source = k.sources.get(KeyFigureMetaData.MAV_SOURCE);
+			if(source!=null && source.class_n!=null) {
+				try {
+					classes.add(Class.forName(KeyFigureMetaData.MAV_PACKAGE+source.class_n));
+				} catch (ClassNotFoundException e) {
+					System.err.println(this.getClass().getSimpleName()+": Unknown MAVLink message "+source.class_n);
+				}
+			}
+		});
+		return classes.toArray(new Class<?>[classes.size()]);
+	}
+
+
 	private class CombinedConverter implements Runnable {
 
 		long tms = 0; long tms_start =0; long wait = 0; int old_mode=STOPPED;
@@ -322,13 +357,16 @@ public class AnalysisModelService implements IMAVLinkListener {
 				}
 
 				if(mode!=STOPPED && old_mode == STOPPED) {
+					tms_start = System.nanoTime() / 1000;
+					recording_start_us = tms_start;
 					state.getLogLoadedProperty().set(false);
 					state.getRecordingProperty().set(true);
 					ulogger.enableLogging(true);
-					tms_start = System.nanoTime() / 1000;
+					slam.clear();
 				}
 
 				if(mode==STOPPED && old_mode != STOPPED) {
+					recording_start_us = -1;
 					ulogger.enableLogging(false);
 					state.getRecordingProperty().set(false);
 				}
@@ -338,6 +376,7 @@ public class AnalysisModelService implements IMAVLinkListener {
 						m = record.clone();
 					else
 						m = current.clone();
+					m.slamDelta = slam.update(model.slam);
 					m.tms = System.nanoTime() / 1000 - tms_start;
                     m.dt_sec = m.tms / 1e6f;
 					modelList.add(m);
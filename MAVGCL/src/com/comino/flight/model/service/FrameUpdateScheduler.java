@@ -0,0 +1,221 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.model.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * Runs UI updates of charts and tabs on the JavaFX pulse. Requests of a task arriving
+ * between two pulses are merged into one run, so each task is executed at most once per
+ * frame regardless of the collector rate. If the previous frame took longer than the
+ * frame period, the next pulse is skipped to let the FX thread catch up.
+ */
+public class FrameUpdateScheduler extends AnimationTimer {
+
+	private static final long FRAME_NS = 1_000_000_000L / 60;
+
+	private static FrameUpdateScheduler instance = null;
+
+	private final List<Task> tasks = new CopyOnWriteArrayList<Task>();
+
+	private long    last_frame  = 0;
+	private long    last_work   = 0;
+	private boolean skipped     = false;
+
+	private volatile long frames  = 0;
+	private volatile long dropped = 0;
+
+	public static synchronized FrameUpdateScheduler getInstance() {
+		if(instance==null) {
+			instance = new FrameUpdateScheduler();
+			instance.start();
+		}
+		return instance;
+	}
+
+	private FrameUpdateScheduler() {
+		super();
+	}
+
+	/**
+	 * Registers a task which is run in the next frame after request() was called
+	 */
+	public Task register(String name, Runnable runnable) {
+		return register(name, 0, false, runnable);
+	}
+
+	/**
+	 * Registers a task which is run every interval_ms without being requested
+	 */
+	public Task registerPeriodic(String name, int interval_ms, Runnable runnable) {
+		return register(name, interval_ms, true, runnable);
+	}
+
+	private synchronized Task register(String name, int interval_ms, boolean periodic, Runnable runnable) {
+		int n = 1;
+		for(Task t : tasks)
+			if(t.name.startsWith(name)) n++;
+		Task task = new Task(n > 1 ? name+" "+n : name, interval_ms * 1_000_000L, periodic, runnable);
+		tasks.add(task);
+		return task;
+	}
+
+	public void unregister(Task task) {
+		tasks.remove(task);
+	}
+
+	public List<Task> getTasks() {
+		return new ArrayList<Task>(tasks);
+	}
+
+	public long getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 * @return number of frames missed by the FX pulse or skipped because the previous frame was too slow
+	 */
+	public long getDroppedFrames() {
+		return dropped;
+	}
+
+	@Override
+	public void handle(long now) {
+		if(last_frame > 0 && now - last_frame > 2 * FRAME_NS)
+			dropped += (now - last_frame) / FRAME_NS - 1;
+		last_frame = now;
+
+		if(last_work > FRAME_NS && !skipped) {
+			skipped = true; dropped++;
+			return;
+		}
+		skipped = false;
+
+		long t = System.nanoTime();
+		for(Task task : tasks)
+			task.run(now);
+		last_work = System.nanoTime() - t;
+		frames++;
+	}
+
+	public void dumpStatistics() {
+		System.out.println("Frames: "+frames+" dropped: "+dropped);
+		for(Task t : tasks)
+			System.out.println(t);
+	}
+
+
+	public static class Task {
+
+		private final String   name;
+		private final long     interval_ns;
+		private final Runnable runnable;
+		private final boolean  periodic;
+
+		private final AtomicBoolean pending = new AtomicBoolean();
+		private final LongAdder     merged  = new LongAdder();
+
+		private long last_run = 0;
+
+		private volatile long runs     = 0;
+		private volatile long total_ns = 0;
+		private volatile long max_ns   = 0;
+
+		private Task(String name, long interval_ns, boolean periodic, Runnable runnable) {
+			this.name = name;
+			this.interval_ns = interval_ns;
+			this.periodic = periodic;
+			this.runnable = runnable;
+		}
+
+		/**
+		 * Requests a run in the next frame. May be called from any thread.
+		 */
+		public void request() {
+			if(pending.getAndSet(true))
+				merged.increment();
+		}
+
+		private void run(long now) {
+			if((!periodic && !pending.get()) || now - last_run < interval_ns)
+				return;
+			pending.set(false);
+			last_run = now;
+			long t = System.nanoTime();
+			try {
+				runnable.run();
+			} catch(Exception e) {
+				System.err.println(name+": "+e.getMessage());
+			}
+			t = System.nanoTime() - t;
+			runs++; total_ns += t;
+			if(t > max_ns) max_ns = t;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getRuns() {
+			return runs;
+		}
+
+		/**
+		 * @return number of requests merged into an already pending run
+		 */
+		public long getMerged() {
+			return merged.sum();
+		}
+
+		public float getAverageTime_ms() {
+			return runs > 0 ? total_ns / runs / 1e6f : 0;
+		}
+
+		public float getMaxTime_ms() {
+			return max_ns / 1e6f;
+		}
+
+		public String toString() {
+			return String.format("%-30s %8d runs  merged %8d  avg %6.2f ms  max %8.2f ms", name, runs, merged.sum(),
+					getAverageTime_ms(), getMaxTime_ms());
+		}
+	}
+}
@@ -34,21 +34,30 @@
 package com.comino.flight.parameter;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.mavlink.messages.MAV_SEVERITY;
 import org.mavlink.messages.lquac.msg_param_request_list;
+import org.mavlink.messages.lquac.msg_param_request_read;
+import org.mavlink.messages.lquac.msg_param_set;
 import org.mavlink.messages.lquac.msg_param_value;
 
+import com.comino.flight.StartupTimer;
+import com.comino.flight.mavlink.MAVLinkMessageRouter;
 import com.comino.flight.observables.StateProperties;
 import com.comino.jfx.extensions.Badge;
 import com.comino.mav.control.IMAVController;
 import com.comino.msp.log.MSPLogger;
 import com.comino.msp.main.control.listener.IMAVLinkListener;
+import com.comino.msp.utils.ExecutorService;
 
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -56,8 +65,22 @@ import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 
 
+/**
+ * Downloads the parameter list of the vehicle. Received indices are tracked, so that missing
+ * parameters are requested again individually in windows of PARAM_REQUEST_READ messages if the
+ * stream stalls. The result is cached with the parameter hash of the vehicle; if the vehicle
+ * reports an unchanged hash, the cached parameters are used and the hash is confirmed, so that
+ * the vehicle stops sending the list.
+ */
 public class PX4Parameters implements IMAVLinkListener {
 
+	private static final String HASH_CHECK    = "_HASH_CHECK";
+
+	private static final int    CHECK_MS      = 100;
+	private static final int    STALL_MS      = 500;
+	private static final int    WINDOW        = 16;
+	private static final int    MAX_RETRIES   = 10;
+
 	private static PX4Parameters px4params = null;
 
 	private ObjectProperty<ParameterAttributes> property = new SimpleObjectProperty<ParameterAttributes>();
@@ -66,12 +89,32 @@ public class PX4Parameters implements IMAVLinkListener {
 
 	private IMAVController control;
 
-	private ParameterFactMetaData metadata = null;
+	private CompletableFuture<ParameterFactMetaData> metadata = null;
+
+	// updates received before the metadata is loaded, guarded by itself
+	private final List<Runnable> pending = new ArrayList<Runnable>();
+	private boolean metadata_ready = false;
 
 	private StateProperties stateProperties =  StateProperties.getInstance();
 
 	private List<IPX4ParameterRefresh> refreshListeners = new ArrayList<IPX4ParameterRefresh>();
 
+	private final ParameterCache cache = new ParameterCache();
+
+	// download state, guarded by this
+	private boolean           downloading = false;
+	private int               count       = -1;
+	private int               hash        = 0;
+	private boolean           hash_valid  = false;
+	private int               sysid       = 0;
+	private BitSet            received    = new BitSet();
+	private msg_param_value[] raw         = null;
+	private long              last_tms    = 0;
+	private int               window_end   = 0;
+	private int               retries      = 0;
+	private int               missing      = 0;
+	private ScheduledFuture<?> watchdog    = null;
+
 
 	public static PX4Parameters getInstance(IMAVController control) {
 		if(px4params==null)
@@ -86,9 +129,11 @@ public class PX4Parameters implements IMAVLinkListener {
 
 	private PX4Parameters(IMAVController control) {
 		this.control  = control;
-		this.control.addMAVLinkListener(this);
+		MAVLinkMessageRouter.getInstance(control).subscribe(this, msg_param_value.class);
 
-		this.metadata = new ParameterFactMetaData("PX4ParameterFactMetaData.xml");
+		this.metadata = StartupTimer.supplyAsync("Parameter metadata",
+				() -> new ParameterFactMetaData("PX4ParameterFactMetaData.xml"));
+		this.metadata.whenComplete((m,e) -> runPending());
 		this.parameterList = new HashMap<String,ParameterAttributes>();
 
 		StateProperties.getInstance().getConnectedProperty().addListener(new ChangeListener<Boolean>() {
@@ -113,11 +158,16 @@ public class PX4Parameters implements IMAVLinkListener {
 
 	public void refreshParameterList(boolean loaded) {
 		property.setValue(null);
-		parameterList.clear();
-		msg_param_request_list msg = new msg_param_request_list(255,1);
-		msg.target_component = 1;
-		msg.target_system = 1;
-		control.sendMAVLinkMessage(msg);
+		synchronized(this) {
+			parameterList.clear();
+			downloading = true; count = -1; hash_valid = false;
+			received.clear(); raw = null;
+			window_end = 0; retries = 0; missing = 0;
+			last_tms = System.currentTimeMillis();
+			if(watchdog==null)
+				watchdog = ExecutorService.get().scheduleAtFixedRate(this::checkDownload, CHECK_MS, CHECK_MS, TimeUnit.MILLISECONDS);
+			requestList();
+		}
 		stateProperties.getParamLoadedProperty().set(!loaded);
 		MSPLogger.getInstance().writeLocalMsg("Reading parameters...",
 			    MAV_SEVERITY.MAV_SEVERITY_INFO);
@@ -131,46 +181,212 @@ public class PX4Parameters implements IMAVLinkListener {
 	@Override
 	public void received(Object _msg) {
 
-		long flight_time = 0;
-
 		if( _msg instanceof msg_param_value) {
-			property.setValue(null);
 
 			msg_param_value msg = (msg_param_value)_msg;
 
-			if(msg.param_id[0]=='_')
+			if(msg.param_id[0]=='_') {
+				if(HASH_CHECK.equals(msg.getParam_id()))
+					receivedHash(msg);
 				return;
+			}
 
-			ParameterAttributes attributes = metadata.getMetaData(msg.getParam_id());
-			if(attributes == null)
-				attributes = new ParameterAttributes(msg.getParam_id(),"(DefaultGroup)");
-			attributes.value = ParamUtils.paramToVal(msg.param_type, msg.param_value);
-			attributes.vtype = msg.param_type;
-
-
-			parameterList.put(attributes.name,attributes);
-			property.setValue(attributes);
+			whenMetadata(() -> update(msg));
+
+			boolean complete = false;
+			synchronized(this) {
+				if(downloading && msg.param_count > 0 && msg.param_index < msg.param_count) {
+					if(count != msg.param_count) {
+						count = msg.param_count; received.clear();
+						raw = new msg_param_value[count];
+					}
+					sysid = msg.sysId;
+					if(!received.get(msg.param_index))
+						retries = 0;
+					raw[msg.param_index] = msg;
+					received.set(msg.param_index);
+					last_tms = System.currentTimeMillis();
+
+					if(received.cardinality() == count) {
+						downloading = false; complete = true;
+						stopWatchdog();
+						if(hash_valid)
+							saveCache(sysid, hash, raw);
+					}
+					// sliding window: each answer of a recovery request triggers the next one
+					else if(msg.param_index < window_end)
+						requestNext();
+				}
+			}
+			if(complete)
+				whenMetadata(this::completed);
+		}
+	}
 
-			if(msg.param_index >= msg.param_count-1) {
-				stateProperties.getParamLoadedProperty().set(true);
-				for(IPX4ParameterRefresh l : refreshListeners)
-					l.refresh();
+	// runs the action now, or after the pending ones once the metadata is loaded
+	private void whenMetadata(Runnable action) {
+		synchronized(pending) {
+			if(!metadata_ready) {
+				pending.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
 
-				if(get("LND_FLIGHT_T_LO")!=null) {
-					flight_time = (((long)get("LND_FLIGHT_T_HI").value << 32 ) + (long)get("LND_FLIGHT_T_LO").value);
-					if(flight_time <1e10f && flight_time > 0)
-					 MSPLogger.getInstance().writeLocalMsg(String.format("Total flight time: %5.2f min", flight_time/60e6f),
-							MAV_SEVERITY.MAV_SEVERITY_NOTICE);
+	private void runPending() {
+		while(true) {
+			List<Runnable> actions;
+			synchronized(pending) {
+				if(pending.isEmpty()) {
+					metadata_ready = true;
+					return;
 				}
+				actions = new ArrayList<Runnable>(pending);
+				pending.clear();
 			}
+			for(Runnable action : actions)
+				action.run();
+		}
+	}
+
+	private void update(msg_param_value msg) {
+		property.setValue(null);
+
+		ParameterFactMetaData m = metadata.isCompletedExceptionally() ? null : metadata.getNow(null);
+		ParameterAttributes attributes = m!=null ? m.getMetaData(msg.getParam_id()) : null;
+		if(attributes == null)
+			attributes = new ParameterAttributes(msg.getParam_id(),"(DefaultGroup)");
+		attributes.value = ParamUtils.paramToVal(msg.param_type, msg.param_value);
+		attributes.vtype = msg.param_type;
+
+		parameterList.put(attributes.name,attributes);
+		property.setValue(attributes);
+	}
+
+	// the vehicle reports the hash of its parameters before sending the list
+	private void receivedHash(msg_param_value msg) {
+		List<msg_param_value> cached = null;
+		synchronized(this) {
+			if(!downloading)
+				return;
+			hash = Float.floatToRawIntBits(msg.param_value);
+			hash_valid = true;
+			sysid = msg.sysId;
+			cached = cache.load(sysid, hash);
+			if(cached == null)
+				return;
+			downloading = false;
+			stopWatchdog();
+		}
+		// confirming the hash stops the vehicle from sending the list
+		msg_param_set confirm = new msg_param_set(255,1);
+		confirm.target_component = 1;
+		confirm.target_system = 1;
+		confirm.param_type = msg.param_type;
+		confirm.setParam_id(HASH_CHECK);
+		confirm.param_value = msg.param_value;
+		control.sendMAVLinkMessage(confirm);
+
+		final List<msg_param_value> params = cached;
+		whenMetadata(() -> {
+			for(msg_param_value p : params)
+				update(p);
+			MSPLogger.getInstance().writeLocalMsg(params.size()+" parameters loaded from cache",
+					MAV_SEVERITY.MAV_SEVERITY_DEBUG);
+			completed();
+		});
+	}
+
+	private void completed() {
+		long flight_time = 0;
+
+		stateProperties.getParamLoadedProperty().set(true);
+		for(IPX4ParameterRefresh l : refreshListeners)
+			l.refresh();
+
+		if(get("LND_FLIGHT_T_LO")!=null) {
+			flight_time = (((long)get("LND_FLIGHT_T_HI").value << 32 ) + (long)get("LND_FLIGHT_T_LO").value);
+			if(flight_time <1e10f && flight_time > 0)
+			 MSPLogger.getInstance().writeLocalMsg(String.format("Total flight time: %5.2f min", flight_time/60e6f),
+					MAV_SEVERITY.MAV_SEVERITY_NOTICE);
 		}
 	}
 
+	private void checkDownload() {
+		boolean complete = false;
+		synchronized(this) {
+			if(!downloading || System.currentTimeMillis() - last_tms < STALL_MS)
+				return;
+			if(++retries > MAX_RETRIES) {
+				downloading = false;
+				stopWatchdog();
+				complete = count > 0;
+				missing  = count > 0 ? count - received.cardinality() : 0;
+			} else if(count < 0)
+				requestList();
+			else
+				requestMissing();
+			last_tms = System.currentTimeMillis();
+		}
+		if(complete) {
+			MSPLogger.getInstance().writeLocalMsg(missing+" parameters could not be read",
+					MAV_SEVERITY.MAV_SEVERITY_WARNING);
+			whenMetadata(this::completed);
+		} else if(!downloading && count < 0)
+			MSPLogger.getInstance().writeLocalMsg("No parameters received",
+					MAV_SEVERITY.MAV_SEVERITY_WARNING);
+	}
+
+	private void stopWatchdog() {
+		if(watchdog!=null) {
+			watchdog.cancel(false);
+			watchdog = null;
+		}
+	}
+
+	private void requestList() {
+		msg_param_request_list msg = new msg_param_request_list(255,1);
+		msg.target_component = 1;
+		msg.target_system = 1;
+		control.sendMAVLinkMessage(msg);
+	}
+
+	// requests the first WINDOW missing indices, lost requests are repeated with the next stall
+	private void requestMissing() {
+		window_end = 0;
+		for(int i = 0; i < WINDOW; i++)
+			requestNext();
+	}
+
+	private void requestNext() {
+		int index = received.nextClearBit(window_end);
+		if(index >= count)
+			return;
+		msg_param_request_read msg = new msg_param_request_read(255,1);
+		msg.target_component = 1;
+		msg.target_system = 1;
+		msg.param_index = index;
+		msg.setParam_id("");
+		control.sendMAVLinkMessage(msg);
+		window_end = index + 1;
+	}
+
+	private void saveCache(int sysid, int hash, msg_param_value[] params) {
+		List<msg_param_value> list = new ArrayList<msg_param_value>(params.length);
+		for(msg_param_value p : params)
+			list.add(p);
+		ExecutorService.get().execute(() -> cache.save(sysid, hash, list));
+	}
+
 	public void setParametersFromLog(Map<String,Object> list) {
 		StateProperties.getInstance().getParamLoadedProperty().set(false);
+		synchronized(this) {
+			downloading = false;
+		}
 		parameterList.clear();
 		list.forEach((s,o) -> {
-			ParameterAttributes attributes = metadata.getMetaData(s);
+			ParameterAttributes attributes = metadata.join().getMetaData(s);
 			if(attributes == null)
 				attributes = new ParameterAttributes(s,"(DefaultGroup)");
 
@@ -193,7 +409,7 @@ public class PX4Parameters implements IMAVLinkListener {
 
 
 	public ParameterFactMetaData getMetaData() {
-		return this.metadata;
+		return this.metadata.join();
 	}
 
 	public List<ParameterAttributes> getList() {
@@ -0,0 +1,114 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.parameter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.mavlink.messages.lquac.msg_param_value;
+
+import com.comino.flight.log.FileHandler;
+
+/**
+ * Stores the downloaded parameters of a vehicle together with the parameter hash reported by the
+ * vehicle (_HASH_CHECK), so that an unchanged vehicle does not need to be downloaded again.
+ */
+public class ParameterCache {
+
+	private static final int MAGIC   = 0x50524d43;
+	private static final int VERSION = 1;
+
+	/**
+	 * @return the cached parameters if the hash matches, otherwise null
+	 */
+	public List<msg_param_value> load(int sysid, int hash) {
+		File file = getFile(sysid);
+		if(!file.exists())
+			return null;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt()!=MAGIC || in.readInt()!=VERSION || in.readInt()!=hash)
+				return null;
+			int count = in.readInt();
+			List<msg_param_value> list = new ArrayList<msg_param_value>(count);
+			for(int i = 0; i < count; i++) {
+				msg_param_value msg = new msg_param_value(255,1);
+				msg.sysId       = sysid;
+				msg.param_index = in.readUnsignedShort();
+				msg.param_count = count;
+				msg.param_type  = in.readUnsignedByte();
+				msg.param_value = in.readFloat();
+				msg.setParam_id(in.readUTF());
+				list.add(msg);
+			}
+			return list;
+		} catch(IOException e) {
+			System.err.println(this.getClass().getSimpleName()+":"+e.getMessage());
+			return null;
+		}
+	}
+
+	public void save(int sysid, int hash, Collection<msg_param_value> params) {
+		File file = getFile(sysid);
+		file.getParentFile().mkdirs();
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(hash);
+			out.writeInt(params.size());
+			for(msg_param_value msg : params) {
+				out.writeShort(msg.param_index);
+				out.writeByte(msg.param_type);
+				out.writeFloat(msg.param_value);
+				out.writeUTF(msg.getParam_id());
+			}
+		} catch(IOException e) {
+			System.err.println(this.getClass().getSimpleName()+":"+e.getMessage());
+			file.delete();
+		}
+	}
+
+	private File getFile(int sysid) {
+		return new File(FileHandler.getInstance().getBasePath()+"/ParamCache/"+sysid+".params");
+	}
+}
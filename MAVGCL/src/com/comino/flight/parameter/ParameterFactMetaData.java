@@ -33,17 +33,17 @@
 
 package com.comino.flight.parameter;
 
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
+/**
+ * PX4 parameter metadata, read with a streaming parser in a single pass
+ */
 public class ParameterFactMetaData {
 
 
@@ -51,95 +51,74 @@ public class ParameterFactMetaData {
 
 	public ParameterFactMetaData(String filename) {
 
-		parameterList = new HashMap<String,ParameterAttributes>();
-
-		try {
-			DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-			Document doc = dBuilder.parse(getClass().getResourceAsStream(filename));
-
-			if (doc.hasChildNodes()) {
-				String v_major = doc.getElementsByTagName("parameter_version_major").item(0).getTextContent();
-				String v_minor = doc.getElementsByTagName("parameter_version_minor").item(0).getTextContent();
+		parameterList = new HashMap<String,ParameterAttributes>(2048);
 
-				System.out.println("ParameterFactMetaData Version: "+v_major+"."+v_minor);
-
-				buildParameterList(doc.getElementsByTagName("group"));
+		try(InputStream is = getClass().getResourceAsStream(filename)) {
+			XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(is);
+			try {
+				buildParameterList(xml);
+			} finally {
+				xml.close();
 			}
 		} catch (Exception e) {
 			System.err.println(this.getClass().getSimpleName()+":"+e.getMessage());
 		}
 	}
 
-	private void buildParameterList(NodeList groups) {
-		for (int i = 0; i < groups.getLength(); i++) {
-			Node group = groups.item(i);
-			for(int g = 0;g<group.getChildNodes().getLength();g++) {
-				addParameterToList(group.getAttributes().getNamedItem("name").getNodeValue(),group.getChildNodes().item(g));
-			}
-		}
-	}
-
-	private void addParameterToList(String group_name, Node parameter) {
-		ParameterAttributes attributes = new ParameterAttributes(group_name);
-		NamedNodeMap name_n = parameter.getAttributes();
-		if(name_n==null)
-			return;
-
-		attributes.name = name_n.getNamedItem("name").getNodeValue().toUpperCase();
-
-		NamedNodeMap type_n = parameter.getAttributes();
-		if(type_n!=null)
-			attributes.type  = type_n.getNamedItem("type").getNodeValue();
-
-		NamedNodeMap default_n = parameter.getAttributes();
-		if(default_n!=null)
-			attributes.default_val  = Float.parseFloat(default_n.getNamedItem("default").getNodeValue());
-
-		for(int i=0;i<parameter.getChildNodes().getLength();i++) {
-
-			Node node = parameter.getChildNodes().item(i);
-			if(node.getNodeName().equals("short_desc"))
-				attributes.description = node.getTextContent();
-			if(node.getNodeName().equals("long_desc"))
-				attributes.description_long = node.getTextContent();
-			if(node.getNodeName().equals("unit"))
-				attributes.unit = node.getTextContent();
-			if(node.getNodeName().equals("decimal"))
-				attributes.decimals = Integer.parseInt(node.getTextContent());
-			if(node.getNodeName().equals("increment"))
-				attributes.increment = Float.parseFloat(node.getTextContent());
-			if(node.getNodeName().equals("min"))
-				attributes.min_val = Float.parseFloat(node.getTextContent());
-			if(node.getNodeName().equals("max"))
-				attributes.max_val = Float.parseFloat(node.getTextContent());
-			if(node.getNodeName().equals("boolean")) {
+	private void buildParameterList(XMLStreamReader xml) throws Exception {
+		String v_major = "", v_minor = "";
+		String group_name = null;
+		ParameterAttributes attributes = null;
+
+		while(xml.hasNext()) {
+			if(xml.next()!=XMLStreamConstants.START_ELEMENT)
+				continue;
+
+			switch(xml.getLocalName()) {
+			case "parameter_version_major":
+				v_major = xml.getElementText(); break;
+			case "parameter_version_minor":
+				v_minor = xml.getElementText(); break;
+			case "group":
+				group_name = xml.getAttributeValue(null, "name"); break;
+			case "parameter":
+				attributes = new ParameterAttributes(group_name);
+				attributes.name = xml.getAttributeValue(null, "name").toUpperCase();
+				attributes.type = xml.getAttributeValue(null, "type");
+				attributes.default_val = Float.parseFloat(xml.getAttributeValue(null, "default"));
+				parameterList.put(attributes.name, attributes);
+				break;
+			case "short_desc":
+				attributes.description = xml.getElementText(); break;
+			case "long_desc":
+				attributes.description_long = xml.getElementText(); break;
+			case "unit":
+				attributes.unit = xml.getElementText(); break;
+			case "decimal":
+				attributes.decimals = Integer.parseInt(xml.getElementText()); break;
+			case "increment":
+				attributes.increment = Float.parseFloat(xml.getElementText()); break;
+			case "min":
+				attributes.min_val = Float.parseFloat(xml.getElementText()); break;
+			case "max":
+				attributes.max_val = Float.parseFloat(xml.getElementText()); break;
+			case "boolean":
 				attributes.valueList.put(0, "disabled");
 				attributes.valueList.put(1, "enabled");
-			}
-			if(node.getNodeName().equals("bitmask")) {
-				for(int j=0; j<node.getChildNodes().getLength();j++) {
-					Node value = node.getChildNodes().item(j);
-					if(value.getNodeName().equals("bit")) {
-						int index = Integer.parseInt(value.getAttributes().getNamedItem("index").getNodeValue());
-						attributes.bitMask.add(index, value.getTextContent());
-					}
-				}
-			}
-			if(node.getNodeName().equals("reboot_required"))
-				attributes.reboot_required = Boolean.parseBoolean(node.getTextContent());
-			if(node.getNodeName().equals("values")) {
-				for(int j=0; j<node.getChildNodes().getLength();j++) {
-					Node value = node.getChildNodes().item(j);
-					if(value.getNodeName().equals("value")) {
-						int code = Integer.parseInt(value.getAttributes().getNamedItem("code").getNodeValue());
-						attributes.valueList.put(code, value.getTextContent());
-					}
-				}
+				break;
+			case "bit":
+				int index = Integer.parseInt(xml.getAttributeValue(null, "index"));
+				attributes.bitMask.add(index, xml.getElementText());
+				break;
+			case "reboot_required":
+				attributes.reboot_required = Boolean.parseBoolean(xml.getElementText()); break;
+			case "value":
+				int code = Integer.parseInt(xml.getAttributeValue(null, "code"));
+				attributes.valueList.put(code, xml.getElementText());
+				break;
 			}
 		}
-
-		parameterList.put(attributes.name, attributes);
-
+		System.out.println("ParameterFactMetaData Version: "+v_major+"."+v_minor);
 	}
 
 	public ParameterAttributes getMetaData(String parameterName) {
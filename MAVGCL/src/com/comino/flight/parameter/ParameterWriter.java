@@ -0,0 +1,305 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.parameter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.mavlink.messages.MAV_SEVERITY;
+import org.mavlink.messages.lquac.msg_param_set;
+import org.mavlink.messages.lquac.msg_param_value;
+
+import com.comino.flight.mavlink.MAVLinkMessageRouter;
+import com.comino.mav.control.IMAVController;
+import com.comino.msp.log.MSPLogger;
+import com.comino.msp.main.control.listener.IMAVLinkListener;
+import com.comino.msp.utils.ExecutorService;
+
+/**
+ * Writes parameters to the vehicle with a bounded number of PARAM_SET messages in flight. A write
+ * is confirmed by the PARAM_VALUE echo of the vehicle with the new value, otherwise it is repeated
+ * after a timeout. Each write reports its status via a CompletableFuture.
+ */
+public class ParameterWriter implements IMAVLinkListener {
+
+	public enum Status { QUEUED, SENT, CONFIRMED, REJECTED, TIMEOUT }
+
+	private static final int MAX_IN_FLIGHT = 8;
+	private static final int TIMEOUT_MS    = 300;
+	private static final int MAX_RETRIES   = 3;
+	private static final int CHECK_MS      = 50;
+
+	private static ParameterWriter instance = null;
+
+	private final IMAVController control;
+
+	// guarded by this
+	private final Deque<Request>           queue    = new ArrayDeque<Request>();
+	private final Map<String,Request>      inflight = new LinkedHashMap<String,Request>();
+	private ScheduledFuture<?>             watchdog = null;
+
+
+	public static ParameterWriter getInstance(IMAVController control) {
+		if(instance==null)
+			instance = new ParameterWriter(control);
+		return instance;
+	}
+
+	public static ParameterWriter getInstance() {
+		return instance;
+	}
+
+	private ParameterWriter(IMAVController control) {
+		this.control = control;
+		MAVLinkMessageRouter.getInstance(control).subscribe(this, msg_param_value.class);
+	}
+
+	/**
+	 * Queues a write of the parameter, replacing a queued write of the same parameter
+	 */
+	public CompletableFuture<Request> set(ParameterAttributes att, double value) {
+		Request request = new Request(att.name, att.vtype, value);
+		if(att.min_val != att.max_val && (value < att.min_val || value > att.max_val))
+			request.complete(Status.REJECTED, "out of bounds ("+att.min_val+","+att.max_val+")");
+		else
+			enqueue(request);
+		return request.future;
+	}
+
+	/**
+	 * Queues writes of all parameters and completes when all writes are completed
+	 */
+	public CompletableFuture<List<Request>> set(Map<String,Double> values) {
+		List<CompletableFuture<Request>> futures = new ArrayList<CompletableFuture<Request>>(values.size());
+		values.forEach((name,value) -> {
+			ParameterAttributes att = PX4Parameters.getInstance().get(name);
+			if(att == null) {
+				Request request = new Request(name, 0, value);
+				request.complete(Status.REJECTED, "unknown parameter");
+				futures.add(request.future);
+			} else
+				futures.add(set(att, value));
+		});
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+			List<Request> result = new ArrayList<Request>(futures.size());
+			for(CompletableFuture<Request> f : futures)
+				result.add(f.join());
+			return result;
+		});
+	}
+
+	/**
+	 * Applies a parameter profile. Accepted are QGroundControl parameter files
+	 * (sysid compid name value type) and lines of name value; # starts a comment.
+	 */
+	public CompletableFuture<List<Request>> apply(File profile) throws IOException {
+		Map<String,Double> values = new LinkedHashMap<String,Double>();
+		try(BufferedReader reader = new BufferedReader(new FileReader(profile))) {
+			String line; int line_number = 0;
+			while((line = reader.readLine()) != null) {
+				line_number++;
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] token = line.split("[\\s,;]+");
+				try {
+					if(token.length >= 4)
+						values.put(token[2], Double.parseDouble(token[3]));
+					else if(token.length >= 2)
+						values.put(token[0], Double.parseDouble(token[1]));
+					else
+						throw new NumberFormatException();
+				} catch(NumberFormatException e) {
+					throw new IOException(profile.getName()+": invalid line "+line_number);
+				}
+			}
+		}
+		MSPLogger.getInstance().writeLocalMsg("Applying "+values.size()+" parameters of "+profile.getName(),
+				MAV_SEVERITY.MAV_SEVERITY_INFO);
+		return set(values).thenApply(result -> {
+			int failed = 0;
+			for(Request r : result) {
+				if(r.getStatus()!=Status.CONFIRMED) {
+					failed++;
+					MSPLogger.getInstance().writeLocalMsg(r.toString(), MAV_SEVERITY.MAV_SEVERITY_WARNING);
+				}
+			}
+			MSPLogger.getInstance().writeLocalMsg((result.size()-failed)+" of "+result.size()+" parameters set",
+					failed > 0 ? MAV_SEVERITY.MAV_SEVERITY_WARNING : MAV_SEVERITY.MAV_SEVERITY_NOTICE);
+			return result;
+		});
+	}
+
+	public synchronized int getPendingCount() {
+		return queue.size() + inflight.size();
+	}
+
+	@Override
+	public void received(Object o) {
+		msg_param_value msg = (msg_param_value)o;
+		Request request = null;
+		synchronized(this) {
+			request = inflight.get(msg.getParam_id());
+			if(request == null)
+				return;
+			// a differing value may be a PARAM_VALUE sent before the write, so wait for the timeout
+			if(Float.floatToRawIntBits(msg.param_value) != Float.floatToRawIntBits(request.param)) {
+				request.mismatch = true;
+				return;
+			}
+			inflight.remove(request.name);
+			sendNext();
+		}
+		request.complete(Status.CONFIRMED, null);
+	}
+
+	private void enqueue(Request request) {
+		synchronized(this) {
+			for(Iterator<Request> i = queue.iterator(); i.hasNext(); ) {
+				Request r = i.next();
+				if(r.name.equals(request.name)) {
+					i.remove();
+					r.complete(Status.REJECTED, "replaced by "+request.value);
+				}
+			}
+			queue.add(request);
+			sendNext();
+			if(watchdog == null)
+				watchdog = ExecutorService.get().scheduleAtFixedRate(this::checkTimeouts, CHECK_MS, CHECK_MS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// requires lock; a parameter is not written again while a write of it is in flight
+	private void sendNext() {
+		for(Iterator<Request> i = queue.iterator(); i.hasNext() && inflight.size() < MAX_IN_FLIGHT; ) {
+			Request r = i.next();
+			if(inflight.containsKey(r.name))
+				continue;
+			i.remove();
+			inflight.put(r.name, r);
+			send(r);
+		}
+	}
+
+	private void send(Request r) {
+		msg_param_set msg = new msg_param_set(255,1);
+		msg.target_component = 1;
+		msg.target_system = 1;
+		msg.param_type = r.type;
+		msg.setParam_id(r.name);
+		msg.param_value = r.param;
+		r.status = Status.SENT;
+		r.sent_tms = System.currentTimeMillis();
+		control.sendMAVLinkMessage(msg);
+	}
+
+	private void checkTimeouts() {
+		List<Request> failed = new ArrayList<Request>();
+		synchronized(this) {
+			long now = System.currentTimeMillis();
+			for(Iterator<Request> i = inflight.values().iterator(); i.hasNext(); ) {
+				Request r = i.next();
+				if(now - r.sent_tms < TIMEOUT_MS)
+					continue;
+				if(++r.retries > MAX_RETRIES) {
+					i.remove();
+					failed.add(r);
+				} else
+					send(r);
+			}
+			sendNext();
+			if(queue.isEmpty() && inflight.isEmpty()) {
+				watchdog.cancel(false);
+				watchdog = null;
+			}
+		}
+		for(Request r : failed)
+			r.complete(r.mismatch ? Status.REJECTED : Status.TIMEOUT, null);
+	}
+
+
+	public static class Request {
+
+		public final String name;
+		public final double value;
+
+		private final int   type;
+		private final float param;
+		private final CompletableFuture<Request> future = new CompletableFuture<Request>();
+
+		private volatile Status status = Status.QUEUED;
+		private String  reason   = null;
+		private int     retries  = 0;
+		private long    sent_tms = 0;
+		private boolean mismatch = false;
+
+		private Request(String name, int type, double value) {
+			this.name  = name;
+			this.type  = type;
+			this.value = value;
+			this.param = ParamUtils.valToParam(type, value);
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public int getRetries() {
+			return retries;
+		}
+
+		private void complete(Status status, String reason) {
+			this.status = status;
+			this.reason = reason;
+			future.complete(this);
+		}
+
+		public String toString() {
+			return name+" "+status.name().toLowerCase()+" ("+value+")"+(reason!=null ? ": "+reason : "");
+		}
+	}
+}
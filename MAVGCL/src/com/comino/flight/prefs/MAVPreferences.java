@@ -55,6 +55,7 @@ public class MAVPreferences {
 	public final static String XYCHART_OFFSET   = "XYCHARTOFFSET";
 	public final static String XYCHART_SLAM     = "XYCHARTSLAM";
 	public final static String ULOGGER          = "ULOGGER";
+	public final static String ULOGFILE         = "ULOGFILE";
 	public final static String TUNING_GROUP     = "TUNING_GROUP";
 	public final static String CTRLPOS          = "CTRLPOS";
 	public final static String HEALTHCHECK      = "HEALTHCHECK";
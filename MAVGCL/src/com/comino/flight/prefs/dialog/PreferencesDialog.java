@@ -87,6 +87,9 @@ public class PreferencesDialog  {
 	@FXML
 	private CheckBox ulog;
 
+	@FXML
+	private CheckBox ulogfile;
+
 	@FXML
 	private CheckBox check;
 
@@ -160,6 +163,7 @@ public class PreferencesDialog  {
 		path.getEditor().setText(userPrefs.get(MAVPreferences.PREFS_DIR,System.getProperty("user.home")));
 		autosave.selectedProperty().set(userPrefs.getBoolean(MAVPreferences.AUTOSAVE, false));
 		ulog.selectedProperty().set(userPrefs.getBoolean(MAVPreferences.ULOGGER, false));
+		ulogfile.selectedProperty().set(userPrefs.getBoolean(MAVPreferences.ULOGFILE, false));
 		check.selectedProperty().set(userPrefs.getBoolean(MAVPreferences.HEALTHCHECK, true));
 		svinacc.setText(userPrefs.get(MAVPreferences.RTKSVINACC, "3.5"));
 
@@ -171,6 +175,7 @@ public class PreferencesDialog  {
 			userPrefs.put(MAVPreferences.PREFS_DIR,path.getEditor().getText());
 			userPrefs.putBoolean(MAVPreferences.AUTOSAVE,autosave.isSelected());
 			userPrefs.putBoolean(MAVPreferences.ULOGGER,ulog.isSelected());
+			userPrefs.putBoolean(MAVPreferences.ULOGFILE,ulogfile.isSelected());
 			userPrefs.putBoolean(MAVPreferences.HEALTHCHECK,check.isSelected());
 			userPrefs.put(MAVPreferences.RTKSVINACC,svinacc.getText());
 
@@ -124,7 +124,7 @@ public class FlightTabs extends Pane {
 
 
 		if(camera!=null) {
-			camera.setup(control);
+			camera.setup(flightControl.getChartControl(), control);
 			camera.fadeProperty().bind(flightControl.getControl().getVideoVisibility());
 		}
 
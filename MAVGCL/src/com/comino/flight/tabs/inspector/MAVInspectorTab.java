@@ -35,12 +35,20 @@ package com.comino.flight.tabs.inspector;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.comino.flight.FXMLLoadHelper;
+import com.comino.flight.mavlink.MAVLinkListenerQueue;
+import com.comino.flight.mavlink.MAVLinkMessageRouter;
+import com.comino.flight.model.service.FrameUpdateScheduler;
 import com.comino.flight.observables.StateProperties;
+import com.comino.flight.widgets.charts.line.DecimationCache;
 import com.comino.mav.control.IMAVController;
 import com.comino.msp.main.control.listener.IMAVLinkListener;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
@@ -58,9 +66,14 @@ import javafx.scene.control.TreeTableColumn.SortType;
 import javafx.scene.control.TreeTableView;
 import javafx.scene.layout.Pane;
 import javafx.util.Callback;
+import javafx.util.Duration;
 
 public class MAVInspectorTab extends Pane implements IMAVLinkListener {
 
+	private static final String DIAGNOSTICS = "MAVGCL Listeners";
+	private static final int    QUEUE_SIZE  = 256;
+	private static final long   UPDATE_MS   = 100;
+
 	@FXML
 	private TreeTableView<Dataset> treetableview;
 
@@ -76,6 +89,13 @@ public class MAVInspectorTab extends Pane implements IMAVLinkListener {
 
 	final ObservableMap<String,Data> allData = FXCollections.observableHashMap();
 
+	private final Map<Class<?>,Long> last_update = new HashMap<Class<?>,Long>();
+	// latest throttled message per type, shown by the diagnostics timeline
+	private final Map<Class<?>,Object> pending  = new ConcurrentHashMap<Class<?>,Object>();
+
+	private MAVLinkMessageRouter router = null;
+	private Timeline diagnostics = null;
+
 
 	public MAVInspectorTab() {
 		FXMLLoadHelper.load(this, "MAVInspectorTab.fxml");
@@ -173,6 +193,9 @@ public class MAVInspectorTab extends Pane implements IMAVLinkListener {
 			}
 		});
 
+		diagnostics = new Timeline(new KeyFrame(Duration.millis(1000), ae -> updateDiagnostics()));
+		diagnostics.setCycleCount(Animation.INDEFINITE);
+		diagnostics.play();
 
 	}
 
@@ -181,18 +204,78 @@ public class MAVInspectorTab extends Pane implements IMAVLinkListener {
 	}
 
 	public MAVInspectorTab setup(IMAVController control) {
-		control.addMAVLinkListener(this);
+		router = MAVLinkMessageRouter.getInstance(control);
+		router.subscribeAllAsync(this, MAVLinkListenerQueue.OverflowPolicy.COALESCE_LATEST, QUEUE_SIZE);
 		return this;
 	}
 
+	// Called by the queue worker: only the latest message per type is delivered
 	@Override
 	public void received(Object _msg) {
-		if(!this.isDisabled())
-			new Thread(() -> {
-				Platform.runLater(() -> {
-					parseMessageString(_msg.toString().split(" "));
-				});
-			}).run();
+		if(this.isDisabled())
+			return;
+		long tms = System.currentTimeMillis();
+		Long last = last_update.get(_msg.getClass());
+		if(last!=null && (tms - last) < UPDATE_MS) {
+			pending.put(_msg.getClass(), _msg);
+			return;
+		}
+		pending.remove(_msg.getClass());
+		last_update.put(_msg.getClass(), tms);
+		String[] msg = _msg.toString().split(" ");
+		Platform.runLater(() -> {
+			parseMessageString(msg);
+		});
+	}
+
+	private void updateDiagnostics() {
+		if(router==null || this.isDisabled())
+			return;
+
+		pending.forEach((c,m) -> {
+			if(pending.remove(c, m))
+				parseMessageString(m.toString().split(" "));
+		});
+
+		Data data = allData.get(DIAGNOSTICS);
+		if(data==null) {
+			data = new Data(DIAGNOSTICS, FXCollections.observableHashMap());
+			allData.put(DIAGNOSTICS, data);
+			TreeItem<Dataset> ti = new TreeItem<>(new Dataset(DIAGNOSTICS, null));
+			treetableview.getRoot().getChildren().add(0,ti);
+		}
+
+		TreeItem<Dataset> ti = null;
+		for(TreeItem<Dataset> t : treetableview.getRoot().getChildren())
+			if(DIAGNOSTICS.equals(t.getValue().getStr())) { ti = t; break; }
+
+		for(MAVLinkMessageRouter.Statistics s : router.getStatistics()) {
+			String value = s.isAsync()
+					? String.format("queue %d/%d dropped %d coalesced %d", s.getQueueDepth(), s.getQueueCapacity(),
+							s.getDropped(), s.getCoalesced())
+					: String.format("%d msgs avg %.1f us", s.getCount(), s.getAverageLatency_us());
+			setDiagnosticsValue(data, ti, s.getName(), value);
+		}
+
+		FrameUpdateScheduler scheduler = FrameUpdateScheduler.getInstance();
+		setDiagnosticsValue(data, ti, "Frames", String.format("%d dropped %d", scheduler.getFrameCount(),
+				scheduler.getDroppedFrames()));
+		for(FrameUpdateScheduler.Task t : scheduler.getTasks())
+			setDiagnosticsValue(data, ti, t.getName(), String.format("%d updates merged %d avg %.1f ms",
+					t.getRuns(), t.getMerged(), t.getAverageTime_ms()));
+
+		setDiagnosticsValue(data, ti, "DecimationCache", DecimationCache.getInstance().getSummary());
+	}
+
+	private void setDiagnosticsValue(Data data, TreeItem<Dataset> ti, String name, String value) {
+		Dataset d = data.getData().get(name);
+		if(d==null) {
+			d = new Dataset(name, value);
+			data.getData().put(name, d);
+			if(ti!=null)
+				ti.getChildren().add(new TreeItem<Dataset>(d));
+		} else
+			d.setValue(value);
 	}
 
 	private synchronized void parseMessageString(String[] msg) {
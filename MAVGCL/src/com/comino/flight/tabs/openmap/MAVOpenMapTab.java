@@ -42,12 +42,15 @@ import org.lodgon.openmapfx.core.DefaultBaseMapProvider;
 import org.lodgon.openmapfx.core.LayeredMap;
 import org.lodgon.openmapfx.core.LicenceLayer;
 import org.lodgon.openmapfx.core.PositionLayer;
+import org.lodgon.openmapfx.core.TileProvider;
+import org.lodgon.openmapfx.providers.ArchiveTileProvider;
 import org.lodgon.openmapfx.providers.BingTileProvider;
 
 import com.comino.flight.FXMLLoadHelper;
 import com.comino.flight.log.FileHandler;
 import com.comino.flight.model.AnalysisDataModel;
 import com.comino.flight.model.service.AnalysisModelService;
+import com.comino.flight.model.service.FrameUpdateScheduler;
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.widgets.charts.control.ChartControlWidget;
 import com.comino.flight.widgets.charts.control.IChartControl;
@@ -56,8 +59,8 @@ import com.comino.flight.widgets.gps.details.GPSDetailsWidget;
 import com.comino.mav.control.IMAVController;
 import com.comino.openmapfx.ext.CanvasLayer;
 import com.comino.openmapfx.ext.CanvasLayerPaintListener;
+import com.comino.openmapfx.ext.ProjectedPath;
 
-import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.FloatProperty;
@@ -71,7 +74,7 @@ import javafx.embed.swing.SwingFXUtils;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
-import javafx.geometry.Point2D;
+import javafx.scene.Node;
 import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
@@ -88,7 +91,6 @@ import javafx.scene.shape.Rectangle;
 
 public class MAVOpenMapTab extends BorderPane implements IChartControl {
 
-	private final static int MAP_UPDATE_MS = 100;
 
 	private final static String[] GPS_SOURCES = { "Global Position", "Raw GPS data" };
 
@@ -127,13 +129,14 @@ public class MAVOpenMapTab extends BorderPane implements IChartControl {
 	private LicenceLayer  		licenceLayer;
 	private CanvasLayer			canvasLayer;
 
-	private AnimationTimer task;
+	private FrameUpdateScheduler.Task task;
 
 	private AnalysisDataModel model;
 	private int type = 0;
 
 
 	private int index=0;
+	private final ProjectedPath path = new ProjectedPath();
 
 	private IntegerProperty timeFrame    = new SimpleIntegerProperty(30);
 
@@ -152,49 +155,42 @@ public class MAVOpenMapTab extends BorderPane implements IChartControl {
 
 		this.state = StateProperties.getInstance();
 
-		task = new AnimationTimer() {
-			private long tms;
-
-			@Override public void handle(long now) {
-				if((System.currentTimeMillis()-tms)>100) {
-					tms = System.currentTimeMillis();
-					if(!state.getRecordingProperty().get() && dataService.isCollecting()) {
-						canvasLayer.redraw(true);
-					}
-					Platform.runLater(() -> {
-						try {
-							if(model.getValue("HOMLAT")!=0 && model.getValue("HOMLON")!=0) {
-								//map.setCenter(model.gps.ref_lat, model.gps.ref_lon);
-								homeLayer.setVisible(true);
-								homeLayer.updatePosition(model.getValue("HOMLAT"), model.getValue("HOMLON"));
-							} else
-								homeLayer.setVisible(false);
-
-							if(model.getValue("BASELAT")!=0 && model.getValue("BASELON")!=0) {
-								baseLayer.setVisible(true);
-								baseLayer.updatePosition(model.getValue("BASELAT"), model.getValue("BASELON"));
-							} else
-								baseLayer.setVisible(false);
-
-							if(model.getValue("RGPSHDOP") > 2.5)
-								positionLayer.getIcon().setImage(plane_invalid);
-							else
-								positionLayer.getIcon().setImage(plane_valid);
-							if(mapfollow.selectedProperty().get()) {
-								map.setCenter(model.getValue(TYPES[type][0]),model.getValue(TYPES[type][1]));
-								canvasLayer.redraw(true);
-							} else {
-								canvasLayer.redraw(false);
-							}
-							positionLayer.updatePosition(
-									model.getValue(TYPES[type][0]),model.getValue(TYPES[type][1]),model.getValue("HEAD"));
-
-
-						} catch(Exception e) { e.printStackTrace(); }
-					});
-				}
+		task = FrameUpdateScheduler.getInstance().registerPeriodic("MAVOpenMapTab", 100, () -> {
+			if(isDisabled() || model==null)
+				return;
+			if(!state.getRecordingProperty().get() && dataService.isCollecting()) {
+				canvasLayer.redraw(true);
 			}
-		};
+			try {
+				if(model.getValue("HOMLAT")!=0 && model.getValue("HOMLON")!=0) {
+					//map.setCenter(model.gps.ref_lat, model.gps.ref_lon);
+					homeLayer.setVisible(true);
+					homeLayer.updatePosition(model.getValue("HOMLAT"), model.getValue("HOMLON"));
+				} else
+					homeLayer.setVisible(false);
+
+				if(model.getValue("BASELAT")!=0 && model.getValue("BASELON")!=0) {
+					baseLayer.setVisible(true);
+					baseLayer.updatePosition(model.getValue("BASELAT"), model.getValue("BASELON"));
+				} else
+					baseLayer.setVisible(false);
+
+				if(model.getValue("RGPSHDOP") > 2.5)
+					positionLayer.getIcon().setImage(plane_invalid);
+				else
+					positionLayer.getIcon().setImage(plane_valid);
+				if(mapfollow.selectedProperty().get()) {
+					map.setCenter(model.getValue(TYPES[type][0]),model.getValue(TYPES[type][1]));
+					canvasLayer.redraw(true);
+				} else {
+					canvasLayer.redraw(false);
+				}
+				positionLayer.updatePosition(
+						model.getValue(TYPES[type][0]),model.getValue(TYPES[type][1]),model.getValue("HEAD"));
+
+
+			} catch(Exception e) { e.printStackTrace(); }
+		});
 
 	}
 
@@ -209,7 +205,19 @@ public class MAVOpenMapTab extends BorderPane implements IChartControl {
 		mapfollow.selectedProperty().set(true);
 
 		String mapFileName = FileHandler.getInstance().getBasePath()+"/MapCache";
-		DefaultBaseMapProvider provider = new DefaultBaseMapProvider(new BingTileProvider("http://t0.tiles.virtualearth.net/tiles/a",mapFileName));
+		TileProvider tiles = new BingTileProvider("http://t0.tiles.virtualearth.net/tiles/a",mapFileName);
+
+		// use an offline tile archive if available, Bing for tiles outside the archive
+		File archive = new File(mapFileName+".tiles");
+		if(archive.exists()) {
+			try {
+				tiles = new ArchiveTileProvider(archive, tiles, "© Microsoft BingMaps");
+				System.out.println("Map tiles: "+tiles.getDefaultType().getTypeName()+" ("+archive.length()/1024+" kb)");
+			} catch (IOException e) {
+				System.err.println(this.getClass().getSimpleName()+":"+e.getMessage());
+			}
+		}
+		DefaultBaseMapProvider provider = new DefaultBaseMapProvider(tiles);
 
 		gpssource.getItems().addAll(GPS_SOURCES);
 		gpssource.getSelectionModel().select(0);
@@ -249,53 +257,21 @@ public class MAVOpenMapTab extends BorderPane implements IChartControl {
 		licenceLayer = new LicenceLayer(provider);
 		map.getLayers().add(licenceLayer);
 
-		// Test paintlistener
 		canvasLayer.addPaintListener(new CanvasLayerPaintListener() {
 
-			Point2D p0; Point2D p1;  boolean first = true; AnalysisDataModel m;
-
-
 			@Override
 			public void redraw(GraphicsContext gc, double width, double height, boolean refresh) {
 
+				path.update(dataService.getModelList(), TYPES[type][0], TYPES[type][1]);
 
-				if(refresh) {
+				if(refresh)
 					index = dataService.calculateX0Index(1);
-					first = true;
-				}
-
-				// TODO MAVOpenMapTab: Draw path also in replay
-
-				if(state.getRecordingProperty().get() &&
-						(dataService.getModelList().size()-index)>2*MAP_UPDATE_MS/dataService.getCollectorInterval_ms()) {
-
-
-					gc.setStroke(Color.DARKKHAKI); gc.setFill(Color.DARKKHAKI);
-					gc.setLineWidth(2);
-					for(int i=index; i<dataService.getModelList().size();
-							i += MAP_UPDATE_MS/dataService.getCollectorInterval_ms()) {
 
-						m = dataService.getModelList().get(i);
-
-						if(m.getValue(TYPES[type][0])==0 && m.getValue(TYPES[type][1]) == 0)
-							continue;
-
-						if(first) {
-							p0 = map.getMapArea().getMapPoint(
-									m.getValue(TYPES[type][0]),m.getValue(TYPES[type][1]));
-
-							gc.fillOval(p0.getX()-4, p0.getY()-4,8,8);
-							first = false; continue;
-						}
-						p1 = map.getMapArea().getMapPoint(
-								m.getValue(TYPES[type][0]),m.getValue(TYPES[type][1]));
-
-						gc.strokeLine(p0.getX(), p0.getY(), p1.getX(), p1.getY());
-						p0 = map.getMapArea().getMapPoint(
-								m.getValue(TYPES[type][0]),m.getValue(TYPES[type][1]));
-					}
-					index = dataService.getModelList().size();
-				}
+				gc.setStroke(Color.DARKKHAKI); gc.setFill(Color.DARKKHAKI);
+				gc.setLineWidth(2);
+				Node view = map.getMapArea().getView();
+				index = path.draw(gc, map.getMapArea().zoomProperty().get(),
+						view.getTranslateX(), view.getTranslateY(), width, height, index, refresh);
 			}
 
 		});
@@ -395,8 +371,6 @@ public class MAVOpenMapTab extends BorderPane implements IChartControl {
 		gpsdetails.setup(control);
 		recordControl.addChart(this);
 
-		task.start();
-
 		this.getParent().disabledProperty().addListener((l,o,n) -> {
 			if(!n.booleanValue()) {
 				int current_x1_pt = dataService.calculateX0Index(scroll.get());
@@ -33,24 +33,23 @@
 
 package com.comino.flight.tabs.parameter;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 import org.mavlink.messages.MAV_PARAM_TYPE;
 import org.mavlink.messages.MAV_SEVERITY;
-import org.mavlink.messages.lquac.msg_param_set;
 
 import com.comino.flight.FXMLLoadHelper;
+import com.comino.flight.log.FileHandler;
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.parameter.PX4Parameters;
-import com.comino.flight.parameter.ParamUtils;
 import com.comino.flight.parameter.ParameterAttributes;
 import com.comino.flight.parameter.ParameterFactMetaData;
+import com.comino.flight.parameter.ParameterWriter;
 import com.comino.mav.control.IMAVController;
 import com.comino.msp.log.MSPLogger;
-import com.comino.msp.utils.ExecutorService;
 
 import javafx.application.Platform;
 import javafx.beans.binding.ObjectBinding;
@@ -110,7 +109,6 @@ public class MAVParameterTab extends Pane {
 
 	private ParameterFactMetaData metadata = null;
 
-	private ScheduledFuture<?> timeout;
 
 
 	private MSPLogger log = MSPLogger.getInstance();
@@ -132,6 +130,24 @@ public class MAVParameterTab extends Pane {
 
 		treetableview.setPlaceholder(new Label("Parameters not loaded"));
 
+		ContextMenu profileMenu = new ContextMenu();
+		MenuItem applyProfile = new MenuItem("Apply parameter profile...");
+		applyProfile.setOnAction(event -> {
+			File file = FileHandler.getInstance().selectParameterProfile();
+			if(file == null)
+				return;
+			try {
+				ParameterWriter.getInstance().apply(file);
+			} catch (IOException e) {
+				log.writeLocalMsg(e.getMessage(), MAV_SEVERITY.MAV_SEVERITY_WARNING);
+			}
+		});
+		profileMenu.getItems().add(applyProfile);
+		profileMenu.setOnShowing(event -> applyProfile.setDisable(
+				StateProperties.getInstance().getLogLoadedProperty().get() ||
+				!StateProperties.getInstance().getParamLoadedProperty().get()));
+		treetableview.setContextMenu(profileMenu);
+
 		treetableview.focusedProperty().addListener(new ChangeListener<Boolean>() {
 			@Override
 			public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) {
@@ -287,8 +303,6 @@ public class MAVParameterTab extends Pane {
 					Platform.runLater(() -> {
 						boolean editable = !StateProperties.getInstance().getLogLoadedProperty().get();
 						buildParameterTree((ParameterAttributes)newValue, editable);
-						if(timeout!=null && !timeout.isDone())
-							timeout.cancel(true);
 					});
 				}
 			}
@@ -424,20 +438,14 @@ public class MAVParameterTab extends Pane {
 
 									textField.setStyle("-fx-text-fill: #80D0F0;");
 
-									msg_param_set msg = new msg_param_set(255,1);
-									msg.target_component = 1;
-									msg.target_system = 1;
-									msg.param_type = type;
-									msg.setParam_id(att.name);
-									msg.param_value = ParamUtils.valToParam(type, val);
-
-									control.sendMAVLinkMessage(msg);
 									textField.commitValue();
-									timeout = ExecutorService.get().schedule(() -> {
-										MSPLogger.getInstance().writeLocalMsg(att.name+" was not set to "+val+" (timeout)",
-												MAV_SEVERITY.MAV_SEVERITY_DEBUG);
-										textField.setText(getStringOfValue());
-									}, 1000, TimeUnit.MILLISECONDS);
+									ParameterWriter.getInstance().set(att, val).thenAccept(r -> {
+										if(r.getStatus()!=ParameterWriter.Status.CONFIRMED) {
+											MSPLogger.getInstance().writeLocalMsg(att.name+" was not set to "+val+" ("
+													+r.getStatus().name().toLowerCase()+")", MAV_SEVERITY.MAV_SEVERITY_DEBUG);
+											Platform.runLater(() -> textField.setText(getStringOfValue()));
+										}
+									});
 
 								}
 								else {
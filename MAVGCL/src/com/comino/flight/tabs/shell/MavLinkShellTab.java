@@ -40,6 +40,7 @@ import org.mavlink.messages.SERIAL_CONTROL_FLAG;
 import org.mavlink.messages.lquac.msg_serial_control;
 
 import com.comino.flight.FXMLLoadHelper;
+import com.comino.flight.mavlink.MAVLinkMessageRouter;
 import com.comino.flight.observables.StateProperties;
 import com.comino.mav.control.IMAVController;
 import com.comino.msp.main.control.listener.IMAVLinkListener;
@@ -136,7 +137,7 @@ public class MavLinkShellTab extends Pane implements IMAVLinkListener  {
 	public MavLinkShellTab setup(IMAVController control) {
 		this.control = control;
 		this.state   = StateProperties.getInstance();
-		control.addMAVLinkListener(this);
+		MAVLinkMessageRouter.getInstance(control).subscribe(this, msg_serial_control.class);
 
 		this.disabledProperty().addListener((v,ov,nv) -> {
 			if(!nv.booleanValue()) {
@@ -33,27 +33,43 @@
 
 package com.comino.flight.widgets.camera;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
 import java.util.prefs.Preferences;
 
 import com.comino.flight.FXMLLoadHelper;
+import com.comino.flight.log.FileHandler;
+import com.comino.flight.model.AnalysisDataModel;
 import com.comino.flight.model.service.AnalysisModelService;
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.prefs.MAVPreferences;
+import com.comino.flight.widgets.charts.control.ChartControlWidget;
+import com.comino.flight.widgets.charts.control.IChartControl;
 import com.comino.jfx.extensions.WidgetPane;
 import com.comino.mav.control.IMAVController;
 import com.comino.video.src.IMWVideoSource;
 import com.comino.video.src.impl.StreamVideoSource;
+import com.comino.video.src.impl.VideoPlayer;
+import com.comino.video.src.impl.VideoRecorder;
 
 import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.FloatProperty;
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleFloatProperty;
 import javafx.fxml.FXML;
+import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 
-public class CameraWidget extends WidgetPane  {
+/**
+ * Shows the live video stream. While collecting, the raw frames are recorded with the collector
+ * time; afterwards the frame at the chart cursor is shown when scrolling through the recording.
+ */
+public class CameraWidget extends WidgetPane implements IChartControl {
 
 	private static final int X = 320;
 	private static final int Y = 240;
@@ -65,6 +81,14 @@ public class CameraWidget extends WidgetPane  {
 	private IMWVideoSource 	source = null;
 	private boolean			big_size=false;
 	private FloatProperty  	scroll= new SimpleFloatProperty(0);
+	private int				width=X/2, height=Y/2;
+
+	private final AnalysisModelService dataService = AnalysisModelService.getInstance();
+	private final VideoRecorder        recorder    = new VideoRecorder(() -> dataService.getRecordingTimeUs());
+	private final FrameLoader          loader      = new FrameLoader();
+	private final Object               playerLock  = new Object();
+	private volatile VideoPlayer       player      = null;
+	private volatile boolean           replay      = false;
 
 	public CameraWidget() {
 		FXMLLoadHelper.load(this, "CameraWidget.fxml");
@@ -89,6 +113,10 @@ public class CameraWidget extends WidgetPane  {
 
 		resize(false,X,Y);
 
+		Tooltip tip = new Tooltip();
+		tip.setOnShowing(event -> tip.setText(source!=null ? source.toString() : "No video"));
+		Tooltip.install(image, tip);
+
 		image.setOnMouseClicked(event -> {
 
 			if(event.getClickCount()==2) {
@@ -110,13 +138,112 @@ public class CameraWidget extends WidgetPane  {
 			}
 		});
 
+		// called from the collector thread
+		StateProperties.getInstance().getRecordingProperty().addListener((o,ov,nv) -> {
+			if(nv.booleanValue()) {
+				closePlayer();
+				if(source!=null && source.isRunning()) {
+					try {
+						recorder.start(getVideoFile());
+					} catch (IOException e) {
+						System.err.println(this.getClass().getSimpleName()+":"+e.getMessage());
+					}
+				}
+			} else if(recorder.isRecording()) {
+				// the player is opened when the file is complete
+				recorder.stop(() -> {
+					if(!recorder.isRecording())
+						openPlayer();
+				});
+			}
+		});
+
+		StateProperties.getInstance().getLogLoadedProperty().addListener((o,ov,nv) -> {
+			if(nv.booleanValue())
+				closePlayer();
+		});
+
+		scroll.addListener((o,ov,nv) -> showFrame(nv.floatValue()));
+
+		Thread worker = new Thread(loader, "VideoReplay");
+		worker.setDaemon(true);
+		worker.start();
+
+	}
+
+	public void setup(ChartControlWidget recordControl, IMAVController control) {
+		recordControl.addChart(this);
 	}
 
+	@Override
 	public FloatProperty getScrollProperty() {
 		return scroll;
 	}
 
+	@Override
+	public IntegerProperty getTimeFrameProperty() {
+		return null;
+	}
+
+	@Override
+	public BooleanProperty getIsScrollingProperty() {
+		return null;
+	}
+
+	@Override
+	public void refreshChart() {
+		if(replay)
+			showFrame(scroll.get());
+	}
+
+	// shows the recorded frame at the cursor, the live stream if the cursor is at the end
+	private void showFrame(float factor) {
+		if(player==null || dataService.isCollecting() || factor >= 1) {
+			replay = false;
+			return;
+		}
+		List<AnalysisDataModel> list = dataService.getModelList();
+		if(list.isEmpty())
+			return;
+		int index = Math.min(dataService.calculateX0Index(factor), list.size()-1);
+		replay = true;
+		loader.request(list.get(index).tms);
+	}
+
+	private File getVideoFile() {
+		return new File(FileHandler.getInstance().getBasePath()+"/video."+VideoRecorder.EXTENSION);
+	}
+
+	private void openPlayer() {
+		closePlayer();
+		try {
+			VideoPlayer p = new VideoPlayer(getVideoFile());
+			synchronized(playerLock) {
+				player = p;
+			}
+		} catch (IOException e) {
+			System.err.println(this.getClass().getSimpleName()+":"+e.getMessage());
+		}
+	}
+
+	private void closePlayer() {
+		replay = false;
+		synchronized(playerLock) {
+			loader.shown_tms = -1;
+			if(player==null)
+				return;
+			try {
+				player.close();
+			} catch (IOException e) { }
+			player = null;
+		}
+	}
+
 	private void resize(boolean big, int maxX, int maxY) {
+		width  = big ? maxX : maxX/2;
+		height = big ? maxY : maxY/2;
+		if(source!=null)
+			source.setTargetSize(width, height);
 		Platform.runLater(() -> {
 			if(big) {
 				image.setLayoutX(0); image.setFitWidth(maxX);
@@ -129,10 +256,6 @@ public class CameraWidget extends WidgetPane  {
 		});
 	}
 
-	public void setup(IMAVController control) {
-
-	}
-
 
 	private boolean connect() {
 		System.out.println("VideSource connect");
@@ -143,7 +266,11 @@ public class CameraWidget extends WidgetPane  {
 		try {
 			URL url = new URL(url_string);
 			source = new StreamVideoSource(url,AnalysisModelService.getInstance().getCurrent());
+			source.setTargetSize(width, height);
+			source.setRecorder(recorder);
 			source.addProcessListener((im,buf) -> {
+				if(replay)
+					return;
 				Platform.runLater(() -> {
 					image.setImage(im);
 				});
@@ -154,4 +281,58 @@ public class CameraWidget extends WidgetPane  {
 		}
 		return true;
 	}
+
+
+	/**
+	 * Decodes the requested replay frame off the FX thread. A new request replaces a pending
+	 * one, so that only the latest cursor position is decoded.
+	 */
+	private class FrameLoader implements Runnable {
+
+		private long requested = -1;
+
+		// last decoded frame, guarded by playerLock
+		private long shown_tms = -1;
+		private int  shown_width = 0;
+
+		synchronized void request(long tms) {
+			requested = tms;
+			notify();
+		}
+
+		@Override
+		public void run() {
+			while(true) {
+				long tms;
+				synchronized(this) {
+					while(requested < 0) {
+						try { wait(); } catch (InterruptedException e) { return; }
+					}
+					tms = requested;
+					requested = -1;
+				}
+
+				Image frame = null;
+				synchronized(playerLock) {
+					if(player==null || !replay)
+						continue;
+					if(tms==shown_tms && width==shown_width)
+						continue;
+					try {
+						frame = player.getImage(tms, width, height);
+						shown_tms = tms; shown_width = width;
+					} catch (IOException e) {
+						System.err.println(CameraWidget.class.getSimpleName()+":"+e.getMessage());
+						continue;
+					}
+				}
+
+				final Image next = frame;
+				Platform.runLater(() -> {
+					if(replay)
+						image.setImage(next);
+				});
+			}
+		}
+	}
 }
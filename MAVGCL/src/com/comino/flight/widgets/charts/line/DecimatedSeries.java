@@ -0,0 +1,150 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.widgets.charts.line;
+
+import java.util.List;
+
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.KeyFigureMetaData;
+
+/**
+ * Min/max per pixel column reduction of a key figure over a range of collector samples.
+ * Each column keeps first, last, min, max and mean, so that the drawn line keeps all peaks
+ * regardless of the number of samples per pixel.
+ */
+public class DecimatedSeries {
+
+	public final int     x0;
+	public final int     x1;
+	public final int     columns;
+
+	public final float[] first;
+	public final float[] last;
+	public final float[] min;
+	public final float[] max;
+	public final float[] avg;
+	public final int[]   count;
+
+	private float  min_all = Float.NaN;
+	private float  max_all = Float.NaN;
+
+	public DecimatedSeries(int x0, int x1, int columns) {
+		this.x0 = x0; this.x1 = x1;
+		this.columns = columns;
+		this.first = new float[columns];
+		this.last  = new float[columns];
+		this.min   = new float[columns];
+		this.max   = new float[columns];
+		this.avg   = new float[columns];
+		this.count = new int[columns];
+	}
+
+	/**
+	 * Reduces samples x0..x1 of the list to the given number of columns. Samples beyond the
+	 * end of the list are left empty.
+	 */
+	public static DecimatedSeries decimate(List<AnalysisDataModel> list, KeyFigureMetaData kf, int x0, int x1, int columns) {
+		DecimatedSeries s = new DecimatedSeries(x0, x1, Math.max(1, columns));
+		s.update(list, kf, x0, Math.min(x1, list.size()-1));
+		return s;
+	}
+
+	/**
+	 * Adds samples from..to (inclusive) to the columns
+	 */
+	public void update(List<AnalysisDataModel> list, KeyFigureMetaData kf, int from, int to) {
+		long range = Math.max(1, x1 - x0);
+		for(int i = Math.max(from, x0); i <= to && i <= x1; i++) {
+			float v = list.get(i).getValue(kf);
+			if(Float.isNaN(v))
+				continue;
+			int c = (int)((i - x0) * (long)columns / range);
+			if(c >= columns) c = columns - 1;
+			if(count[c]==0) {
+				first[c] = v; min[c] = v; max[c] = v; avg[c] = 0;
+			} else {
+				if(v < min[c]) min[c] = v;
+				if(v > max[c]) max[c] = v;
+			}
+			avg[c] += v; last[c] = v; count[c]++;
+			if(v < min_all || Float.isNaN(min_all)) min_all = v;
+			if(v > max_all || Float.isNaN(max_all)) max_all = v;
+		}
+	}
+
+	/**
+	 * Column containing sample i, limited to the columns of the series
+	 */
+	public int getColumn(int i) {
+		int c = (int)((i - x0) * (long)columns / Math.max(1, x1 - x0));
+		return Math.max(0, Math.min(columns - 1, c));
+	}
+
+	public float getMean(int c) {
+		return count[c] > 0 ? avg[c] / count[c] : Float.NaN;
+	}
+
+	public float getMin() {
+		return min_all;
+	}
+
+	public float getMax() {
+		return max_all;
+	}
+
+	/**
+	 * Minimum of the columns containing samples from..to
+	 */
+	public float getMin(int from, int to) {
+		float v = Float.NaN;
+		for(int c = getColumn(from); c <= getColumn(to); c++)
+			if(count[c] > 0 && (min[c] < v || Float.isNaN(v))) v = min[c];
+		return v;
+	}
+
+	/**
+	 * Maximum of the columns containing samples from..to
+	 */
+	public float getMax(int from, int to) {
+		float v = Float.NaN;
+		for(int c = getColumn(from); c <= getColumn(to); c++)
+			if(count[c] > 0 && (max[c] > v || Float.isNaN(v))) v = max[c];
+		return v;
+	}
+
+	public boolean isEmpty() {
+		return Float.isNaN(min_all);
+	}
+}
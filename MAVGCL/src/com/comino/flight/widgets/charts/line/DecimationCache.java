@@ -0,0 +1,244 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.widgets.charts.line;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.KeyFigureMetaData;
+
+/**
+ * Decimated series shared by all charts, keyed by key figure, samples per column and an aligned
+ * start. A series spans two blocks of columns starting at a multiple of the block size, so a
+ * window moving forward keeps its buffer until it leaves the first block. Synchronized charts
+ * showing the same key figure reuse one buffer. While recording, a cached range is extended with
+ * the new samples only. The least recently used buffers are evicted when the memory budget is
+ * exceeded.
+ */
+public class DecimationCache {
+
+	private static final long DEFAULT_BUDGET = 16 * 1024 * 1024;
+
+	private static DecimationCache instance = null;
+
+	private final LinkedHashMap<Key,Entry> cache = new LinkedHashMap<Key,Entry>(64, 0.75f, true);
+
+	private long budget = DEFAULT_BUDGET;
+	private long used   = 0;
+
+	private long hits = 0; private long extended = 0; private long misses = 0; private long evicted = 0;
+	private long prefetched = 0; private long prefetch_hits = 0;
+
+	public static DecimationCache getInstance() {
+		if(instance==null)
+			instance = new DecimationCache();
+		return instance;
+	}
+
+	private DecimationCache() {
+
+	}
+
+	/**
+	 * Returns a series containing samples x0..x1 of the key figure with at most the given number
+	 * of columns for this range
+	 */
+	public synchronized DecimatedSeries get(List<AnalysisDataModel> list, KeyFigureMetaData kf, int x0, int x1, int columns) {
+		if(list.size()==0)
+			return null;
+
+		Key key = getKey(kf, x0, x1, columns);
+		int to = Math.min(key.x0 + 2 * key.block() - 1, list.size()-1);
+		AnalysisDataModel first = list.get(0);
+
+		Entry e = cache.get(key);
+		// A different first sample means that the model list was replaced
+		if(e!=null && e.first==first && e.to <= to) {
+			if(e.to < to) {
+				e.series.update(list, kf, e.to+1, to);
+				e.to = to;
+				extended++;
+			} else
+				hits++;
+			if(e.prefetched) {
+				e.prefetched = false;
+				prefetch_hits++;
+			}
+			return e.series;
+		}
+
+		if(e!=null)
+			remove(key);
+		e = new Entry(decimate(list, kf, key), first, to);
+		cache.put(key, e);
+		used += e.size;
+		misses++;
+		evict();
+		return e.series;
+	}
+
+	/**
+	 * Returns true if a valid buffer for the range is cached
+	 */
+	public synchronized boolean contains(List<AnalysisDataModel> list, KeyFigureMetaData kf, int x0, int x1, int columns) {
+		if(list.size()==0)
+			return false;
+		Key key = getKey(kf, x0, x1, columns);
+		Entry e = cache.get(key);
+		return e!=null && e.first==list.get(0) && e.to == Math.min(key.x0 + 2 * key.block() - 1, list.size()-1);
+	}
+
+	/**
+	 * Decimates the series that get() returns for this range, without caching it
+	 */
+	public static DecimatedSeries decimate(List<AnalysisDataModel> list, KeyFigureMetaData kf, int x0, int x1, int columns) {
+		return decimate(list, kf, getKey(kf, x0, x1, columns));
+	}
+
+	/**
+	 * Adds a buffer decimated in advance by decimate(), e.g. by the prefetcher
+	 */
+	public synchronized void put(List<AnalysisDataModel> list, KeyFigureMetaData kf, DecimatedSeries series) {
+		if(list.size()==0)
+			return;
+		Key key = new Key(kf.hash, series.x0, (series.x1 - series.x0) / series.columns, series.columns / 2);
+		remove(key);
+		Entry e = new Entry(series, list.get(0), Math.min(series.x1 - 1, list.size()-1));
+		e.prefetched = true;
+		cache.put(key, e);
+		used += e.size;
+		prefetched++;
+		evict();
+	}
+
+	public synchronized void setBudget(long bytes) {
+		this.budget = bytes;
+		evict();
+	}
+
+	public synchronized void clear() {
+		cache.clear();
+		used = 0;
+	}
+
+	public long getUsedBytes() {
+		return used;
+	}
+
+	public String getSummary() {
+		return String.format("%d entries %d kb, hits %d extended %d misses %d evicted %d prefetched %d used %d",
+				cache.size(), used / 1024, hits, extended, misses, evicted, prefetched, prefetch_hits);
+	}
+
+	public String toString() {
+		return "Decimation cache: "+getSummary();
+	}
+
+	private static Key getKey(KeyFigureMetaData kf, int x0, int x1, int columns) {
+		columns = Math.max(1, columns);
+		int spc   = Math.max(1, (x1 - x0 + columns - 1) / columns);
+		int block = spc * columns;
+		return new Key(kf.hash, Math.max(0, x0) / block * block, spc, columns);
+	}
+
+	// each column holds exactly spc samples
+	private static DecimatedSeries decimate(List<AnalysisDataModel> list, KeyFigureMetaData kf, Key key) {
+		DecimatedSeries s = new DecimatedSeries(key.x0, key.x0 + 2 * key.block(), 2 * key.columns);
+		s.update(list, kf, key.x0, Math.min(s.x1 - 1, list.size()-1));
+		return s;
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<Key,Entry>> i = cache.entrySet().iterator();
+		while(used > budget && i.hasNext()) {
+			used -= i.next().getValue().size;
+			i.remove();
+			evicted++;
+		}
+	}
+
+	private void remove(Key key) {
+		Entry e = cache.remove(key);
+		if(e!=null)
+			used -= e.size;
+	}
+
+
+	private static class Key {
+
+		final int hash, x0, spc, columns;
+
+		Key(int hash, int x0, int spc, int columns) {
+			this.hash = hash; this.x0 = x0; this.spc = spc; this.columns = columns;
+		}
+
+		int block() {
+			return spc * columns;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((hash * 31 + x0) * 31 + spc) * 31 + columns;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return k.hash==hash && k.x0==x0 && k.spc==spc && k.columns==columns;
+		}
+	}
+
+	private static class Entry {
+
+		final DecimatedSeries   series;
+		final AnalysisDataModel first;
+		final long              size;
+		int to;
+		boolean prefetched = false;
+
+		Entry(DecimatedSeries series, AnalysisDataModel first, int to) {
+			this.series = series;
+			this.first  = first;
+			this.to     = to;
+			// 5 float arrays and one int array plus object overhead
+			this.size   = series.columns * 24L + 128;
+		}
+	}
+}
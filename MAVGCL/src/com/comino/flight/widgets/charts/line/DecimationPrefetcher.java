@@ -0,0 +1,126 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.widgets.charts.line;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.KeyFigureMetaData;
+
+/**
+ * Decimates the chart windows ahead of the scroll direction in the background and puts
+ * them into the DecimationCache, so that the next scroll steps only pick up ready buffers.
+ * The next windows are predicted from the last scroll step. Pending windows are dropped when
+ * the direction changes.
+ */
+public class DecimationPrefetcher {
+
+	private static final int WINDOWS = 3;
+
+	private static DecimationPrefetcher instance = null;
+
+	private final ExecutorService      pool;
+	private final DecimationCache      cache      = DecimationCache.getInstance();
+	private final AtomicInteger        generation = new AtomicInteger();
+	private final Map<String,Boolean>  pending    = new ConcurrentHashMap<String,Boolean>();
+
+	private int last_direction = 0;
+
+	public static DecimationPrefetcher getInstance() {
+		if(instance==null)
+			instance = new DecimationPrefetcher();
+		return instance;
+	}
+
+	private DecimationPrefetcher() {
+		this.pool = Executors.newFixedThreadPool(Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()-1)), r -> {
+			Thread t = new Thread(r, "Decimation prefetch");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+	}
+
+	/**
+	 * Prefetches the windows following x0 in steps of the last scroll step
+	 * @param step last change of x0, negative when scrolling backwards
+	 */
+	public void prefetch(List<AnalysisDataModel> list, KeyFigureMetaData[] kfs, int x0, int width, int columns, int step) {
+		if(step==0 || list.size()==0)
+			return;
+
+		int direction = Integer.signum(step);
+		if(direction != last_direction) {
+			generation.incrementAndGet();
+			last_direction = direction;
+		}
+		final int gen = generation.get();
+
+		for(int k = 1; k <= WINDOWS; k++) {
+			int p0 = x0 + k * step;
+			if(p0 < 0 || p0 >= list.size())
+				break;
+			for(KeyFigureMetaData kf : kfs) {
+				if(kf==null || kf.hash==0 || cache.contains(list, kf, p0, p0 + width, columns))
+					continue;
+				String id = kf.hash+":"+p0+":"+width+":"+columns;
+				if(pending.putIfAbsent(id, Boolean.TRUE)!=null)
+					continue;
+				pool.execute(() -> {
+					try {
+						if(gen == generation.get())
+							cache.put(list, kf, DecimationCache.decimate(list, kf, p0, p0 + width, columns));
+					} catch(Exception e) {
+						// list modified while prefetching
+					} finally {
+						pending.remove(id);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Drops all windows not yet started
+	 */
+	public void cancel() {
+		generation.incrementAndGet();
+	}
+}
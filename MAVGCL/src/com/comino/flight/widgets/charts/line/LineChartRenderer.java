@@ -0,0 +1,112 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.widgets.charts.line;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws decimated series as polylines into the plot canvas of a chart.
+ */
+public class LineChartRenderer {
+
+	// Default series colors of the chart legend
+	public static final Color[] COLORS = { Color.web("#f3622d"), Color.web("#fba71b"), Color.web("#57b757") };
+
+	private final Canvas canvas;
+	private final GraphicsContext gc;
+
+	private double y_lower = 0;
+	private double y_upper = 1;
+
+	public LineChartRenderer(Canvas canvas) {
+		this.canvas = canvas;
+		this.gc = canvas.getGraphicsContext2D();
+	}
+
+	public int getColumns() {
+		return Math.max(1, (int)canvas.getWidth());
+	}
+
+	public void setYBounds(double lower, double upper) {
+		this.y_lower = lower;
+		this.y_upper = upper;
+	}
+
+	public void clear() {
+		gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+	}
+
+	/**
+	 * Draws the columns of the series containing samples x0..x1, which are mapped to the canvas width.
+	 * With average only the mean of each column is drawn, otherwise the min/max envelope.
+	 */
+	public void draw(DecimatedSeries s, int x0, int x1, int color, boolean average) {
+		if(s==null || s.isEmpty())
+			return;
+
+		double w   = canvas.getWidth() / Math.max(1, x1 - x0);
+		double spc = (double)(s.x1 - s.x0) / s.columns;
+		double h = canvas.getHeight();
+		double scale = y_upper > y_lower ? h / (y_upper - y_lower) : 0;
+		boolean started = false;
+
+		gc.setStroke(COLORS[color % COLORS.length]);
+		gc.setLineWidth(1.0);
+		gc.beginPath();
+
+		for(int c = s.getColumn(x0); c <= s.getColumn(x1); c++) {
+			if(s.count[c]==0)
+				continue;
+			double x = (s.x0 + (c + 0.5) * spc - x0) * w;
+			if(average) {
+				double y = h - (s.getMean(c) - y_lower) * scale;
+				if(!started) { gc.moveTo(x, y); started = true; }
+				else gc.lineTo(x, y);
+			} else {
+				double y = h - (s.first[c] - y_lower) * scale;
+				if(!started) { gc.moveTo(x, y); started = true; }
+				else gc.lineTo(x, y);
+				if(s.count[c] > 1) {
+					gc.lineTo(x, h - (s.min[c] - y_lower) * scale);
+					gc.lineTo(x, h - (s.max[c] - y_lower) * scale);
+					gc.lineTo(x, h - (s.last[c] - y_lower) * scale);
+				}
+			}
+		}
+		gc.stroke();
+	}
+}
@@ -46,6 +46,7 @@ import com.comino.flight.model.AnalysisDataModel;
 import com.comino.flight.model.AnalysisDataModelMetaData;
 import com.comino.flight.model.KeyFigureMetaData;
 import com.comino.flight.model.service.AnalysisModelService;
+import com.comino.flight.model.service.FrameUpdateScheduler;
 import com.comino.flight.model.service.ICollectorRecordingListener;
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.prefs.MAVPreferences;
@@ -73,6 +74,7 @@ import javafx.scene.CacheHint;
 import javafx.scene.Cursor;
 import javafx.scene.Group;
 import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
 import javafx.scene.chart.LineChart.SortingPolicy;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
@@ -166,11 +168,13 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 
 	private List<IChartSyncControl> syncCharts = null;
 
-	private XYDataPool pool = null;
+	private LineChartRenderer renderer = null;
+	private DecimatedSeries[] decimated = new DecimatedSeries[3];
 
 	private Preferences prefs = MAVPreferences.getInstance();
 
 	private boolean refreshRequest = false;
+	private FrameUpdateScheduler.Task frame = null;
 	private boolean isRunning = false;
 
 	private long dashboard_update_tms = 0;
@@ -185,8 +189,8 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 		FXMLLoadHelper.load(this, "LineChartWidget.fxml");
 
 		this.state = StateProperties.getInstance();
-		this.pool  = new XYDataPool();
 
+		frame = FrameUpdateScheduler.getInstance().register("LineChartWidget", () -> updateGraph(refreshRequest));
 		dataService.registerListener(this);
 	}
 
@@ -195,10 +199,7 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 	public void update(long now) {
 		if(!isRunning || isDisabled() || !isVisible() )
 			return;
-		Platform.runLater(() -> {
-			updateGraph(refreshRequest);
-		});
-
+		frame.request();
 	}
 
 	@FXML
@@ -215,6 +216,10 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 		series3 = new XYChart.Series<Number,Number>();
 		linechart.getData().add(series3);
 
+		// Series are only used for the legend, data is drawn into the plot canvas
+		Canvas canvas = linechart.getPlotCanvas(() -> drawSeries());
+		renderer = new LineChartRenderer(canvas);
+
 		annotations.setSelected(true);
 		annotations.selectedProperty().addListener((observable, oldvalue, newvalue) -> {
 			Platform.runLater(() -> {
@@ -235,7 +240,7 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 		xAxis.setAnimated(false);
 
 		yAxis.setForceZeroInRange(false);
-		yAxis.setAutoRanging(true);
+		yAxis.setAutoRanging(false);
 		yAxis.setPrefWidth(40);
 		yAxis.setAnimated(false);
 
@@ -411,7 +416,13 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 
 
 		scroll.addListener((v, ov, nv) -> {
-			current_x0_pt =  dataService.calculateX0Index(nv.floatValue());
+			int x0 = dataService.calculateX0Index(nv.floatValue());
+			int step = x0 - current_x0_pt;
+			current_x0_pt = x0;
+			if(!dataService.isCollecting())
+				DecimationPrefetcher.getInstance().prefetch(dataService.getModelList(),
+						new KeyFigureMetaData[] { type1, type2, type3 }, current_x0_pt,
+						(int)(timeframe * 1000f / dataService.getCollectorInterval_ms()), renderer.getColumns(), step);
 			updateRequest();
 		});
 
@@ -634,7 +645,7 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 	}
 
 	private  void updateGraph(boolean refresh) {
-		float dt_sec = 0; AnalysisDataModel m =null; boolean set_bounds = false; float v1 ; float v2; float v3;
+		boolean set_bounds = false; AnalysisDataModel m = null; float dt_sec = 0;
 
 		if(isDisabled()) {
 			return;
@@ -647,10 +658,6 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 			}
 
 			refreshRequest = false;
-			pool.invalidateAll();
-			series1.getData().clear();
-			series2.getData().clear();
-			series3.getData().clear();
 			linechart.getAnnotations().clearAnnotations(Layer.FOREGROUND);
 			last_annotation_pos = 0;
 			yoffset = 0;
@@ -682,11 +689,9 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 			if(dash.isSelected() && dataService.getModelList().size()>0
 					&& (System.currentTimeMillis()-dashboard_update_tms) > 500) {
 				dashboard_update_tms = System.currentTimeMillis();
-				Platform.runLater(() -> {
-					setDashboardData(dashboard1,type1);
-					setDashboardData(dashboard2,type2);
-					setDashboardData(dashboard3,type3);
-				});
+				setDashboardData(dashboard1,type1);
+				setDashboardData(dashboard2,type2);
+				setDashboardData(dashboard3,type3);
 			}
 
 			while(current_x_pt<max_x ) {
@@ -706,43 +711,6 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 					last_annotation_pos = current_x_pt;
 				}
 
-				if(((current_x_pt * dataService.getCollectorInterval_ms()) % resolution_ms) == 0 && current_x_pt > 0) {
-					if(current_x_pt > current_x1_pt) {
-						if(series1.getData().size()>0 && type1.hash!=0) {
-							pool.invalidate(series1.getData().get(0));
-							series1.getData().remove(0);
-						}
-
-						if(series2.getData().size()>0 && type2.hash!=0) {
-							pool.invalidate(series2.getData().get(0));
-							series2.getData().remove(0);
-						}
-
-						if(series3.getData().size()>0 && type3.hash!=0) {
-							pool.invalidate(series3.getData().get(0));
-							series3.getData().remove(0);
-						}
-					}
-
-					if(type1.hash!=0)  {
-						v1 = determineValueFromRange(current_x_pt,resolution_ms/dataService.getCollectorInterval_ms(),type1,averaging.isSelected());
-						if(!Float.isNaN(v1))
-							series1.getData().add(pool.checkOut(dt_sec,v1));
-
-					}
-					if(type2.hash!=0)  {
-						v2 = determineValueFromRange(current_x_pt,resolution_ms/dataService.getCollectorInterval_ms(),type2,averaging.isSelected());
-						if(!Float.isNaN(v2))
-							series2.getData().add(pool.checkOut(dt_sec,v2));
-					}
-					if(type3.hash!=0)  {
-						v3 = determineValueFromRange(current_x_pt,resolution_ms/dataService.getCollectorInterval_ms(),type3,averaging.isSelected());
-						if(!Float.isNaN(v3))
-							series3.getData().add(pool.checkOut(dt_sec,v3));
-					}
-				}
-
-
 				if(current_x_pt > current_x1_pt) {
 					set_bounds = true;
 					if(!isPaused) {
@@ -758,6 +726,59 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 				set_bounds=false;
 			}
 		}
+		drawSeries();
+	}
+
+	/*
+	 * Decimates the visible range to at most one bucket per pixel and draws it into the plot canvas.
+	 */
+	private void drawSeries() {
+		int columns = renderer.getColumns();
+		float min = Float.NaN; float max = Float.NaN;
+
+		decimated[0] = decimate(type1, columns);
+		decimated[1] = decimate(type2, columns);
+		decimated[2] = decimate(type3, columns);
+
+		for(DecimatedSeries d : decimated) {
+			if(d==null || d.isEmpty())
+				continue;
+			float d_min = d.getMin(current_x0_pt, current_x1_pt);
+			float d_max = d.getMax(current_x0_pt, current_x1_pt);
+			if(d_min < min || Float.isNaN(min)) min = d_min;
+			if(d_max > max || Float.isNaN(max)) max = d_max;
+		}
+
+		renderer.clear();
+		if(Float.isNaN(min))
+			return;
+
+		setYAxisBounds(min, max);
+		renderer.setYBounds(yAxis.getLowerBound(), yAxis.getUpperBound());
+		for(int i=0; i < decimated.length; i++)
+			renderer.draw(decimated[i], current_x0_pt, current_x1_pt, i, averaging.isSelected());
+	}
+
+	private DecimatedSeries decimate(KeyFigureMetaData kf, int columns) {
+		if(kf.hash==0 || dataService.getModelList().size()==0)
+			return null;
+		return DecimationCache.getInstance().get(dataService.getModelList(), kf, current_x0_pt, current_x1_pt, columns);
+	}
+
+	private void setYAxisBounds(float min, float max) {
+		double range = max - min;
+		if(range < 1e-6)
+			range = Math.max(Math.abs(max) * 0.1, 1);
+		double tick = Math.pow(10, Math.floor(Math.log10(range / 5)));
+		if(range / tick > 25) tick *= 5;
+		else if(range / tick > 10) tick *= 2;
+		double lower = Math.floor((min - range * 0.05) / tick) * tick;
+		double upper = Math.ceil((max + range * 0.05) / tick) * tick;
+		if(lower != yAxis.getLowerBound() || upper != yAxis.getUpperBound()) {
+			yAxis.setTickUnit(tick);
+			yAxis.setLowerBound(lower);
+			yAxis.setUpperBound(upper);
+		}
 	}
 
 	private void setDashboardData(DashBoardAnnotation d, KeyFigureMetaData kf) {
@@ -845,39 +866,4 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 
 	}
 
-	/*
-	 * Determines spikes or average, if not all datapoints are reported.
-	 */
-	private float determineValueFromRange(int current_x, int length, KeyFigureMetaData m, boolean average) {
-
-		float v_current_x = dataService.getModelList().get(current_x).getValue(m);
-
-		if(dataService.getModelList().size() < length || Float.isNaN(v_current_x))
-			return 0;
-
-		if(length==1)
-			return v_current_x;
-
-		float a = 0; float v;
-
-		if(average) {
-			a = v_current_x;
-			for(int i=current_x-length+1;i<current_x;i++)
-				a = a + dataService.getModelList().get(i).getValue(m);
-			return a / length;
-
-		} else {
-
-			int peak_index=current_x;
-			float max = Math.abs(v_current_x);
-
-			for(int i=current_x-length+1;i<current_x;i++) {
-				v = Math.abs(dataService.getModelList().get(i).getValue(m));
-				if(v>max && v != Float.NaN)
-					max = v; peak_index = i;
-			}
-			return dataService.getModelList().get(peak_index).getValue(m);
-		}
-	}
-
 }
@@ -0,0 +1,220 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.widgets.charts.xy;
+
+import java.util.Arrays;
+
+import com.comino.flight.widgets.charts.line.LineChartRenderer;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws XY trajectories into the plot canvas of the chart. The values of a buffer are
+ * rotated around a center, offset and mapped to pixels in one pass over primitive arrays.
+ * In density mode the points are binned into a grid and drawn as a heatmap of the counts.
+ */
+public class XYCanvasRenderer {
+
+	private static final int BIN = 3;
+
+	private final Canvas          canvas;
+	private final GraphicsContext gc;
+
+	// rotated values: horizontal and vertical axis
+	private float[] rh = new float[0];
+	private float[] rv = new float[0];
+
+	private double[] px = new double[0];
+	private double[] py = new double[0];
+
+	private int[]         counts  = new int[0];
+	private WritableImage heatmap = null;
+
+	private double h_lower, h_upper, v_lower, v_upper;
+
+	private float min_h, max_h, min_v, max_v;
+
+	public XYCanvasRenderer(Canvas canvas) {
+		this.canvas = canvas;
+		this.gc = canvas.getGraphicsContext2D();
+	}
+
+	public void clear() {
+		gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+		Arrays.fill(counts, 0);
+		resetBounds();
+	}
+
+	public void setBounds(double h_lower, double h_upper, double v_lower, double v_upper) {
+		this.h_lower = h_lower; this.h_upper = h_upper;
+		this.v_lower = v_lower; this.v_upper = v_upper;
+	}
+
+	public void resetBounds() {
+		min_h = Float.NaN; max_h = Float.NaN; min_v = Float.NaN; max_v = Float.NaN;
+	}
+
+	/**
+	 * Rotates the buffer by rad around center cx/cy after applying the offset. The range of
+	 * the rotated values is accumulated and available by getMinH() etc.
+	 * @return number of rotated values
+	 */
+	public int transform(XYPointBuffer buffer, float rad, float cx, float cy, float offset_x, float offset_y) {
+		int n = buffer.size();
+		if(rh.length < n) {
+			rh = new float[n + n/2]; rv = new float[n + n/2];
+		}
+		// columns: rh holds the y value, rv the x value
+		buffer.copyTo(rv, rh);
+
+		float cos = (float)Math.cos(rad); float sin = (float)Math.sin(rad);
+		for(int i = 0; i < n; i++) {
+			float x = rv[i] - offset_x; float y = rh[i] - offset_y;
+			if(rad != 0) {
+				rv[i] =  (x - cx) * cos + (y - cy) * sin + cx;
+				rh[i] = -(x - cx) * sin + (y - cy) * cos + cy;
+			} else {
+				rv[i] = x; rh[i] = y;
+			}
+			if(rh[i] < min_h || Float.isNaN(min_h)) min_h = rh[i];
+			if(rh[i] > max_h || Float.isNaN(max_h)) max_h = rh[i];
+			if(rv[i] < min_v || Float.isNaN(min_v)) min_v = rv[i];
+			if(rv[i] > max_v || Float.isNaN(max_v)) max_v = rv[i];
+		}
+		return n;
+	}
+
+	/**
+	 * Draws the last transformed n values as polyline
+	 */
+	public void drawLine(int n, int color) {
+		if(n < 2)
+			return;
+		if(px.length < n) {
+			px = new double[rh.length]; py = new double[rh.length];
+		}
+
+		double sh = canvas.getWidth() / (h_upper - h_lower);
+		double sv = canvas.getHeight() / (v_upper - v_lower);
+		double h = canvas.getHeight();
+
+		// skip points that fall onto the previous pixel
+		int k = 0; long last = Long.MIN_VALUE;
+		for(int i = 0; i < n; i++) {
+			double x = (rh[i] - h_lower) * sh;
+			double y = h - (rv[i] - v_lower) * sv;
+			long p = ((long)x << 32) | ((long)y & 0xFFFFFFFFL);
+			if(p == last && i < n - 1)
+				continue;
+			last = p; px[k] = x; py[k] = y; k++;
+		}
+
+		gc.setStroke(LineChartRenderer.COLORS[color % LineChartRenderer.COLORS.length]);
+		gc.setLineWidth(1.5);
+		gc.strokePolyline(px, py, k);
+	}
+
+	/**
+	 * Adds the last transformed n values to the density grid
+	 */
+	public void bin(int n) {
+		int gw = Math.max(1, (int)canvas.getWidth() / BIN); int gh = Math.max(1, (int)canvas.getHeight() / BIN);
+		if(counts.length != gw * gh)
+			counts = new int[gw * gh];
+
+		double sh = gw / (h_upper - h_lower);
+		double sv = gh / (v_upper - v_lower);
+
+		for(int i = 0; i < n; i++) {
+			int bx = (int)((rh[i] - h_lower) * sh);
+			int by = gh - 1 - (int)((rv[i] - v_lower) * sv);
+			if(bx >= 0 && bx < gw && by >= 0 && by < gh)
+				counts[by * gw + bx]++;
+		}
+	}
+
+	/**
+	 * Draws the density grid as heatmap with logarithmic color scale
+	 */
+	public void drawDensity() {
+		int gw = Math.max(1, (int)canvas.getWidth() / BIN); int gh = Math.max(1, (int)canvas.getHeight() / BIN);
+		if(counts.length != gw * gh)
+			return;
+
+		int max = 0;
+		for(int c : counts)
+			if(c > max) max = c;
+		if(max == 0)
+			return;
+
+		if(heatmap == null || (int)heatmap.getWidth() != gw || (int)heatmap.getHeight() != gh)
+			heatmap = new WritableImage(gw, gh);
+
+		PixelWriter pw = heatmap.getPixelWriter();
+		double norm = 1.0 / Math.log(1 + max);
+		for(int y = 0; y < gh; y++) {
+			for(int x = 0; x < gw; x++) {
+				int c = counts[y * gw + x];
+				pw.setArgb(x, y, c == 0 ? 0 : heat(Math.log(1 + c) * norm));
+			}
+		}
+		gc.drawImage(heatmap, 0, 0, gw * BIN, gh * BIN);
+	}
+
+	public float getMinH() { return min_h; }
+	public float getMaxH() { return max_h; }
+	public float getMinV() { return min_v; }
+	public float getMaxV() { return max_v; }
+
+	// blue - cyan - yellow - red
+	private static int heat(double t) {
+		int r, g, b;
+		if(t < 0.33) {
+			double f = t / 0.33;
+			r = 0; g = (int)(255 * f); b = 255;
+		} else if(t < 0.66) {
+			double f = (t - 0.33) / 0.33;
+			r = (int)(255 * f); g = 255; b = (int)(255 * (1 - f));
+		} else {
+			double f = (t - 0.66) / 0.34;
+			r = 255; g = (int)(255 * (1 - f)); b = 0;
+		}
+		return 0xC0000000 | (r << 16) | (g << 8) | b;
+	}
+}
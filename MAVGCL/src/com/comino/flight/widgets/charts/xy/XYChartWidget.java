@@ -46,12 +46,13 @@ import com.comino.flight.FXMLLoadHelper;
 import com.comino.flight.model.AnalysisDataModel;
 import com.comino.flight.model.AnalysisDataModelMetaData;
 import com.comino.flight.model.KeyFigureMetaData;
+import com.comino.flight.model.SlamState;
 import com.comino.flight.model.service.AnalysisModelService;
+import com.comino.flight.model.service.FrameUpdateScheduler;
 import com.comino.flight.model.service.ICollectorRecordingListener;
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.prefs.MAVPreferences;
 import com.comino.flight.widgets.charts.control.IChartControl;
-import com.comino.flight.widgets.charts.line.XYDataPool;
 import com.comino.jfx.extensions.SectionLineChart;
 import com.comino.mav.control.IMAVController;
 import com.comino.msp.utils.MSPMathUtils;
@@ -72,7 +73,6 @@ import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.scene.SnapshotParameters;
 import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
@@ -168,10 +168,14 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 	@FXML
 	private CheckBox slam;
 
+	@FXML
+	private CheckBox density;
+
 
+	private XYPointBuffer buffer1 = new XYPointBuffer();
+	private XYPointBuffer buffer2 = new XYPointBuffer();
 
-	private  XYChart.Series<Number,Number> series1;
-	private  XYChart.Series<Number,Number> series2;
+	private XYCanvasRenderer renderer = null;
 
 	private IMAVController control;
 
@@ -211,10 +215,10 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 	private PositionAnnotation    endPosition2 = null;
 
 	private XYSLAMBlockAnnotation slamblocks = null;
-
-	private XYDataPool pool = null;
+	private SlamState             slamState  = new SlamState();
 
 	private boolean refreshRequest = false;
+	private FrameUpdateScheduler.Task frame = null;
 	private boolean isRunning = false;
 
 	private float old_center_x, old_center_y;
@@ -230,17 +234,14 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 
 		this.state = StateProperties.getInstance();
 
-		pool = new XYDataPool();
-
+		frame = FrameUpdateScheduler.getInstance().register("XYChartWidget", () -> updateGraph(refreshRequest));
 		dataService.registerListener(this);
 	}
 
 	@Override
 	public void update(long now) {
 		if(isVisible() && !isDisabled() && isRunning) {
-			Platform.runLater(() -> {
-				updateGraph(refreshRequest);
-			});
+			frame.request();
 		}
 	}
 
@@ -266,9 +267,12 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 			}
 		});
 
-		xAxis.setAutoRanging(true);
+		// Points are drawn into the plot canvas, auto scaling is done in drawPoints()
+		renderer = new XYCanvasRenderer(linechart.getPlotCanvas(() -> drawPoints()));
+
+		xAxis.setAutoRanging(false);
 		xAxis.setForceZeroInRange(false);
-		yAxis.setAutoRanging(true);
+		yAxis.setAutoRanging(false);
 		yAxis.setForceZeroInRange(false);
 
 		cseries1.getItems().addAll(PRESET_NAMES);
@@ -496,6 +500,10 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 			prefs.putBoolean(MAVPreferences.XYCHART_SLAM,slam.isSelected());
 		});
 
+		density.selectedProperty().addListener((v, ov, nv) -> {
+			drawPoints();
+		});
+
 	}
 
 	private void setXResolution(int frame) {
@@ -550,8 +558,7 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 			}
 			//		synchronized(this) {
 			refreshRequest = false;
-			series1.getData().clear(); series2.getData().clear();
-			pool.invalidateAll();
+			buffer1.clear(); buffer2.clear();
 
 			linechart.getAnnotations().clearAnnotations(Layer.FOREGROUND);
 			linechart.getAnnotations().clearAnnotations(Layer.BACKGROUND);
@@ -597,11 +604,20 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 
 			if(current_x_pt < 0) current_x_pt = 0;
 
-			slamblocks.set(control.getCurrentModel().slam,scale);
 		}
 
 
 
+		if(slam.isSelected()) {
+			if(dataService.isCollecting() || mList.size()==0)
+				slamblocks.set(control.getCurrentModel().slam);
+			else {
+				slamState.moveTo(mList, Math.min(current_x1_pt, mList.size()-1));
+				slamblocks.set(slamState);
+			}
+			linechart.requestLayout();
+		}
+
 		if(mList.size()<1)
 			return;
 
@@ -664,49 +680,97 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 						current_x0_pt += resolution_ms / dataService.getCollectorInterval_ms();
 						current_x1_pt += resolution_ms / dataService.getCollectorInterval_ms();
 
-						if(series1.getData().size()>0) {
-							pool.invalidate(series1.getData().get(0));
-							series1.getData().remove(0);
-						}
-						if(series2.getData().size()>0) {
-							pool.invalidate(series2.getData().get(0));
-							series2.getData().remove(0);
-						}
+						buffer1.removeFirst();
+						buffer2.removeFirst();
 					}
 
-					if(type1_x.hash!=0 && type1_y.hash!=0) {
-						rotateRad(p1,m.getValue(type1_x), m.getValue(type1_y),
-								rotation_rad);
-						series1.getData().add(pool.checkOut(p1[0],p1[1]));
-					}
+					if(type1_x.hash!=0 && type1_y.hash!=0)
+						buffer1.add(m.getValue(type1_x), m.getValue(type1_y));
 
-					if(type2_x.hash!=0 && type2_y.hash!=0) {
-						if(corr_zero.isSelected())
-							rotateRad(p2,m.getValue(type2_x)-(s2.center_x-s1.center_x), m.getValue(type2_y)-(s2.center_y-s1.center_y),
-									rotation_rad);
-						else
-							rotateRad(p2,m.getValue(type2_x), m.getValue(type2_y),
-									rotation_rad);
-						series2.getData().add(pool.checkOut(p2[0],p2[1]));
-					}
+					if(type2_x.hash!=0 && type2_y.hash!=0)
+						buffer2.add(m.getValue(type2_x), m.getValue(type2_y));
 				}
 				current_x_pt++;
 			}
 
+			if(buffer1.size()>0)
+				rotateRad(p1,buffer1.getX(buffer1.size()-1), buffer1.getY(buffer1.size()-1),
+						rotation_rad);
+			if(buffer2.size()>0) {
+				if(corr_zero.isSelected())
+					rotateRad(p2,buffer2.getX(buffer2.size()-1)-(s2.center_x-s1.center_x),
+							buffer2.getY(buffer2.size()-1)-(s2.center_y-s1.center_y), rotation_rad);
+				else
+					rotateRad(p2,buffer2.getX(buffer2.size()-1), buffer2.getY(buffer2.size()-1),
+							rotation_rad);
+			}
+
 			endPosition1.setPosition(p1[0], p1[1]);
 			endPosition2.setPosition(p2[0], p2[1]);
 		}
 
+		// points are drawn and annotations placed in the next layout pass
+		linechart.requestLayout();
 	}
 
+	/*
+	 * Transforms both buffers in bulk and draws them as lines or density heatmap.
+	 */
+	private void drawPoints() {
+		int n1 = 0; int n2 = 0;
 
-	public XYChartWidget setup(IMAVController control) {
-		series1 = new XYChart.Series<Number,Number>();
+		renderer.clear();
 
-		linechart.getData().add(series1);
-		series2 = new XYChart.Series<Number,Number>();
-		linechart.getData().add(series2);
+		float offset_x = 0; float offset_y = 0;
+		if(corr_zero.isSelected()) {
+			offset_x = s2.center_x-s1.center_x;
+			offset_y = s2.center_y-s1.center_y;
+		}
 
+		if(scale <= 0) {
+			// auto scaling: determine the range of both series first
+			renderer.transform(buffer1, rotation_rad, old_center_x, old_center_y, 0, 0);
+			renderer.transform(buffer2, rotation_rad, old_center_x, old_center_y, offset_x, offset_y);
+			if(Float.isNaN(renderer.getMinH()))
+				return;
+			setAutoBounds(yAxis, renderer.getMinH(), renderer.getMaxH());
+			setAutoBounds(xAxis, renderer.getMinV(), renderer.getMaxV());
+		}
+		renderer.setBounds(yAxis.getLowerBound(), yAxis.getUpperBound(), xAxis.getLowerBound(), xAxis.getUpperBound());
+
+		n1 = renderer.transform(buffer1, rotation_rad, old_center_x, old_center_y, 0, 0);
+		if(density.isSelected())
+			renderer.bin(n1);
+		else
+			renderer.drawLine(n1, 0);
+
+		n2 = renderer.transform(buffer2, rotation_rad, old_center_x, old_center_y, offset_x, offset_y);
+		if(density.isSelected()) {
+			renderer.bin(n2);
+			renderer.drawDensity();
+		}
+		else
+			renderer.drawLine(n2, 1);
+	}
+
+	private void setAutoBounds(NumberAxis axis, float min, float max) {
+		double range = max - min;
+		if(range < 1e-3)
+			range = 1;
+		double tick = Math.pow(10, Math.floor(Math.log10(range / 5)));
+		if(range / tick > 25) tick *= 5;
+		else if(range / tick > 10) tick *= 2;
+		double lower = Math.floor((min - range * 0.05) / tick) * tick;
+		double upper = Math.ceil((max + range * 0.05) / tick) * tick;
+		if(lower != axis.getLowerBound() || upper != axis.getUpperBound()) {
+			axis.setTickUnit(tick);
+			axis.setLowerBound(lower);
+			axis.setUpperBound(upper);
+		}
+	}
+
+
+	public XYChartWidget setup(IMAVController control) {
 		this.control = control;
 
 		state.getRecordingProperty().addListener((o,ov,nv) -> {
@@ -806,8 +870,6 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 				xAxis.setTickUnit(0.1); yAxis.setTickUnit(0.1);
 			}
 		} else {
-			xAxis.setAutoRanging(true);
-			yAxis.setAutoRanging(true);
 			force_zero.setDisable(true);
 			force_zero.setSelected(false);
 		}
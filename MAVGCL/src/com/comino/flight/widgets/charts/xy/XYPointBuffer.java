@@ -0,0 +1,102 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.widgets.charts.xy;
+
+/**
+ * Raw x/y values of a trajectory in two primitive columns, kept in a growable ring so
+ * that live scrolling drops the oldest point in O(1). Rotation and axis scaling are
+ * applied in bulk by the XYCanvasRenderer when drawing.
+ */
+public class XYPointBuffer {
+
+	private static final int INIT_CAPACITY = 1024;
+
+	private float[] x = new float[INIT_CAPACITY];
+	private float[] y = new float[INIT_CAPACITY];
+
+	private int head = 0;
+	private int size = 0;
+
+	public void add(float vx, float vy) {
+		if(size == x.length)
+			grow();
+		int i = (head + size) % x.length;
+		x[i] = vx; y[i] = vy;
+		size++;
+	}
+
+	public void removeFirst() {
+		if(size == 0)
+			return;
+		head = (head + 1) % x.length;
+		size--;
+	}
+
+	public void clear() {
+		head = 0; size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public float getX(int index) {
+		return x[(head + index) % x.length];
+	}
+
+	public float getY(int index) {
+		return y[(head + index) % y.length];
+	}
+
+	/**
+	 * Copies the values in order into the given arrays, which must hold size() values
+	 */
+	public void copyTo(float[] tx, float[] ty) {
+		int n = Math.min(size, x.length - head);
+		System.arraycopy(x, head, tx, 0, n);
+		System.arraycopy(y, head, ty, 0, n);
+		if(n < size) {
+			System.arraycopy(x, 0, tx, n, size - n);
+			System.arraycopy(y, 0, ty, n, size - n);
+		}
+	}
+
+	private void grow() {
+		float[] nx = new float[x.length * 2];
+		float[] ny = new float[y.length * 2];
+		copyTo(nx, ny);
+		x = nx; y = ny; head = 0;
+	}
+}
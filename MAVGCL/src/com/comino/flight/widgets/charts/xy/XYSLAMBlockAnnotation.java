@@ -31,37 +31,51 @@
  *
  ****************************************************************************/
 
+
 package com.comino.flight.widgets.charts.xy;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
 
-import com.comino.msp.model.DataModel;
+import com.comino.flight.model.SlamState;
 import com.comino.msp.model.segment.Slam;
 import com.comino.msp.utils.BlockPoint2D;
-import com.comino.msp.utils.BlockPoint3D;
 import com.emxsys.chart.extension.XYAnnotation;
 
-import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.Node;
 import javafx.scene.chart.ValueAxis;
-import javafx.scene.layout.GridPane;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
 
+/**
+ * Draws the SLAM blocks as occupancy grid with one pixel per cell into an image. Only cells
+ * that changed since the last version are written, the visible part of the grid is scaled
+ * to the axes on layout.
+ */
 public class XYSLAMBlockAnnotation  implements XYAnnotation {
 
+	private static final int GRID     = 1024;
+	private static final int HALF     = GRID / 2;
+	private static final int BLOCKED  = 0x80A03C64;
 
 	private  Pane   	    pane 		= null;
 	private  Pane           vehicle     = null;
-	private  Slam		  	slam 		= null;
+	private  ImageView      view        = null;
+
+	private WritableImage   grid        = null;
+	private PixelWriter     writer      = null;
 
-	private Map<Integer,Pane> blocks    = null;
+	// cells currently drawn by block key
+	private Map<Integer,Integer> drawn  = null;
 
-	private float           scale       = 0;
+	private SlamState       live        = new SlamState();
+	private SlamState       state       = null;
+	private int             version     = -1;
+	private float           resolution  = 0;
 
 
 	public XYSLAMBlockAnnotation() {
@@ -69,7 +83,14 @@ public class XYSLAMBlockAnnotation  implements XYAnnotation {
 		this.pane.setMaxWidth(999); this.pane.setMaxHeight(999);
 		this.pane.setLayoutX(0); this.pane.setLayoutY(0);
 
-		this.blocks = new HashMap<Integer,Pane>();
+		this.drawn  = new HashMap<Integer,Integer>();
+		this.grid   = new WritableImage(GRID, GRID);
+		this.writer = grid.getPixelWriter();
+
+		view = new ImageView(grid);
+		view.setSmooth(false);
+		view.setVisible(false);
+		pane.getChildren().add(view);
 
 		vehicle = new Pane();
 		vehicle.setStyle("-fx-background-color: rgba(60.0, 160.0, 100.0, 0.5);; -fx-padding:-1px; -fx-border-color: #606030;");
@@ -77,11 +98,53 @@ public class XYSLAMBlockAnnotation  implements XYAnnotation {
 		pane.getChildren().add(vehicle);
 	}
 
-	public void set(Slam slam, float scale) {
-		this.slam  = slam;
-		this.scale = scale;
-		slam.getData().forEach((i,b) -> {
-			getBlockPane(i,b);
+	/**
+	 * Shows the live map
+	 */
+	public void set(Slam slam) {
+		if(slam==null)
+			return;
+		live.update(slam);
+		set(live);
+	}
+
+	/**
+	 * Shows the given map state, e.g. rebuilt from a recording
+	 */
+	public void set(SlamState state) {
+		if(this.state!=state)
+			version = -1;
+		this.state = state;
+		if(state.getVersion()==version)
+			return;
+		version = state.getVersion();
+
+		if(state.getResolution()!=resolution) {
+			clearGrid();
+			resolution = state.getResolution();
+		}
+		if(resolution <= 0)
+			return;
+
+		Map<Integer,BlockPoint2D> blocks = state.getBlocks();
+
+		Iterator<Map.Entry<Integer,Integer>> i = drawn.entrySet().iterator();
+		while(i.hasNext()) {
+			Map.Entry<Integer,Integer> e = i.next();
+			if(!blocks.containsKey(e.getKey())) {
+				writer.setArgb(e.getValue() % GRID, e.getValue() / GRID, 0);
+				i.remove();
+			}
+		}
+
+		blocks.forEach((k,b) -> {
+			if(drawn.containsKey(k))
+				return;
+			int col = cell(b.y) + HALF; int row = HALF - 1 - cell(b.x);
+			if(col < 0 || col >= GRID || row < 0 || row >= GRID)
+				return;
+			writer.setArgb(col, row, BLOCKED);
+			drawn.put(k, row * GRID + col);
 		});
 	}
 
@@ -92,64 +155,67 @@ public class XYSLAMBlockAnnotation  implements XYAnnotation {
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
-	public void layoutAnnotation(ValueAxis xAxis, ValueAxis yAxis) {
-
-		for(int i=0;i<pane.getChildren().size();i++)
-			pane.getChildren().get(i).setVisible(false);
+	public void layoutAnnotation(@SuppressWarnings("rawtypes") ValueAxis xAxis, @SuppressWarnings("rawtypes") ValueAxis yAxis) {
 
-		if(slam==null)
+		if(state==null || resolution <= 0) {
+			view.setVisible(false); vehicle.setVisible(false);
 			return;
-
-		blocks.forEach((i,p) -> {
-			p.setVisible(false);
-		});
-
-
-		slam.getData().forEach((i,b) -> {
-			Pane bp = getBlockPane(i,b);
-			if(b.x > -scale && b.x < scale && b.y > -scale && b.y < scale) {
-				bp.setLayoutX(xAxis.getDisplayPosition(b.y));
-				bp.setLayoutY(yAxis.getDisplayPosition(b.x+slam.getResolution()));
-				bp.setPrefSize(xAxis.getDisplayPosition(slam.getResolution())-xAxis.getDisplayPosition(0),
-						yAxis.getDisplayPosition(0)-yAxis.getDisplayPosition(slam.getResolution()));
-				bp.setVisible( true);
-			}
-
-		});
-
-
-		vehicle.setPrefSize(xAxis.getDisplayPosition(slam.getResolution())-xAxis.getDisplayPosition(0),
-				yAxis.getDisplayPosition(0)-yAxis.getDisplayPosition(slam.getResolution()));;
-				vehicle.setLayoutX(xAxis.getDisplayPosition(slam.getVehicleY()));
-				vehicle.setLayoutY(yAxis.getDisplayPosition(slam.getVehicleX()));
-				vehicle.setVisible(true);
+		}
+
+		// visible cells: horizontal axis shows y, vertical axis shows x
+		int c0 = clamp((int)Math.floor(xAxis.getLowerBound() / resolution) + HALF);
+		int c1 = clamp((int)Math.ceil(xAxis.getUpperBound() / resolution) + HALF);
+		int r0 = clamp(HALF - (int)Math.ceil(yAxis.getUpperBound() / resolution));
+		int r1 = clamp(HALF - (int)Math.floor(yAxis.getLowerBound() / resolution));
+
+		if(c1 > c0 && r1 > r0) {
+			view.setViewport(new Rectangle2D(c0, r0, c1 - c0, r1 - r0));
+			double x0 = display(xAxis, (c0 - HALF) * resolution);
+			double y0 = display(yAxis, (HALF - r0) * resolution);
+			view.setLayoutX(x0);
+			view.setLayoutY(y0);
+			view.setFitWidth(display(xAxis, (c1 - HALF) * resolution) - x0);
+			view.setFitHeight(display(yAxis, (HALF - r1) * resolution) - y0);
+			view.setVisible(true);
+		} else
+			view.setVisible(false);
+
+		vehicle.setPrefSize(display(xAxis, resolution)-display(xAxis, 0),
+				display(yAxis, 0)-display(yAxis, resolution));
+		vehicle.setLayoutX(display(xAxis, state.getVehicleY()));
+		vehicle.setLayoutY(display(yAxis, state.getVehicleX()));
+		vehicle.setVisible(true);
 	}
 
 	public void invalidate() {
-		blocks.forEach((i,p) -> {
-			p.setVisible(false);
-		});
+		view.setVisible(false);
 		vehicle.setVisible(false);
+		version = -1;
 	}
 
 	public void clear() {
-		blocks.clear();
+		clearGrid();
+		live.clear();
+		state = null;
 		vehicle.setVisible(false);
 	}
 
-	private Pane getBlockPane(int block, BlockPoint2D b) {
-
-		if(blocks.containsKey(block))
-			return blocks.get(block);
+	private void clearGrid() {
+		drawn.forEach((k,c) -> writer.setArgb(c % GRID, c / GRID, 0));
+		drawn.clear();
+		version = -1;
+	}
 
-		Pane p = new Pane();
-		p.setStyle("-fx-background-color: rgba(160.0, 60.0, 100.0, 0.5); -fx-padding:-1px; -fx-border-color: #603030;");
-		p.setVisible(false);
-		pane.getChildren().add(p);
-		blocks.put(block, p);
-		return p;
+	private int cell(float v) {
+		return (int)Math.floor(v / resolution + 1e-4f);
 	}
 
+	private static int clamp(int v) {
+		return v < 0 ? 0 : (v > GRID ? GRID : v);
+	}
 
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static double display(ValueAxis axis, float v) {
+		return axis.getDisplayPosition(v);
+	}
 }
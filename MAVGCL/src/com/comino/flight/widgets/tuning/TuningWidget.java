@@ -38,22 +38,18 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 import org.mavlink.messages.MAV_PARAM_TYPE;
 import org.mavlink.messages.MAV_SEVERITY;
-import org.mavlink.messages.lquac.msg_param_set;
 
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.parameter.PX4Parameters;
-import com.comino.flight.parameter.ParamUtils;
 import com.comino.flight.parameter.ParameterAttributes;
+import com.comino.flight.parameter.ParameterWriter;
 import com.comino.flight.prefs.MAVPreferences;
 import com.comino.jfx.extensions.WidgetPane;
 import com.comino.mav.control.IMAVController;
 import com.comino.msp.log.MSPLogger;
-import com.comino.msp.utils.ExecutorService;
 
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
@@ -99,9 +95,6 @@ public class TuningWidget extends WidgetPane  {
 	private IMAVController control;
 	private PX4Parameters  params;
 
-	private ScheduledFuture<?> timeout;
-	private int timeout_count=0;
-
 	private List<ParamItem> items = new ArrayList<ParamItem>();
 
 	public TuningWidget() {
@@ -135,14 +128,6 @@ public class TuningWidget extends WidgetPane  {
 					if(!groups.getItems().contains(p.group_name) && p !=null)
 						groups.getItems().add(p.group_name);
 
-					if(timeout!=null && !timeout.isDone()) {
-						BigDecimal bd = new BigDecimal(p.value).setScale(p.decimals,BigDecimal.ROUND_HALF_UP);
-						MSPLogger.getInstance().writeLocalMsg("[mgc] "+p.name+" set to "+bd.toPlainString(),MAV_SEVERITY.MAV_SEVERITY_NOTICE);
-						if(p.reboot_required)
-							MSPLogger.getInstance().writeLocalMsg("Change of "+p.name+" requires reboot",MAV_SEVERITY.MAV_SEVERITY_NOTICE);
-						timeout.cancel(true);  timeout_count=0;
-					}
-
 				}
 			}
 		});
@@ -308,7 +293,7 @@ public class TuningWidget extends WidgetPane  {
 			setValueOf(editor,att.value);
 
 			this.editor.focusedProperty().addListener((observable, oldValue, newValue) -> {
-				if(!editor.isFocused() && (timeout==null || timeout.isDone())) {
+				if(!editor.isFocused()) {
 					try {
 						float val =  getValueOf(editor);
 						if(val != att.value) {
@@ -330,24 +315,18 @@ public class TuningWidget extends WidgetPane  {
 		}
 
 		private void sendParameter(ParameterAttributes att, float val) {
-			System.out.println("Try to set "+att.name+" to "+val+"...");
-			final msg_param_set msg = new msg_param_set(255,1);
-			msg.target_component = 1;
-			msg.target_system = 1;
-			msg.param_type = att.vtype;
-			msg.setParam_id(att.name);
-			msg.param_value = ParamUtils.valToParam(att.vtype, val);
-			control.sendMAVLinkMessage(msg);
-			timeout = ExecutorService.get().schedule(() -> {
-				if(++timeout_count > 3) {
-					MSPLogger.getInstance().writeLocalMsg(att.name+" was not set to "+val+" (timeout)",
+			ParameterWriter.getInstance().set(att, val).thenAccept(r -> {
+				if(r.getStatus()==ParameterWriter.Status.CONFIRMED) {
+					BigDecimal bd = new BigDecimal(val).setScale(att.decimals,BigDecimal.ROUND_HALF_UP);
+					MSPLogger.getInstance().writeLocalMsg("[mgc] "+att.name+" set to "+bd.toPlainString(),MAV_SEVERITY.MAV_SEVERITY_NOTICE);
+					if(att.reboot_required)
+						MSPLogger.getInstance().writeLocalMsg("Change of "+att.name+" requires reboot",MAV_SEVERITY.MAV_SEVERITY_NOTICE);
+				} else {
+					MSPLogger.getInstance().writeLocalMsg(att.name+" was not set to "+val+" ("+r.getStatus().name().toLowerCase()+")",
 							MAV_SEVERITY.MAV_SEVERITY_DEBUG);
-					setValueOf(editor,att.value); }
-				else {
-					System.out.println("Timeout setting parameter. Retry "+timeout_count);
-					sendParameter(att,val);
+					Platform.runLater(() -> setValueOf(editor,att.value));
 				}
-			}, 200, TimeUnit.MILLISECONDS);
+			});
 		}
 
 
@@ -35,7 +35,6 @@ package com.comino.fxyz.ext;
 
 import java.util.ArrayList;
 
-import javafx.application.Platform;
 import javafx.scene.DepthTest;
 import javafx.scene.Group;
 import javafx.scene.PointLight;
@@ -59,6 +58,10 @@ public class FlightCubeViewer extends Group {
 
 	public Group scatterDataGroup = new Group();
 
+	// data points as one mesh each, the trajectory is hidden by default
+	private ScatterMesh    scatterMesh;
+	private TrajectoryMesh trajectoryMesh;
+
 	private double axesSize = 1000;
 	public double gridLineSpacing = 100;
 	public double scatterRadius = 1;
@@ -162,6 +165,10 @@ public class FlightCubeViewer extends Group {
 		buildPanels(axesSize);
 		buildGrids(axesSize, gridLineSpacing);
 		buildEventHandlers();
+		scatterMesh = new ScatterMesh(scatterRadius);
+		trajectoryMesh = new TrajectoryMesh(scatterRadius / 2);
+		trajectoryMesh.setVisible(false);
+		scatterDataGroup.getChildren().addAll(scatterMesh, trajectoryMesh);
 		getChildren().add(scatterDataGroup); //Holds ScatterPlot data
 		if(selfLightEnabled) {
 			PointLight light = new PointLight(Color.WHITE);
@@ -207,46 +214,12 @@ public class FlightCubeViewer extends Group {
 	}
 
 	private void buildGrids(double size, double spacing) {
-		//fill in grid lines for X Axis
-		ArrayList xy1Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateX((-size / 2) + i);
-			newCyl.setTranslateZ(-size / 2);
-			xy1Cyls.add(newCyl);
-		}
-		xy1GridLinesGroup = new Group(xy1Cyls);
-		//Now build the grids for the mirror image
-		ArrayList xy2Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateX((-size / 2) + i);
-			newCyl.setTranslateZ(size / 2);
-			xy2Cyls.add(newCyl);
-		}
-		xy2GridLinesGroup = new Group(xy2Cyls);
-
-		ArrayList xx1Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateZ(-size / 2);
-			newCyl.setTranslateY((size / 2) - i);
-			newCyl.setRotationAxis(Rotate.Z_AXIS);
-			newCyl.setRotate(90);
-			xx1Cyls.add(newCyl);
-		}
-		xx1GridLinesGroup = new Group(xx1Cyls);
-		//Now build the grids for the mirror image
-		ArrayList xx2Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateZ(size / 2);
-			newCyl.setTranslateY((size / 2) - i);
-			newCyl.setRotationAxis(Rotate.Z_AXIS);
-			newCyl.setRotate(90);
-			xx2Cyls.add(newCyl);
-		}
-		xx2GridLinesGroup = new Group(xx2Cyls);
+		final double h = size / 2;
+		//fill in grid lines for X Axis, each set of grid lines is one mesh
+		xy1GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(-h + i, -h, -h, -h + i, h, -h));
+		xy2GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(-h + i, -h, h, -h + i, h, h));
+		xx1GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(-h, h - i, -h, h, h - i, -h));
+		xx2GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(-h, h - i, h, h, h - i, h));
 		//Add the sub groups to the parent group
 		getChildren().addAll(xy1GridLinesGroup);
 		getChildren().addAll(xx1GridLinesGroup);
@@ -254,45 +227,10 @@ public class FlightCubeViewer extends Group {
 		getChildren().addAll(xx2GridLinesGroup);
 
 		// File in grid Lines for Y Axis //////////////////////////
-		ArrayList yy1Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateX(-size / 2);
-			newCyl.setTranslateZ((-size / 2) + i);
-			yy1Cyls.add(newCyl);
-		}
-		yy1GridLinesGroup = new Group(yy1Cyls);
-		//Now build the grids for the mirror image
-		ArrayList yy2Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateX(size / 2);
-			newCyl.setTranslateZ((-size / 2) + i);
-			yy2Cyls.add(newCyl);
-		}
-		yy2GridLinesGroup = new Group(yy2Cyls);
-
-		ArrayList yx1Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateX(-size / 2);
-			newCyl.setTranslateY((size / 2) - i);
-			newCyl.setRotationAxis(Rotate.X_AXIS);
-			newCyl.setRotate(90);
-			yx1Cyls.add(newCyl);
-		}
-		yx1GridLinesGroup = new Group(yx1Cyls);
-		//Now build the grids for the mirror image
-		ArrayList yx2Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateX(size / 2);
-			newCyl.setTranslateY((size / 2) - i);
-			newCyl.setRotationAxis(Rotate.X_AXIS);
-			newCyl.setRotate(90);
-			yx2Cyls.add(newCyl);
-		}
-		yx2GridLinesGroup = new Group(yx2Cyls);
+		yy1GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(-h, -h, -h + i, -h, h, -h + i));
+		yy2GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(h, -h, -h + i, h, h, -h + i));
+		yx1GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(-h, h - i, -h, -h, h - i, h));
+		yx2GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(h, h - i, -h, h, h - i, h));
 		//Add the sub groups to the parent group
 		getChildren().addAll(yy1GridLinesGroup);
 		getChildren().addAll(yx1GridLinesGroup);
@@ -300,50 +238,10 @@ public class FlightCubeViewer extends Group {
 		getChildren().addAll(yx2GridLinesGroup);
 
 		// File in grid Lines for Z Axis //////////////////////////
-		ArrayList zy1Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateY(size / 2);
-			newCyl.setTranslateX((-size / 2) + i);
-			newCyl.setRotationAxis(Rotate.X_AXIS);
-			newCyl.setRotate(90);
-			zy1Cyls.add(newCyl);
-		}
-		zy1GridLinesGroup = new Group(zy1Cyls);
-		//Now build the grids for the mirror image
-		ArrayList zy2Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateY(-size / 2);
-			newCyl.setTranslateX((-size / 2) + i);
-			newCyl.setRotationAxis(Rotate.X_AXIS);
-			newCyl.setRotate(90);
-			zy2Cyls.add(newCyl);
-		}
-		zy2GridLinesGroup = new Group(zy2Cyls);
-
-		ArrayList zx1Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateY(size / 2);
-			newCyl.setTranslateZ((-size / 2) + i);
-			newCyl.setRotationAxis(Rotate.Z_AXIS);
-			newCyl.setRotate(90);
-			zx1Cyls.add(newCyl);
-		}
-		zx1GridLinesGroup = new Group(zx1Cyls);
-		//Now build the grids for the mirror image
-		ArrayList zx2Cyls = new ArrayList<>();
-		for (int i = 0; i < size; i += spacing) {
-			final Cylinder newCyl = new Cylinder(gridSize, size);
-			newCyl.setTranslateY(-size / 2);
-			newCyl.setTranslateZ((-size / 2) + i);
-			newCyl.setRotationAxis(Rotate.Z_AXIS);
-			newCyl.setRotate(90);
-			zx2Cyls.add(newCyl);
-		}
-		zx2GridLinesGroup = new Group(zx2Cyls);
-
+		zy1GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(-h + i, h, -h, -h + i, h, h));
+		zy2GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(-h + i, -h, -h, -h + i, -h, h));
+		zx1GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(-h, h, -h + i, h, h, -h + i));
+		zx2GridLinesGroup = gridLines(size, spacing, (m, i) -> m.addLine(-h, -h, -h + i, h, -h, -h + i));
 		//Add the sub groups to the parent group
 		getChildren().addAll(zy1GridLinesGroup);
 		getChildren().addAll(zx1GridLinesGroup);
@@ -351,6 +249,17 @@ public class FlightCubeViewer extends Group {
 		getChildren().addAll(zx2GridLinesGroup);
 	}
 
+	private Group gridLines(double size, double spacing, GridLine line) {
+		LineMesh mesh = new LineMesh(gridSize);
+		for (int i = 0; i < size; i += spacing)
+			line.add(mesh, i);
+		return new Group(mesh.build());
+	}
+
+	private interface GridLine {
+		void add(LineMesh mesh, double i);
+	}
+
 	private void buildAxes(double size, double axisThickness) {
 		// X-Axis Material
 		final PhongMaterial redMaterial = new PhongMaterial();
@@ -664,21 +573,7 @@ public class FlightCubeViewer extends Group {
 	 */
 	public void setxAxisData(ArrayList<Double> data) {
 		xAxisData = data;
-		scatterDataGroup.getChildren().clear();
-		for(int i=0;i<xAxisData.size();i++) {
-			final Sphere dataSphere = new Sphere(scatterRadius);
-			//            final Box dataSphere = new Box(getScatterRadius(), getScatterRadius(), getScatterRadius());
-			double translateY = 0.0;
-			double translateZ = 0.0;
-			if(!yAxisData.isEmpty() && yAxisData.size() > i)
-				translateY = yAxisData.get(i);
-			if(!zAxisData.isEmpty() && zAxisData.size() > i)
-				translateZ = zAxisData.get(i);
-			dataSphere.setTranslateX(xAxisData.get(i));
-			dataSphere.setTranslateY(translateY);
-			dataSphere.setTranslateZ(translateZ);
-			scatterDataGroup.getChildren().add(dataSphere);
-		}
+		rebuildData();
 	}
 
 	/**
@@ -693,21 +588,7 @@ public class FlightCubeViewer extends Group {
 	 */
 	public void setyAxisData(ArrayList<Double> data) {
 		yAxisData = data;
-		scatterDataGroup.getChildren().clear();
-		for(int i=0;i<yAxisData.size();i++) {
-			final Sphere dataSphere = new Sphere(scatterRadius);
-			//            final Box dataSphere = new Box(getScatterRadius(), getScatterRadius(), getScatterRadius());
-			double translateX = 0.0;
-			double translateZ = 0.0;
-			if(!xAxisData.isEmpty() && xAxisData.size() > i)
-				translateX = xAxisData.get(i);
-			if(!zAxisData.isEmpty() && zAxisData.size() > i)
-				translateZ = zAxisData.get(i);
-			dataSphere.setTranslateX(translateX);
-			dataSphere.setTranslateY(yAxisData.get(i));
-			dataSphere.setTranslateZ(translateZ);
-			scatterDataGroup.getChildren().add(dataSphere);
-		}
+		rebuildData();
 	}
 
 	/**
@@ -722,78 +603,58 @@ public class FlightCubeViewer extends Group {
 	 */
 	public void setzAxisData(ArrayList<Double> data) {
 		zAxisData = data;
-		scatterDataGroup.getChildren().clear();
-		for(int i=0;i<zAxisData.size();i++) {
-			final Sphere dataSphere = new Sphere(scatterRadius);
-			//            final Box dataSphere = new Box(getScatterRadius(), getScatterRadius(), getScatterRadius());
-
-			double translateX = 0.0;
-			double translateY = 0.0;
-			if(!xAxisData.isEmpty() && xAxisData.size() > i)
-				translateX = xAxisData.get(i);
-			if(!yAxisData.isEmpty() && yAxisData.size() > i)
-				translateY = yAxisData.get(i);
-			dataSphere.setTranslateX(translateX);
-			dataSphere.setTranslateY(translateY);
-			dataSphere.setTranslateZ(zAxisData.get(i));
-			scatterDataGroup.getChildren().add(dataSphere);
-		}
+		rebuildData();
 	}
 
 	public void addData(double x, double y, double z) {
 		zAxisData.add(z);  xAxisData.add(x); yAxisData.add(y);
-		Platform.runLater(() -> {
-			scatterDataGroup.getChildren().clear();
-			for(int i=0;i<zAxisData.size();i++) {
-				final Sphere dataSphere = new Sphere(scatterRadius);
-				//            final Box dataSphere = new Box(getScatterRadius(), getScatterRadius(), getScatterRadius());
-
-				double translateX = 0.0;
-				double translateY = 0.0;
-				if(!xAxisData.isEmpty() && xAxisData.size() > i)
-					translateX = xAxisData.get(i);
-				if(!yAxisData.isEmpty() && yAxisData.size() > i)
-					translateY = yAxisData.get(i);
-				dataSphere.setTranslateX(translateX);
-				dataSphere.setTranslateY(translateY);
-				dataSphere.setTranslateZ(zAxisData.get(i));
-				scatterDataGroup.getChildren().add(dataSphere);
-			}
-		});
+		scatterMesh.add(x, y, z);
+		trajectoryMesh.add(x, y, z);
 	}
 
 
 	public void clear() {
 		zAxisData.clear(); xAxisData.clear(); yAxisData.clear();
-		Platform.runLater(() -> {
-			scatterDataGroup.getChildren().clear();
-		});
-
+		scatterMesh.clear();
+		trajectoryMesh.clear();
 	}
 
 	public void remove(int k) {
- try {
-		zAxisData.remove(k);  xAxisData.remove(k);  yAxisData.remove(k);
- } catch(Exception e) {
-	 e.printStackTrace();
- }
-
-		Platform.runLater(() -> {
-			scatterDataGroup.getChildren().clear();
-			for(int i=0;i<zAxisData.size();i++) {
-				final Sphere dataSphere = new Sphere(scatterRadius);
-				double translateX = 0.0;
-				double translateY = 0.0;
-				if(!xAxisData.isEmpty() && xAxisData.size() > i)
-					translateX = xAxisData.get(i);
-				if(!yAxisData.isEmpty() && yAxisData.size() > i)
-					translateY = yAxisData.get(i);
-				dataSphere.setTranslateX(translateX);
-				dataSphere.setTranslateY(translateY);
-				dataSphere.setTranslateZ(zAxisData.get(i));
-				scatterDataGroup.getChildren().add(dataSphere);
-			}
-		});
+		try {
+			zAxisData.remove(k);  xAxisData.remove(k);  yAxisData.remove(k);
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
+		rebuildData();
+	}
+
+	public void showScatter(boolean visible) {
+		scatterMesh.setVisible(visible);
+	}
+
+	public void showTrajectory(boolean visible) {
+		trajectoryMesh.setVisible(visible);
+	}
+
+	/**
+	 * Limits the number of points shown by each mesh
+	 */
+	public void setDataBudget(int budget) {
+		scatterMesh.setBudget(budget);
+		trajectoryMesh.setBudget(budget);
+	}
+
+	private void rebuildData() {
+		scatterMesh.clear();
+		trajectoryMesh.clear();
+		int size = Math.max(xAxisData.size(), Math.max(yAxisData.size(), zAxisData.size()));
+		for(int i=0;i<size;i++) {
+			double x = xAxisData.size() > i ? xAxisData.get(i) : 0.0;
+			double y = yAxisData.size() > i ? yAxisData.get(i) : 0.0;
+			double z = zAxisData.size() > i ? zAxisData.get(i) : 0.0;
+			scatterMesh.add(x, y, z);
+			trajectoryMesh.add(x, y, z);
+		}
 	}
 
 	public void setX1PanelColor(Color color) {
@@ -962,5 +823,6 @@ public class FlightCubeViewer extends Group {
 	 */
 	public void setScatterRadius(double scatterRadius) {
 		this.scatterRadius = scatterRadius;
+		scatterMesh.setRadius(scatterRadius);
 	}
 }
\ No newline at end of file
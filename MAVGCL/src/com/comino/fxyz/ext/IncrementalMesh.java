@@ -0,0 +1,203 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.fxyz.ext;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+/**
+ * Renders a series of 3D data points as one TriangleMesh. Points can be added from any thread,
+ * the geometry of new points is appended to the mesh once per pulse on the FX thread.
+ * Level of detail: points closer than the minimum distance to the last shown point are skipped,
+ * and if more than the budget of points would be shown, only every 2nd, 4th... point is shown
+ * and the mesh is rebuilt once per doubling.
+ */
+public abstract class IncrementalMesh extends MeshView {
+
+	private static final int DEFAULT_BUDGET = 65536;
+
+	protected final TriangleMesh mesh = new TriangleMesh();
+
+	// all data points, not only the shown ones
+	private float[] data  = new float[3 * 1024];
+	private int     count = 0;
+
+	private int    budget       = DEFAULT_BUDGET;
+	private double min_distance = 0;
+	private int    stride       = 1;
+
+	// geometry not yet transferred to the mesh
+	private float[] points = new float[3 * 1024];
+	private int[]   faces  = new int[6 * 1024];
+	private int     points_n = 0, faces_n = 0;
+
+	private int   shown = 0;
+	private float last_x, last_y, last_z;
+	private int   processed = 0;
+
+	private boolean rebuild = false;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	public IncrementalMesh() {
+		this(0);
+	}
+
+	/**
+	 * @param min_distance points closer than this to the last point shown are skipped
+	 */
+	public IncrementalMesh(double min_distance) {
+		this.min_distance = min_distance;
+		mesh.getTexCoords().addAll(0, 0);
+		setMesh(mesh);
+		setCullFace(CullFace.NONE);
+	}
+
+	/**
+	 * Appends the geometry for a shown point, using addVertex and addFace.
+	 *
+	 * @param index number of the shown point, starting with 0
+	 * @param vertex index of the first vertex of this point
+	 */
+	protected abstract void emit(float x, float y, float z, int index, int vertex);
+
+	/**
+	 * Limits the number of points shown, default is 65536
+	 */
+	public void setBudget(int budget) {
+		this.budget = Math.max(2, budget);
+		invalidate();
+	}
+
+	/**
+	 * Skips points closer than distance to the last point shown
+	 */
+	public void setMinDistance(double distance) {
+		this.min_distance = distance;
+		invalidate();
+	}
+
+	public synchronized void add(double x, double y, double z) {
+		if(3 * count + 3 > data.length)
+			data = Arrays.copyOf(data, data.length * 2);
+		data[3 * count] = (float)x; data[3 * count + 1] = (float)y; data[3 * count + 2] = (float)z;
+		count++;
+		schedule();
+	}
+
+	public synchronized void clear() {
+		count = 0;
+		invalidate();
+	}
+
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * @return the number of points currently shown
+	 */
+	public synchronized int getShownCount() {
+		return shown;
+	}
+
+	protected void addVertex(float x, float y, float z) {
+		if(points_n + 3 > points.length)
+			points = Arrays.copyOf(points, points.length * 2);
+		points[points_n++] = x; points[points_n++] = y; points[points_n++] = z;
+	}
+
+	protected void addFace(int p0, int p1, int p2) {
+		if(faces_n + 6 > faces.length)
+			faces = Arrays.copyOf(faces, faces.length * 2);
+		faces[faces_n++] = p0; faces[faces_n++] = 0;
+		faces[faces_n++] = p1; faces[faces_n++] = 0;
+		faces[faces_n++] = p2; faces[faces_n++] = 0;
+	}
+
+	protected synchronized void invalidate() {
+		rebuild = true;
+		schedule();
+	}
+
+	private void schedule() {
+		if(scheduled.compareAndSet(false, true))
+			Platform.runLater(this::flush);
+	}
+
+	private synchronized void flush() {
+		scheduled.set(false);
+		points_n = 0; faces_n = 0;
+		if(!rebuild) {
+			generate(mesh.getPoints().size() / 3);
+			if(shown <= budget) {
+				mesh.getPoints().addAll(points, 0, points_n);
+				mesh.getFaces().addAll(faces, 0, faces_n);
+				return;
+			}
+			// too many points: rebuild with a larger stride
+			points_n = 0; faces_n = 0;
+		}
+		rebuild = false;
+		shown = 0; processed = 0; stride = 1;
+		while(count / stride > budget)
+			stride *= 2;
+		generate(0);
+		mesh.getPoints().setAll(points, 0, points_n);
+		mesh.getFaces().setAll(faces, 0, faces_n);
+	}
+
+	// emits the geometry of all points not processed yet
+	private void generate(int base) {
+		float d2 = (float)(min_distance * min_distance);
+		for(; processed < count; processed++) {
+			if(processed % stride != 0)
+				continue;
+			float x = data[3 * processed], y = data[3 * processed + 1], z = data[3 * processed + 2];
+			if(shown > 0 && d2 > 0) {
+				float dx = x - last_x, dy = y - last_y, dz = z - last_z;
+				if(dx * dx + dy * dy + dz * dz < d2)
+					continue;
+			}
+			emit(x, y, z, shown, base + points_n / 3);
+			last_x = x; last_y = y; last_z = z;
+			shown++;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.fxyz.ext;
+
+import java.util.Arrays;
+
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+/**
+ * Builds a set of straight lines, e.g. grid lines, as square prisms in one mesh.
+ */
+public class LineMesh {
+
+	private final float w;
+
+	private float[] points = new float[3 * 8 * 16];
+	private int[]   faces  = new int[6 * 12 * 16];
+	private int     points_n = 0, faces_n = 0;
+
+	// corners of the cross section and the sides as pairs of corner indices
+	private static final int[][] SIDES = { { 0, 1 }, { 1, 2 }, { 2, 3 }, { 3, 0 } };
+
+	public LineMesh(double thickness) {
+		this.w = (float)thickness;
+	}
+
+	public LineMesh addLine(double x0, double y0, double z0, double x1, double y1, double z1) {
+		float dx = (float)(x1 - x0), dy = (float)(y1 - y0), dz = (float)(z1 - z0);
+		// two axes perpendicular to the line
+		float ux = 0, uy = 0, uz = 0, vx = 0, vy = 0, vz = 0;
+		if(Math.abs(dx) >= Math.abs(dy) && Math.abs(dx) >= Math.abs(dz)) { uy = w; vz = w; }
+		else if(Math.abs(dy) >= Math.abs(dz)) { ux = w; vz = w; }
+		else { ux = w; vy = w; }
+
+		int base = points_n / 3;
+		for(int end = 0; end < 2; end++) {
+			float x = (float)(end == 0 ? x0 : x1), y = (float)(end == 0 ? y0 : y1), z = (float)(end == 0 ? z0 : z1);
+			vertex(x + ux + vx, y + uy + vy, z + uz + vz);
+			vertex(x - ux + vx, y - uy + vy, z - uz + vz);
+			vertex(x - ux - vx, y - uy - vy, z - uz - vz);
+			vertex(x + ux - vx, y + uy - vy, z + uz - vz);
+		}
+		for(int[] s : SIDES) {
+			face(base + s[0], base + s[1], base + 4 + s[0]);
+			face(base + s[1], base + 4 + s[1], base + 4 + s[0]);
+		}
+		face(base, base + 2, base + 1); face(base, base + 3, base + 2);
+		face(base + 4, base + 5, base + 6); face(base + 4, base + 6, base + 7);
+		return this;
+	}
+
+	public MeshView build() {
+		TriangleMesh mesh = new TriangleMesh();
+		mesh.getTexCoords().addAll(0, 0);
+		mesh.getPoints().setAll(points, 0, points_n);
+		mesh.getFaces().setAll(faces, 0, faces_n);
+		MeshView view = new MeshView(mesh);
+		view.setCullFace(CullFace.NONE);
+		return view;
+	}
+
+	private void vertex(float x, float y, float z) {
+		if(points_n + 3 > points.length)
+			points = Arrays.copyOf(points, points.length * 2);
+		points[points_n++] = x; points[points_n++] = y; points[points_n++] = z;
+	}
+
+	private void face(int p0, int p1, int p2) {
+		if(faces_n + 6 > faces.length)
+			faces = Arrays.copyOf(faces, faces.length * 2);
+		faces[faces_n++] = p0; faces[faces_n++] = 0;
+		faces[faces_n++] = p1; faces[faces_n++] = 0;
+		faces[faces_n++] = p2; faces[faces_n++] = 0;
+	}
+}
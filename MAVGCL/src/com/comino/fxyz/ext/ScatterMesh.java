@@ -0,0 +1,65 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.fxyz.ext;
+
+/**
+ * Point cloud as one mesh, each point is drawn as a small tetrahedron.
+ */
+public class ScatterMesh extends IncrementalMesh {
+
+	private float r;
+
+	public ScatterMesh(double radius) {
+		super();
+		this.r = (float)radius;
+	}
+
+	public void setRadius(double radius) {
+		this.r = (float)radius;
+		invalidate();
+	}
+
+	@Override
+	protected void emit(float x, float y, float z, int index, int vertex) {
+		addVertex(x + r, y + r, z + r);
+		addVertex(x + r, y - r, z - r);
+		addVertex(x - r, y + r, z - r);
+		addVertex(x - r, y - r, z + r);
+		addFace(vertex, vertex + 1, vertex + 2);
+		addFace(vertex, vertex + 3, vertex + 1);
+		addFace(vertex, vertex + 2, vertex + 3);
+		addFace(vertex + 1, vertex + 3, vertex + 2);
+	}
+}
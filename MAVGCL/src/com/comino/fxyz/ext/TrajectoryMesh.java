@@ -0,0 +1,86 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.fxyz.ext;
+
+/**
+ * Trajectory as one mesh: a tube with triangular cross section through all points.
+ * Points closer than the tube radius are skipped.
+ */
+public class TrajectoryMesh extends IncrementalMesh {
+
+	private static final float SIN = (float)Math.sin(2 * Math.PI / 3);
+	private static final float COS = (float)Math.cos(2 * Math.PI / 3);
+
+	private final float r;
+	private float px, py, pz;
+
+	public TrajectoryMesh(double radius) {
+		super(radius);
+		this.r = (float)radius;
+	}
+
+	@Override
+	protected void emit(float x, float y, float z, int index, int vertex) {
+		// direction of the segment, the first ring is oriented along X
+		float dx = 1, dy = 0, dz = 0;
+		if(index > 0) {
+			dx = x - px; dy = y - py; dz = z - pz;
+			float l = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+			dx /= l; dy /= l; dz /= l;
+		}
+		px = x; py = y; pz = z;
+
+		// u = d x ref, v = d x u
+		float rx = 0, ry = 1, rz = 0;
+		if(Math.abs(dy) > 0.9f) { rx = 1; ry = 0; }
+		float ux = dy * rz - dz * ry, uy = dz * rx - dx * rz, uz = dx * ry - dy * rx;
+		float l = (float)Math.sqrt(ux * ux + uy * uy + uz * uz);
+		ux /= l; uy /= l; uz /= l;
+		float vx = dy * uz - dz * uy, vy = dz * ux - dx * uz, vz = dx * uy - dy * ux;
+
+		addVertex(x + r * ux, y + r * uy, z + r * uz);
+		addVertex(x + r * (COS * ux + SIN * vx), y + r * (COS * uy + SIN * vy), z + r * (COS * uz + SIN * vz));
+		addVertex(x + r * (COS * ux - SIN * vx), y + r * (COS * uy - SIN * vy), z + r * (COS * uz - SIN * vz));
+
+		if(index > 0) {
+			int prev = vertex - 3;
+			for(int j = 0; j < 3; j++) {
+				int k = (j + 1) % 3;
+				addFace(prev + j, prev + k, vertex + j);
+				addFace(prev + k, vertex + k, vertex + j);
+			}
+		}
+	}
+}
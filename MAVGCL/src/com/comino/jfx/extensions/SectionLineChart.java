@@ -37,6 +37,7 @@ import com.emxsys.chart.extension.XYAnnotations;
 
 import javafx.beans.NamedArg;
 import javafx.scene.Group;
+import javafx.scene.canvas.Canvas;
 import javafx.scene.chart.Axis;
 import javafx.scene.chart.LineChart;
 
@@ -44,6 +45,9 @@ public class SectionLineChart<X,Y> extends LineChart<X, Y> {
 
 	private XYAnnotations annotations;
 
+	private Canvas   canvas   = null;
+	private Runnable renderer = null;
+
 	public SectionLineChart(@NamedArg("xAxis")Axis<X> xAxis, @NamedArg("yAxis")Axis<Y> yAxis) {
 		super(xAxis, yAxis);
 		annotations = new XYAnnotations(this, getChartChildren());
@@ -52,10 +56,31 @@ public class SectionLineChart<X,Y> extends LineChart<X, Y> {
 	@Override
     protected void layoutPlotChildren() {
         super.layoutPlotChildren();
+        if(canvas!=null) {
+            canvas.setWidth(getXAxis().getWidth());
+            canvas.setHeight(getYAxis().getHeight());
+            if(renderer!=null)
+                renderer.run();
+        }
         if(annotations!=null)
           this.annotations.layoutAnnotations();
     }
 
+	/**
+	 * Returns a canvas covering the plot area below the series. The renderer is called
+	 * after each layout of the plot.
+	 */
+	public Canvas getPlotCanvas(Runnable renderer) {
+		if(canvas==null) {
+			canvas = new Canvas();
+			canvas.setManaged(false);
+			canvas.setMouseTransparent(true);
+			getPlotChildren().add(0, canvas);
+		}
+		this.renderer = renderer;
+		return canvas;
+	}
+
 	public XYAnnotations getAnnotations() {
         return this.annotations;
     }
@@ -0,0 +1,267 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.openmapfx.ext;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.lodgon.openmapfx.core.MapArea;
+
+import com.comino.flight.model.AnalysisDataModel;
+
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Flight path projected once into web mercator pixel coordinates at zoom 0, kept in
+ * primitive arrays. New samples of the model list are appended incrementally.
+ * For each zoom level the path is simplified (Douglas-Peucker, 0.5 px tolerance) in
+ * chunks of completed points, only the open tail is simplified when drawn.
+ */
+public class ProjectedPath {
+
+	private static final int    CHUNK     = 256;
+	private static final double TOLERANCE = 0.5;
+
+	private double[] wx     = new double[1024];
+	private double[] wy     = new double[1024];
+	private int[]    sample = new int[1024];
+	private int      count  = 0;
+
+	private String lat_key = null;
+	private String lon_key = null;
+
+	private AnalysisDataModel first = null;
+	private int next = 0;
+
+	private final Level[] levels = new Level[MapArea.MAX_ZOOM+1];
+
+	private final Indices tail  = new Indices();
+	private final Indices stack = new Indices();
+	private boolean[] keep      = new boolean[CHUNK+1];
+
+	private double[] xs = new double[1024];
+	private double[] ys = new double[1024];
+
+	/**
+	 * Appends the samples added to the list since the last update. The path is rebuilt if the
+	 * list was cleared or replaced, or if the position keys changed.
+	 */
+	public void update(List<AnalysisDataModel> list, String lat, String lon) {
+		if(!lat.equals(lat_key) || !lon.equals(lon_key) || list.size() < next
+				|| (next > 0 && list.get(0) != first)) {
+			clear();
+			lat_key = lat; lon_key = lon;
+		}
+		if(list.isEmpty())
+			return;
+		first = list.get(0);
+		for(; next < list.size(); next++) {
+			AnalysisDataModel m = list.get(next);
+			double la = m.getValue(lat_key); double lo = m.getValue(lon_key);
+			if(la == 0 && lo == 0)
+				continue;
+			append(la, lo, next);
+		}
+	}
+
+	public void clear() {
+		count = 0; next = 0; first = null;
+		Arrays.fill(levels, null);
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Draws the path starting with the sample index from as a polyline, skipping segments
+	 * outside the canvas. Uses the current stroke of gc.
+	 *
+	 * @param marker draw a dot at the first point
+	 * @return the sample index of the last point drawn, or from if nothing was drawn
+	 */
+	public int draw(GraphicsContext gc, double zoom, double tx, double ty, double width, double height,
+			int from, boolean marker) {
+
+		int p0 = firstPoint(from);
+		if(p0 >= count)
+			return from;
+
+		int z = Math.max(0, Math.min(MapArea.MAX_ZOOM, (int)Math.ceil(zoom)));
+		Level level = getLevel(z);
+		double scale = Math.pow(2, zoom);
+
+		if(marker)
+			gc.fillOval(tx + wx[p0] * scale - 4, ty + wy[p0] * scale - 4, 8, 8);
+
+		if(p0 == count - 1)
+			return sample[p0];
+
+		// kept points after p0, followed by the simplified open tail
+		tail.n = 0;
+		simplify(level.done, count - 1, level.tol2, tail);
+
+		int n = 0;
+		double px = tx + wx[p0] * scale; double py = ty + wy[p0] * scale;
+		xs[n] = px; ys[n++] = py;
+
+		int k = Arrays.binarySearch(level.kept.v, 0, level.kept.n, p0 + 1);
+		if(k < 0) k = -k - 1;
+		int total = level.kept.n + tail.n;
+		for(; k < total; k++) {
+			int p = k < level.kept.n ? level.kept.v[k] : tail.v[k - level.kept.n];
+			if(p <= p0)
+				continue;
+			double x = tx + wx[p] * scale; double y = ty + wy[p] * scale;
+			if(!visible(px, py, x, y, width, height)) {
+				if(n > 1)
+					gc.strokePolyline(xs, ys, n);
+				n = 0;
+			}
+			if(n == 0) {
+				xs[n] = px; ys[n++] = py;
+			}
+			if(n >= xs.length) {
+				xs = Arrays.copyOf(xs, n * 2); ys = Arrays.copyOf(ys, n * 2);
+			}
+			xs[n] = x; ys[n++] = y;
+			px = x; py = y;
+		}
+		if(n > 1)
+			gc.strokePolyline(xs, ys, n);
+		return sample[count - 1];
+	}
+
+	private void append(double lat, double lon, int index) {
+		if(count >= wx.length) {
+			wx = Arrays.copyOf(wx, count * 2);
+			wy = Arrays.copyOf(wy, count * 2);
+			sample = Arrays.copyOf(sample, count * 2);
+		}
+		double r = Math.toRadians(lat);
+		wx[count] = (180 + lon) / 360 * 256;
+		wy[count] = (1 - Math.log(Math.tan(r) + 1 / Math.cos(r)) / Math.PI) / 2 * 256;
+		sample[count++] = index;
+	}
+
+	private int firstPoint(int from) {
+		int k = Arrays.binarySearch(sample, 0, count, from);
+		return k < 0 ? -k - 1 : k;
+	}
+
+	private Level getLevel(int z) {
+		if(levels[z] == null)
+			levels[z] = new Level(TOLERANCE / Math.pow(2, z));
+		Level level = levels[z];
+		while(count - 1 - level.done >= CHUNK) {
+			simplify(level.done, level.done + CHUNK, level.tol2, level.kept);
+			level.done += CHUNK;
+		}
+		return level;
+	}
+
+	/**
+	 * Douglas-Peucker on the points a..b, appends the kept indices in (a,b] in ascending order
+	 */
+	private void simplify(int a, int b, double tol2, Indices out) {
+		int len = b - a;
+		if(len <= 0)
+			return;
+		if(keep.length < len + 1)
+			keep = new boolean[len + 1];
+		else
+			Arrays.fill(keep, 0, len + 1, false);
+		keep[len] = true;
+
+		stack.n = 0;
+		stack.add(a); stack.add(b);
+		while(stack.n > 0) {
+			int e = stack.v[--stack.n]; int s = stack.v[--stack.n];
+			if(e - s < 2)
+				continue;
+			double max = -1; int index = s;
+			for(int i = s + 1; i < e; i++) {
+				double d = distance2(i, s, e);
+				if(d > max) { max = d; index = i; }
+			}
+			if(max > tol2) {
+				keep[index - a] = true;
+				stack.add(s); stack.add(index);
+				stack.add(index); stack.add(e);
+			}
+		}
+		for(int i = 1; i <= len; i++)
+			if(keep[i]) out.add(a + i);
+	}
+
+	// squared distance of point p to the segment s-e
+	private double distance2(int p, int s, int e) {
+		double dx = wx[e] - wx[s]; double dy = wy[e] - wy[s];
+		double l2 = dx * dx + dy * dy;
+		double t = 0;
+		if(l2 > 0)
+			t = Math.max(0, Math.min(1, ((wx[p] - wx[s]) * dx + (wy[p] - wy[s]) * dy) / l2));
+		double x = wx[s] + t * dx - wx[p]; double y = wy[s] + t * dy - wy[p];
+		return x * x + y * y;
+	}
+
+	private static boolean visible(double x0, double y0, double x1, double y1, double width, double height) {
+		return !(Math.max(x0, x1) < 0 || Math.min(x0, x1) > width || Math.max(y0, y1) < 0 || Math.min(y0, y1) > height);
+	}
+
+	private static class Level {
+
+		final double  tol2;
+		final Indices kept = new Indices();
+		int done = 0;
+
+		Level(double tol) {
+			this.tol2 = tol * tol;
+			kept.add(0);
+		}
+	}
+
+	private static class Indices {
+
+		int[] v = new int[256];
+		int   n = 0;
+
+		void add(int i) {
+			if(n >= v.length)
+				v = Arrays.copyOf(v, n * 2);
+			v[n++] = i;
+		}
+	}
+}
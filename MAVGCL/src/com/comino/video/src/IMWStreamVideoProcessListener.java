@@ -33,11 +33,16 @@
 
 package com.comino.video.src;
 
+import java.nio.ByteBuffer;
+
 import javafx.scene.image.Image;
 
 
 public interface IMWStreamVideoProcessListener {
 
-	public void process(Image image, byte[] buffer) throws Exception;
+	/**
+	 * @param buffer the JPEG data of the frame, valid only during the call
+	 */
+	public void process(Image image, ByteBuffer buffer) throws Exception;
 
 }
@@ -43,6 +43,20 @@ public interface IMWVideoSource {
 	public boolean isRunning();
 	int getFPS();
 
+	/**
+	 * Frames are decoded to fit into this size, 0 for the original size
+	 */
+	void setTargetSize(int width, int height);
+
+	float getDecodeTime_ms();
+	float getLatency_ms();
+	long  getDroppedFrames();
+
+	/**
+	 * Raw frames are passed to the sink while it is recording, null to detach
+	 */
+	void setRecorder(IMWVideoFrameSink recorder);
+
 
 
 }
\ No newline at end of file
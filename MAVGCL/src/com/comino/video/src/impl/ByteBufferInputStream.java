@@ -32,57 +32,47 @@
  ****************************************************************************/
 
 
-package com.comino.flight.widgets.charts.line;
+package com.comino.video.src.impl;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 
-import javafx.scene.chart.XYChart;
+/**
+ * InputStream reading the remaining bytes of a ByteBuffer without copying them first
+ */
+public class ByteBufferInputStream extends InputStream {
 
-public class XYDataPool {
+	private final ByteBuffer buffer;
 
-	private static final int INIT_CAPACITY = 500;
-
-	private Hashtable<XYChart.Data<Number,Number>,Boolean> locked, unlocked;
-
-	public XYDataPool() {
-		locked   = new Hashtable<XYChart.Data<Number,Number>,Boolean>(0);
-		unlocked = new Hashtable<XYChart.Data<Number,Number>,Boolean>(INIT_CAPACITY);
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
 	}
 
-	public synchronized XYChart.Data<Number,Number> checkOut(float x, float y)
-	{
-		XYChart.Data<Number,Number> o;
-		if( unlocked.size() > 0 )
-		{
-			Enumeration<XYChart.Data<Number,Number>> e = unlocked.keys();
-			o = e.nextElement();
-			o.setXValue(x);
-			o.setYValue(y);
-			unlocked.remove(o);
-			locked.put(o, true);
-			return(o);
-		}
-		o = new XYChart.Data<Number,Number>(x,y);
-		locked.put( o, true );
-		return( o );
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
 	}
 
-	public synchronized void invalidate(XYChart.Data<Number,Number> o) {
-		if(locked.size()>0) {
-			locked.remove(o);
-			unlocked.put(o, true);
-		}
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if(len == 0)
+			return 0;
+		if(!buffer.hasRemaining())
+			return -1;
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
 	}
 
-	public synchronized void invalidateAll() {
-		unlocked.clear();
-		unlocked.putAll(locked);
-		locked.clear();
+	@Override
+	public long skip(long n) {
+		int k = (int)Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + k);
+		return k;
 	}
 
-	public int getLockedSize() {
-		return locked.size();
+	@Override
+	public int available() {
+		return buffer.remaining();
 	}
-
 }
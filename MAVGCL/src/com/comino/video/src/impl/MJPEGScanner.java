@@ -0,0 +1,221 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.video.src.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a multipart MJPEG stream into frames. The stream is read in blocks into one reusable
+ * direct buffer and boundaries are searched there; frames are returned as views of this buffer,
+ * so that no bytes are copied per frame. If a part provides a Content-Length, the boundary
+ * search within the image data is skipped.
+ */
+public class MJPEGScanner {
+
+	private static final int INITIAL_SIZE = 512 * 1024;
+	private static final int MAX_SIZE     = 16 * 1024 * 1024;
+
+	private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.US_ASCII);
+
+	private final ReadableByteChannel channel;
+	private final byte[] boundary;
+
+	private ByteBuffer buf = ByteBuffer.allocateDirect(INITIAL_SIZE);
+	private int start = 0;   // first byte not consumed
+	private int end   = 0;   // end of the data read
+
+	private boolean stream_end = false;
+
+	/**
+	 * @param boundary the boundary including the '--' prefix
+	 */
+	public MJPEGScanner(InputStream in, String boundary) {
+		this.channel  = Channels.newChannel(in);
+		this.boundary = boundary.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Returns the data of the next part as a view of the internal buffer, which is valid until the
+	 * next call, or null at the end of the stream.
+	 */
+	public ByteBuffer next() throws IOException {
+
+		// skip to the boundary, consuming everything before it
+		int k;
+		while((k = find(boundary, 0)) < 0) {
+			start += Math.max(0, available() - boundary.length + 1);
+			if(!fill())
+				return null;
+		}
+		start += k;
+
+		// terminating boundary
+		if(!ensure(boundary.length + 2))
+			return null;
+		if(get(boundary.length) == '-' && get(boundary.length + 1) == '-') {
+			stream_end = true;
+			return null;
+		}
+
+		// part headers end with an empty line
+		int body;
+		while((body = headerEnd(boundary.length)) < 0) {
+			if(!fill())
+				return null;
+		}
+
+		int length = contentLength(boundary.length, body);
+		int frame_end;
+		if(length >= 0) {
+			if(!ensure(body + length))
+				return null;
+			frame_end = body + length;
+		} else {
+			while((frame_end = find(boundary, body)) < 0) {
+				if(!fill())
+					return null;
+			}
+			// line break before the boundary is not part of the data
+			if(frame_end > body && get(frame_end - 1) == '\n') frame_end--;
+			if(frame_end > body && get(frame_end - 1) == '\r') frame_end--;
+		}
+
+		ByteBuffer frame = buf.duplicate();
+		frame.limit(start + frame_end).position(start + body);
+		start += frame_end;
+		return frame;
+	}
+
+	public boolean isAtStreamEnd() {
+		return stream_end;
+	}
+
+	private int available() {
+		return end - start;
+	}
+
+	private byte get(int offset) {
+		return buf.get(start + offset);
+	}
+
+	// reads until at least n bytes are available
+	private boolean ensure(int n) throws IOException {
+		while(available() < n) {
+			if(!fill())
+				return false;
+		}
+		return true;
+	}
+
+	// offset of the pattern relative to start, searching from offset from, or -1
+	private int find(byte[] p, int from) {
+		int last = end - p.length;
+		byte first = p[0];
+		for(int i = start + from; i <= last; i++) {
+			if(buf.get(i) != first)
+				continue;
+			int j = 1;
+			while(j < p.length && buf.get(i + j) == p[j])
+				j++;
+			if(j == p.length)
+				return i - start;
+		}
+		return -1;
+	}
+
+	// offset of the first byte after the empty line ending the headers, or -1
+	private int headerEnd(int from) {
+		for(int i = start + from; i < end; i++) {
+			if(buf.get(i) != '\n')
+				continue;
+			int j = i + 1;
+			if(j < end && buf.get(j) == '\r')
+				j++;
+			if(j < end && buf.get(j) == '\n')
+				return j + 1 - start;
+		}
+		return -1;
+	}
+
+	private int contentLength(int from, int to) {
+		for(int i = from; i + CONTENT_LENGTH.length <= to; i++) {
+			int j = 0;
+			while(j < CONTENT_LENGTH.length && Character.toLowerCase((char)get(i + j)) == CONTENT_LENGTH[j])
+				j++;
+			if(j < CONTENT_LENGTH.length)
+				continue;
+			int value = -1;
+			for(i = i + j; i < to; i++) {
+				char c = (char)get(i);
+				if(c >= '0' && c <= '9')
+					value = (value < 0 ? 0 : value * 10) + (c - '0');
+				else if(c != ' ' || value >= 0)
+					break;
+			}
+			return value;
+		}
+		return -1;
+	}
+
+	private boolean fill() throws IOException {
+		if(end == buf.capacity()) {
+			if(start > 0) {
+				buf.limit(end).position(start);
+				buf.compact();
+				end -= start; start = 0;
+			} else {
+				if(buf.capacity() >= MAX_SIZE)
+					throw new IOException("MJPEG frame exceeds "+MAX_SIZE+" bytes");
+				ByteBuffer b = ByteBuffer.allocateDirect(buf.capacity() * 2);
+				buf.limit(end).position(0);
+				b.put(buf);
+				buf = b;
+			}
+		}
+		buf.limit(buf.capacity()).position(end);
+		int n = channel.read(buf);
+		if(n < 0) {
+			stream_end = true;
+			return false;
+		}
+		end += n;
+		return true;
+	}
+}
@@ -36,15 +36,16 @@ package com.comino.video.src.impl;
 
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.util.Hashtable;
 
 import com.comino.flight.model.AnalysisDataModel;
 import com.comino.video.src.IMWStreamVideoProcessListener;
+import com.comino.video.src.IMWVideoFrameSink;
 import com.comino.video.src.IMWVideoSource;
 
 import javafx.scene.image.Image;
@@ -53,8 +54,9 @@ import javafx.scene.image.Image;
 
 
 /**
- * This class is used as a program entry point,
- * an SWT control and thread's runnable.
+ * Reads an MJPEG stream and decodes the frames in a separate worker thread at the target size.
+ * Frames arriving while the worker is still decoding are dropped, so that the latency does not
+ * grow if decoding is slower than the stream.
  */
 public class StreamVideoSource  implements IMWVideoSource, Runnable {
 
@@ -66,19 +68,29 @@ public class StreamVideoSource  implements IMWVideoSource, Runnable {
 	private DataInputStream stream = null; // mjpeg stream
 	private URL url = null;
 
+	private Decoder decoder = null;
+
 
 	private boolean m_collecting =false;
-	private boolean isRunning = false;
+	private volatile boolean isRunning = false;
 	private boolean isAvailable = true;
 
 	private long tms=0;
 
-	private long trigger = 0;
+	private volatile long trigger = 0;
 
 	private int  fps=0;
 
+	private volatile int width  = 0;
+	private volatile int height = 0;
+
+	private volatile float decode_ms  = 0;
+	private volatile float latency_ms = 0;
+	private volatile long  dropped    = 0;
+
 	private AnalysisDataModel model = null;
 
+	private volatile IMWVideoFrameSink recorder = null;
 
 
 	private IMWStreamVideoProcessListener listener = null;
@@ -99,17 +111,22 @@ public class StreamVideoSource  implements IMWVideoSource, Runnable {
 		this.listener = listener;
 	}
 
+	@Override
+	public void setRecorder(IMWVideoFrameSink recorder) {
+		this.recorder = recorder;
+	}
+
 
 
 	@SuppressWarnings("rawtypes")
 	public void run()
 	{
 		StreamSplit ssplit = null;;
+		MJPEGScanner scanner = null;
 		String connectionError = null;
 		String ctype = null;
 		Hashtable headers = null;
 		URLConnection conn = null;
-		int framecounter=0;
 
 
 		while(isRunning) {
@@ -162,6 +179,9 @@ public class StreamVideoSource  implements IMWVideoSource, Runnable {
 
 			} while(connectionError != null && isRunning && !m_collecting);
 
+			if(!isRunning)
+				break;
+
 			isAvailable = true;
 
 			//
@@ -181,67 +201,34 @@ public class StreamVideoSource  implements IMWVideoSource, Runnable {
 					boundary = StreamSplit.BOUNDARY_MARKER_PREFIX + boundary;
 				}
 			}
-			//
-			// Now if we have a boundary, read up to that.
-
-			//
-			try {
-				if (ctype.startsWith("multipart/x-mixed-replace"))
-					ssplit.skipToBoundary(boundary);
-			} catch (Exception e) {  }
 
+			scanner = new MJPEGScanner(stream, boundary);
 
 			do {
 
 				try {
 					if (m_collecting) {
-						//
-						// Now we have the real type...
-						//  More headers (for the part), then the object...
-						//
-						if (boundary != null) {
-							headers = ssplit.readHeaders();
-							if (ssplit.isAtStreamEnd()) {
-								break;
-							}
-							ctype = (String) headers.get("content-type");
-							if (ctype == null) {
-								throw new Exception("No part content type");
-							}
+						ByteBuffer img = scanner.next();
+						if (img == null) {
+							System.out.println("BREAK");
+							trigger = 0;
+							break;
 						}
-						//
-						// Mixed Type -> just skip...
-						//
-						if (ctype.startsWith("multipart/x-mixed-replace")) {
-							bidx = ctype.indexOf("boundary=");
-							boundary = ctype.substring(bidx + 9);
-							ssplit.skipToBoundary(boundary);
-						} else {
-						//	System.out.println("FC: "+(++framecounter)+"   ");
-							byte[] img = ssplit.readToBoundary(boundary);
-							if (img.length == 0) {
-								System.out.println("BREAK");
-								trigger = 0;
-								break;
-							}
-							try {
-								if(System.currentTimeMillis() >= trigger) {
-
-									if(listener!=null) {
-										listener.process(getfromjpeg(img),img);
-									}
-
-									fps = (int)(1000 / (System.currentTimeMillis() - tms));
-									tms = System.currentTimeMillis();
-									trigger = System.currentTimeMillis()+RATE;
-								}
-								else
-									Thread.sleep(10);
-
-							} catch (Exception e) {
-								throw new Exception(e.getMessage());
-							}
-
+						if(img.remaining() == 0)
+							continue;
+
+						// all received frames are recorded, independent of the rate limit
+						IMWVideoFrameSink r = recorder;
+						if(r!=null && r.isRecording())
+							r.add(img);
+
+						// rate limit without blocking the reader
+						long now = System.currentTimeMillis();
+						if(now >= trigger) {
+							if(decoder.offer(img, System.nanoTime()))
+								trigger = now + RATE;
+							else
+								dropped++;
 						}
 					}
 
@@ -254,13 +241,17 @@ public class StreamVideoSource  implements IMWVideoSource, Runnable {
 					System.err.println(connectionError);
 				}
 
-			} while (m_collecting);
+			} while (m_collecting && isRunning);
 		}
 	}
 
 
 	public Thread start() {
 		isRunning = true;
+		decoder = new Decoder();
+		Thread worker = new Thread(decoder, "VideoDecoder");
+		worker.setDaemon(true);
+		worker.start();
 		thread = new Thread(this);
 		thread.setPriority(Thread.MAX_PRIORITY);
 		thread.start();
@@ -279,6 +270,8 @@ public class StreamVideoSource  implements IMWVideoSource, Runnable {
 		thread.interrupt();
 		m_collecting = false;
 		isRunning = false;
+		if(decoder!=null)
+			decoder.wakeup();
 		try {
 			stream.close();
 		} catch (Exception e1) { }
@@ -297,18 +290,99 @@ public class StreamVideoSource  implements IMWVideoSource, Runnable {
 		this.trigger = time;
 	}
 
+	@Override
+	public void setTargetSize(int width, int height) {
+		this.width = width; this.height = height;
+	}
+
 
 	@Override
 	public int getFPS() {
 		return fps;
 	}
 
+	@Override
+	public float getDecodeTime_ms() {
+		return decode_ms;
+	}
 
+	@Override
+	public float getLatency_ms() {
+		return latency_ms;
+	}
 
-	private Image getfromjpeg(byte[] in) {
-		return new Image(new ByteArrayInputStream(in));
+	@Override
+	public long getDroppedFrames() {
+		return dropped;
 	}
 
-}
+	@Override
+	public String toString() {
+		return String.format("Video: %d fps, decode %.1f ms, latency %.1f ms, dropped %d", fps, decode_ms, latency_ms, dropped);
+	}
+
+
+	/**
+	 * Decodes one frame at a time. A frame is copied once into the decoder's buffer if the
+	 * decoder is idle, otherwise it is rejected.
+	 */
+	private class Decoder implements Runnable {
+
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+		private long       received = 0;
+		private boolean    pending = false;
+
+		synchronized boolean offer(ByteBuffer frame, long received_ns) {
+			if(pending)
+				return false;
+			if(buffer.capacity() < frame.remaining())
+				buffer = ByteBuffer.allocateDirect(frame.remaining() * 2);
+			buffer.clear();
+			buffer.put(frame);
+			buffer.flip();
+			received = received_ns;
+			pending  = true;
+			notify();
+			return true;
+		}
 
+		synchronized void wakeup() {
+			notify();
+		}
 
+		@Override
+		public void run() {
+			while(isRunning) {
+				synchronized(this) {
+					if(!pending) {
+						try { wait(200); } catch (InterruptedException e) { return; }
+						continue;
+					}
+				}
+				try {
+					// buffer is not touched by the reader while pending
+					long t = System.nanoTime();
+					Image image = new Image(new ByteBufferInputStream(buffer.duplicate()), width, height, true, false);
+					long now = System.nanoTime();
+					decode_ms  = decode_ms  * 0.9f + (now - t) / 1e6f * 0.1f;
+					latency_ms = latency_ms * 0.9f + (now - received) / 1e6f * 0.1f;
+
+					if(listener!=null && !image.isError())
+						listener.process(image, buffer.duplicate());
+
+					long ms = System.currentTimeMillis();
+					if(ms > tms)
+						fps = (int)(1000 / (ms - tms));
+					tms = ms;
+				} catch (Exception e) {
+					System.err.println(StreamVideoSource.class.getSimpleName()+":"+e.getMessage());
+				} finally {
+					synchronized(this) {
+						pending = false;
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,208 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.video.src.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import javafx.scene.image.Image;
+
+/**
+ * Random access to the frames of a video recorded by {@link VideoRecorder}. A frame is found
+ * by binary search over the collector times and only this frame is read and decoded.
+ */
+public class VideoPlayer implements Closeable {
+
+	private final FileChannel channel;
+
+	private long[] index_tms;
+	private long[] index_offset;
+	private int    count = 0;
+
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer header = ByteBuffer.allocate(VideoRecorder.RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	private int   last_index  = -1;
+	private int   last_width  = -1;
+	private int   last_height = -1;
+	private Image last_image  = null;
+
+
+	public VideoPlayer(File file) throws IOException {
+		channel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			ByteBuffer magic = ByteBuffer.allocate(VideoRecorder.HEADER_SIZE);
+			readFully(magic, 0);
+			if(!Arrays.equals(Arrays.copyOf(magic.array(), VideoRecorder.MAGIC.length), VideoRecorder.MAGIC))
+				throw new IOException("Not a video recording: "+file.getName());
+			if(!readIndex())
+				scanIndex();
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int getFrameCount() {
+		return count;
+	}
+
+	public long getStartTms() {
+		return count > 0 ? index_tms[0] : 0;
+	}
+
+	public long getEndTms() {
+		return count > 0 ? index_tms[count-1] : 0;
+	}
+
+	public long getTms(int index) {
+		return index_tms[index];
+	}
+
+	/**
+	 * @return index of the last frame received at or before tms, -1 if none
+	 */
+	public int find(long tms) {
+		int lo = 0, hi = count - 1, found = -1;
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if(index_tms[mid] <= tms) {
+				found = mid; lo = mid + 1;
+			} else
+				hi = mid - 1;
+		}
+		return found;
+	}
+
+	/**
+	 * @return the JPEG data of the frame, valid until the next call
+	 */
+	public synchronized ByteBuffer getFrame(int index) throws IOException {
+		long offset = index_offset[index];
+		header.clear();
+		readFully(header, offset);
+		int length = header.getInt(8);
+		if(buffer.capacity() < length)
+			buffer = ByteBuffer.allocateDirect(length * 2);
+		buffer.clear();
+		buffer.limit(length);
+		readFully(buffer, offset + VideoRecorder.RECORD_HEADER_SIZE);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * @return the frame shown at collector time tms decoded to fit into width x height,
+	 * null if tms is before the first frame
+	 */
+	public synchronized Image getImage(long tms, int width, int height) throws IOException {
+		int index = find(tms);
+		if(index < 0)
+			return null;
+		if(index == last_index && width == last_width && height == last_height)
+			return last_image;
+		last_image  = new Image(new ByteBufferInputStream(getFrame(index)), width, height, true, false);
+		last_index  = index; last_width = width; last_height = height;
+		return last_image;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private boolean readIndex() throws IOException {
+		long size = channel.size();
+		if(size < VideoRecorder.HEADER_SIZE + VideoRecorder.FOOTER_SIZE)
+			return false;
+		ByteBuffer footer = ByteBuffer.allocate(VideoRecorder.FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(footer, size - VideoRecorder.FOOTER_SIZE);
+		byte[] magic = Arrays.copyOfRange(footer.array(), 12, 16);
+		int  n     = footer.getInt(0);
+		long index = footer.getLong(4);
+		if(!Arrays.equals(magic, VideoRecorder.INDEX_MAGIC) || n < 0
+				|| index + n * 16L + VideoRecorder.FOOTER_SIZE != size)
+			return false;
+
+		ByteBuffer entries = ByteBuffer.allocate(n * 16).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(entries, index);
+		entries.flip();
+		index_tms = new long[n]; index_offset = new long[n];
+		for(int i = 0; i < n; i++) {
+			index_tms[i] = entries.getLong(); index_offset[i] = entries.getLong();
+		}
+		count = n;
+		return true;
+	}
+
+	// rebuilds the index of a recording that was not closed properly
+	private void scanIndex() throws IOException {
+		long size = channel.size();
+		long offset = VideoRecorder.HEADER_SIZE;
+		ByteBuffer record = ByteBuffer.allocate(VideoRecorder.RECORD_HEADER_SIZE + 2).order(ByteOrder.LITTLE_ENDIAN);
+		index_tms = new long[1024]; index_offset = new long[1024]; count = 0;
+
+		while(offset + record.capacity() <= size) {
+			record.clear();
+			readFully(record, offset);
+			int length = record.getInt(8);
+			// stops at a truncated record or at the beginning of an incomplete index
+			if(length < 2 || offset + VideoRecorder.RECORD_HEADER_SIZE + length > size
+					|| record.get(12) != (byte)0xFF || record.get(13) != (byte)0xD8)
+				break;
+			if(count == index_tms.length) {
+				index_tms = Arrays.copyOf(index_tms, count * 2); index_offset = Arrays.copyOf(index_offset, count * 2);
+			}
+			index_tms[count] = record.getLong(0); index_offset[count] = offset;
+			count++;
+			offset += VideoRecorder.RECORD_HEADER_SIZE + length;
+		}
+		System.out.println("Video index rebuilt: "+count+" frames");
+	}
+
+	private void readFully(ByteBuffer b, long position) throws IOException {
+		int start = b.position();
+		while(b.hasRemaining()) {
+			if(channel.read(b, position + b.position() - start) < 0)
+				throw new IOException("Unexpected end of video recording");
+		}
+	}
+}
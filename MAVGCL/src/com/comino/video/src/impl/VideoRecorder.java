@@ -0,0 +1,186 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.video.src.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+import com.comino.flight.log.BackgroundFileWriter;
+import com.comino.video.src.IMWVideoFrameSink;
+
+/**
+ * Appends the raw JPEG frames of a video stream to a file, each with the collector time of the
+ * analysis model, so that it can be replayed synchronously to the charts by {@link VideoPlayer}.
+ * Frames are written by a {@link BackgroundFileWriter}; if it falls behind, frames are dropped.
+ * Each recording has its own writer, which waits for the previous one to finish the file, so
+ * start and stop do not block.
+ *
+ * File layout (little endian):
+ * header:  MAGIC[8] | start time epoch ms [8]
+ * record:  collector tms us [8] | JPEG length [4] | JPEG
+ * index:   count x (tms us [8] | record offset [8]) | count [4] | index offset [8] | INDEX_MAGIC[4]
+ * The index is appended on stop; without it the records are scanned.
+ */
+public class VideoRecorder implements IMWVideoFrameSink {
+
+	public static final String  EXTENSION   = "mvr";
+	public static final byte[]  MAGIC       = { 'M','A','V','G','C','V', 0x01, 0x00 };
+	public static final byte[]  INDEX_MAGIC = { 'M','V','I','X' };
+	public static final int     HEADER_SIZE = 16;
+	public static final int     RECORD_HEADER_SIZE = 12;
+	public static final int     FOOTER_SIZE = 16;
+
+	private static final int    BUFFER_SIZE = 1024 * 1024;
+	private static final int    QUEUE_SIZE  = 64;
+
+	private final LongSupplier clock;
+
+	private volatile Recording recording = null;
+	private Recording last = null;
+
+	/**
+	 * @param clock supplies the collector time in us of a received frame, negative if frames
+	 * should not be recorded
+	 */
+	public VideoRecorder(LongSupplier clock) {
+		this.clock = clock;
+	}
+
+	public synchronized void start(File file) throws IOException {
+		stop(null);
+		last = new Recording(file, last);
+		recording = last;
+		recording.start();
+	}
+
+	/**
+	 * Ends the recording without waiting for the file to be written
+	 * @param completed run by the writer thread after the file is closed, may be null
+	 */
+	public synchronized void stop(Runnable completed) {
+		if(recording==null)
+			return;
+		recording.close(completed);
+		recording = null;
+	}
+
+	@Override
+	public boolean isRecording() {
+		return recording!=null;
+	}
+
+	public synchronized long getFrameCount() {
+		return last!=null ? last.getRecordCount() : 0;
+	}
+
+	public synchronized long getDroppedFrames() {
+		return last!=null ? last.getDropped() : 0;
+	}
+
+	/**
+	 * Adds the remaining bytes of the buffer as frame received now
+	 */
+	@Override
+	public void add(ByteBuffer jpeg) {
+		Recording r = recording;
+		if(r==null)
+			return;
+		long tms = clock.getAsLong();
+		if(tms < 0)
+			return;
+		byte[] record = new byte[RECORD_HEADER_SIZE + jpeg.remaining()];
+		ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN).putLong(tms).putInt(jpeg.remaining()).put(jpeg.duplicate());
+		r.offer(record);
+	}
+
+
+	private static class Recording extends BackgroundFileWriter {
+
+		private final long tms_start;
+
+		private long[] index_tms    = new long[1024];
+		private long[] index_offset = new long[1024];
+		private int    frames       = 0;
+
+		Recording(File file, Recording previous) throws IOException {
+			super(file, "Video recorder", BUFFER_SIZE, QUEUE_SIZE, previous);
+			this.tms_start = System.currentTimeMillis();
+		}
+
+		@Override
+		protected void opened() throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC).putLong(tms_start);
+			header.flip();
+			write(header);
+		}
+
+		@Override
+		protected void received(byte[] record) throws IOException {
+			if(frames >= index_tms.length) {
+				index_tms    = Arrays.copyOf(index_tms, frames * 2);
+				index_offset = Arrays.copyOf(index_offset, frames * 2);
+			}
+			index_tms[frames] = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN).getLong(0);
+			index_offset[frames] = getPosition();
+			frames++;
+			write(ByteBuffer.wrap(record));
+		}
+
+		@Override
+		protected void finish() throws IOException {
+			long index_position = getPosition();
+			ByteBuffer entry = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+			for(int i = 0; i < frames; i++) {
+				entry.clear(); entry.putLong(index_tms[i]).putLong(index_offset[i]); entry.flip();
+				write(entry);
+			}
+			ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			footer.putInt(frames).putLong(index_position).put(INDEX_MAGIC);
+			footer.flip();
+			write(footer);
+		}
+
+		@Override
+		protected void closed() {
+			System.out.println("Video recording closed: "+frames+" frames, "+getBytesWritten()/1024+" kb"
+					+ (getDropped() > 0 ? ", "+getDropped()+" dropped" : ""));
+		}
+	}
+}
@@ -12,7 +12,7 @@ import java.util.Set;
 
 import me.drton.jmavlib.mavlink.MAVLinkDataType;
 import me.drton.jmavlib.mavlink.MAVLinkField;
-import me.drton.jmavlib.mavlink.MAVLinkMessage;
+import me.drton.jmavlib.mavlink.MAVLinkFrame;
 import me.drton.jmavlib.mavlink.MAVLinkMessageDefinition;
 import me.drton.jmavlib.mavlink.MAVLinkSchema;
 import me.drton.jmavlib.mavlink.MAVLinkStream;
@@ -60,7 +60,7 @@ public class MAVLinkLogReader implements LogReader {
         }
         while (true) {
             long pos = stream.position();
-            MAVLinkMessage msg = stream.read();
+            MAVLinkFrame msg = stream.readFrame();
             if (msg == null) {
                 break;
             }
@@ -77,12 +77,12 @@ public class MAVLinkLogReader implements LogReader {
         return false;
     }
 
-    private String fieldName(MAVLinkMessage msg, MAVLinkField field) {
-        return "M" + msg.systemID + ":" + msg.getMsgName() + "." + field.name;
+    private String fieldName(MAVLinkFrame msg, MAVLinkField field) {
+        return "M" + msg.getSystemID() + ":" + msg.getMsgName() + "." + field.name;
     }
 
-    private void addMessageFormat(MAVLinkMessage msg) {
-        for (MAVLinkField field : msg.definition.fields) {
+    private void addMessageFormat(MAVLinkFrame msg) {
+        for (MAVLinkField field : msg.getDefinition().fields) {
             String type;
             switch (field.type) {
                 case CHAR:
@@ -126,7 +126,7 @@ public class MAVLinkLogReader implements LogReader {
         }
     }
 
-    private Object parseMavlinkParameter(MAVLinkMessage msg) {
+    private Object parseMavlinkParameter(MAVLinkFrame msg) {
         int type = msg.getInt("param_type");
         float value = msg.getFloat("param_value");
         if (type == MAVLinkDataType.FLOAT.id) {
@@ -145,8 +145,8 @@ public class MAVLinkLogReader implements LogReader {
         long timeStart = -1;
         long timeEnd = -1;
         while (true) {
-            MAVLinkMessage msg;
-            msg = stream.read();
+            MAVLinkFrame msg;
+            msg = stream.readFrame();
             if (msg == null) {
                 break;
             }
@@ -163,9 +163,9 @@ public class MAVLinkLogReader implements LogReader {
             }
 
             if (msg.getMsgName().equals("PARAM_VALUE")) {
-                parameters.put("M" + msg.systemID + ":" + msg.getString("param_id"), parseMavlinkParameter(msg));
-            } else if (!skipMsgs.contains(msg.msgID)) {
-                String msgSysID = "M" + msg.systemID + ":" + msg.getMsgName();
+                parameters.put("M" + msg.getSystemID() + ":" + msg.getString("param_id"), parseMavlinkParameter(msg));
+            } else if (!skipMsgs.contains(msg.getMsgType())) {
+                String msgSysID = "M" + msg.getSystemID() + ":" + msg.getMsgName();
                 if (!messagesSysIDs.contains(msgSysID)) {
                     messagesSysIDs.add(msgSysID);
                     addMessageFormat(msg);
@@ -178,26 +178,26 @@ public class MAVLinkLogReader implements LogReader {
         seek(0);
     }
 
-    private long getTime(MAVLinkMessage msg) {
+    private long getTime(MAVLinkFrame msg) {
         MAVLinkField field;
-        field = msg.definition.fieldsByName.get("time_usec");
+        field = msg.getDefinition().fieldsByName.get("time_usec");
         if (field != null) {
-            return ((Number) msg.get(field)).longValue();
+            return msg.getLong(field);
         }
-        field = msg.definition.fieldsByName.get("time_boot_ms");
+        field = msg.getDefinition().fieldsByName.get("time_boot_ms");
         if (field != null) {
-            return ((Number) msg.get(field)).longValue() * 1000;
+            return msg.getLong(field) * 1000;
         }
         return -1;
     }
 
     @Override
     public long readUpdate(Map<String, Object> update) throws IOException, FormatErrorException {
-        MAVLinkMessage msg = stream.read();
+        MAVLinkFrame msg = stream.readFrame();
         if (msg == null) {
             throw new EOFException();
         }
-        for (MAVLinkField field : msg.definition.fields) {
+        for (MAVLinkField field : msg.getDefinition().fields) {
             update.put(fieldName(msg, field), msg.get(field));
             long t = getTime(msg);
             if (t >= 0 && t > time) {
@@ -1,11 +1,23 @@
 package me.drton.jmavlib.mavlink;
 
+import java.nio.ByteBuffer;
+
 /**
  * User: ton Date: 03.06.14 Time: 15:35
  */
 public class MAVLinkCRC {
     public final static int X25_INIT_CRC = 0xffff;
 
+    private final static int[] table = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int tmp = i;
+            tmp ^= (tmp << 4) & 0xff;
+            table[i] = ((tmp << 8) ^ (tmp << 3) ^ (tmp >> 4)) & 0xffff;
+        }
+    }
+
     /**
      * Accumulate the X.25 CRC by adding one char at a time. The checksum function adds the hash of one char at a time
      * to the 16 bit checksum
@@ -15,9 +27,23 @@ public class MAVLinkCRC {
      * @return the new accumulated checksum
      */
     public static int accumulateCRC(byte data, int crc) {
-        int tmp = (data ^ crc) & 0xff;
-        tmp ^= (tmp << 4) & 0xff;
-        return ((crc >> 8) ^ (tmp << 8) ^ (tmp << 3) ^ (tmp >> 4)) & 0xffff;
+        return (crc >> 8) ^ table[(data ^ crc) & 0xff];
+    }
+
+    /**
+     * Accumulate the X.25 CRC over a range of the buffer using the lookup table, buffer position is not changed.
+     *
+     * @param buf  buffer
+     * @param from absolute start index
+     * @param to   absolute end index (exclusive)
+     * @param crc  the already accumulated checksum
+     * @return the new accumulated checksum
+     */
+    public static int accumulateCRC(ByteBuffer buf, int from, int to, int crc) {
+        for (int i = from; i < to; i++) {
+            crc = (crc >> 8) ^ table[(buf.get(i) ^ crc) & 0xff];
+        }
+        return crc;
     }
 
     public static int calculateCRC(byte[] data) {
@@ -0,0 +1,233 @@
+package me.drton.jmavlib.mavlink;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Flyweight view of a received MAVLink frame. The payload is not copied, values are
+ * decoded directly from the receive buffer of the {@link MAVLinkStream}.
+ * The view is only valid until the next call of {@link MAVLinkStream#readFrame()},
+ * use {@link #toMessage()} to keep a copy.
+ */
+public class MAVLinkFrame {
+    private final static Charset charset = Charset.forName("latin1");
+    private final MAVLinkSchema schema;
+    private MAVLinkMessageDefinition definition;
+    private ByteBuffer data;
+    private int payloadOffset;
+    private byte sequence;
+    private int systemID;
+    private int componentID;
+    private int crc;
+    private int protocolVersion;
+
+    MAVLinkFrame(MAVLinkSchema schema) {
+        this.schema = schema;
+    }
+
+    void wrap(MAVLinkMessageDefinition definition, ByteBuffer data, int payloadOffset, byte sequence,
+              int systemID, int componentID, int crc, int protocolVersion) {
+        this.definition = definition;
+        this.data = data;
+        this.payloadOffset = payloadOffset;
+        this.sequence = sequence;
+        this.systemID = systemID;
+        this.componentID = componentID;
+        this.crc = crc;
+        this.protocolVersion = protocolVersion;
+    }
+
+    public MAVLinkMessageDefinition getDefinition() {
+        return definition;
+    }
+
+    public int getMsgType() {
+        return definition.id;
+    }
+
+    public String getMsgName() {
+        return definition.name;
+    }
+
+    public int getSystemID() {
+        return systemID;
+    }
+
+    public int getComponentID() {
+        return componentID;
+    }
+
+    public int getSequence() {
+        return sequence & 0xff;
+    }
+
+    /**
+     * @return 1 for MAVLink 1 frames, 2 for MAVLink 2 frames
+     */
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * Copy the frame into a standalone message.
+     *
+     * @return MAVLink message
+     */
+    public MAVLinkMessage toMessage() {
+        byte[] payload = new byte[definition.extendedPayloadLength];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = data.get(payloadOffset + i);
+        }
+        return new MAVLinkMessage(schema, definition, payload, sequence, systemID, componentID, crc);
+    }
+
+    public Object get(MAVLinkField field) {
+        if (field.isArray()) {
+            if (field.type == MAVLinkDataType.CHAR) {
+                // Char array (string), up to NULL terminating char
+                int offs = payloadOffset + field.offset;
+                int n = 0;
+                while (n < field.arraySize && data.get(offs + n) != 0) {
+                    n++;
+                }
+                byte[] buf = new byte[n];
+                for (int i = 0; i < n; i++) {
+                    buf[i] = data.get(offs + i);
+                }
+                return new String(buf, charset);
+            } else if (field.type == MAVLinkDataType.UINT8) {
+                // Byte array
+                byte[] buf = new byte[field.arraySize];
+                for (int i = 0; i < buf.length; i++) {
+                    buf[i] = data.get(payloadOffset + field.offset + i);
+                }
+                return buf;
+            } else {
+                Object[] res = new Object[field.arraySize];
+                int offs = field.offset;
+                for (int i = 0; i < field.arraySize; i++) {
+                    res[i] = getValue(field.type, offs);
+                    offs += field.type.size;
+                }
+                return res;
+            }
+        } else {
+            return getValue(field.type, field.offset);
+        }
+    }
+
+    public Object get(String fieldName) {
+        return get(definition.fieldsByName.get(fieldName));
+    }
+
+    /**
+     * Get single numeric value without boxing.
+     *
+     * @param field field of a single value type
+     * @return value as double
+     */
+    public double getDouble(MAVLinkField field) {
+        int offs = payloadOffset + field.offset;
+        switch (field.type) {
+            case CHAR:
+            case INT8:
+                return data.get(offs);
+            case UINT8:
+                return data.get(offs) & 0xFF;
+            case UINT16:
+                return data.getShort(offs) & 0xFFFF;
+            case INT16:
+                return data.getShort(offs);
+            case UINT32:
+                return data.getInt(offs) & 0xFFFFFFFFl;
+            case INT32:
+                return data.getInt(offs);
+            case UINT64:
+            case INT64:
+                return data.getLong(offs);
+            case FLOAT:
+                return data.getFloat(offs);
+            case DOUBLE:
+                return data.getDouble(offs);
+            default:
+                throw new RuntimeException("Unknown type: " + field.type);
+        }
+    }
+
+    /**
+     * Get single integer value without boxing.
+     *
+     * @param field field of a single value type
+     * @return value as long
+     */
+    public long getLong(MAVLinkField field) {
+        int offs = payloadOffset + field.offset;
+        switch (field.type) {
+            case UINT64:
+            case INT64:
+                return data.getLong(offs);
+            case FLOAT:
+                return (long) data.getFloat(offs);
+            case DOUBLE:
+                return (long) data.getDouble(offs);
+            default:
+                return (long) getDouble(field);
+        }
+    }
+
+    public int getInt(String fieldName) {
+        return (int) getLong(definition.fieldsByName.get(fieldName));
+    }
+
+    public long getLong(String fieldName) {
+        return getLong(definition.fieldsByName.get(fieldName));
+    }
+
+    public float getFloat(String fieldName) {
+        return (float) getDouble(definition.fieldsByName.get(fieldName));
+    }
+
+    public double getDouble(String fieldName) {
+        return getDouble(definition.fieldsByName.get(fieldName));
+    }
+
+    public String getString(String fieldName) {
+        return (String) get(fieldName);
+    }
+
+    private Object getValue(MAVLinkDataType type, int offset) {
+        int offs = payloadOffset + offset;
+        switch (type) {
+            case CHAR:
+                return data.get(offs);
+            case UINT8:
+                return data.get(offs) & 0xFF;
+            case INT8:
+                return (int) data.get(offs);
+            case UINT16:
+                return data.getShort(offs) & 0xFFFF;
+            case INT16:
+                return (int) data.getShort(offs);
+            case UINT32:
+                return data.getInt(offs) & 0xFFFFFFFFl;
+            case INT32:
+                return data.getInt(offs);
+            case UINT64:
+                return data.getLong(offs);
+            case INT64:
+                return data.getLong(offs);
+            case FLOAT:
+                return data.getFloat(offs);
+            case DOUBLE:
+                return data.getDouble(offs);
+            default:
+                throw new RuntimeException("Unknown type: " + type);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("<MAVLinkFrame v%s %s seq=%s sysID=%s compID=%s ID=%s CRC=%04x/>", protocolVersion,
+                definition.name, sequence & 0xff, systemID, componentID, definition.id, crc);
+    }
+}
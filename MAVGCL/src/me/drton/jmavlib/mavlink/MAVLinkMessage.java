@@ -9,8 +9,12 @@ import java.nio.charset.Charset;
  */
 public class MAVLinkMessage {
     public final static byte START_OF_FRAME = (byte) 0xFE;
+    public final static byte START_OF_FRAME_V2 = (byte) 0xFD;
     public final static int HEADER_LENGTH = 6;
+    public final static int HEADER_LENGTH_V2 = 10;
     public final static int CRC_LENGTH = 2;
+    public final static int SIGNATURE_LENGTH = 13;
+    public final static int INCOMPAT_FLAG_SIGNED = 0x01;
     public final static int NON_PAYLOAD_LENGTH = HEADER_LENGTH + CRC_LENGTH;
     private final MAVLinkSchema schema;
     public final MAVLinkMessageDefinition definition;
@@ -35,7 +39,7 @@ public class MAVLinkMessage {
         if (definition == null) {
             throw new RuntimeException("Unknown mavlink message ID: " + msgID);
         }
-        this.payload = new byte[definition.payloadLength];
+        this.payload = new byte[definition.extendedPayloadLength];
         this.payloadBB = ByteBuffer.wrap(payload);
         payloadBB.order(schema.getByteOrder());
         this.systemID = systemID;
@@ -55,7 +59,7 @@ public class MAVLinkMessage {
         if (definition == null) {
             throw new RuntimeException("Unknown mavlink message name: " + msgName);
         }
-        this.payload = new byte[definition.payloadLength];
+        this.payload = new byte[definition.extendedPayloadLength];
         this.payloadBB = ByteBuffer.wrap(payload);
         payloadBB.order(schema.getByteOrder());
         this.systemID = systemID;
@@ -64,7 +68,25 @@ public class MAVLinkMessage {
     }
 
     /**
-     * Create message from buffer (for parsing)
+     * Create message from already validated frame data (see {@link MAVLinkFrame#toMessage()})
+     */
+    MAVLinkMessage(MAVLinkSchema schema, MAVLinkMessageDefinition definition, byte[] payload, byte sequence,
+                   int systemID, int componentID, int crc) {
+        this.schema = schema;
+        this.definition = definition;
+        this.msgID = definition.id;
+        this.payload = payload;
+        this.payloadBB = ByteBuffer.wrap(payload);
+        payloadBB.order(schema.getByteOrder());
+        this.sequence = sequence;
+        this.systemID = systemID;
+        this.componentID = componentID;
+        this.crc = crc;
+    }
+
+    /**
+     * Create message from buffer (for parsing), MAVLink 1 and MAVLink 2 frames are supported.
+     * Truncated MAVLink 2 payloads are zero-extended, signatures are skipped without verification.
      *
      * @param schema
      */
@@ -75,39 +97,65 @@ public class MAVLinkMessage {
         }
         int startPos = buffer.position();
         byte startSign = buffer.get();
-        if (startSign != START_OF_FRAME) {
+        boolean v2 = startSign == START_OF_FRAME_V2;
+        if (startSign != START_OF_FRAME && !v2) {
             throw new MAVLinkProtocolException(
-                    String.format("Invalid start sign: %02x, should be %02x", startSign, START_OF_FRAME));
+                    String.format("Invalid start sign: %02x, should be %02x or %02x", startSign, START_OF_FRAME,
+                            START_OF_FRAME_V2));
+        }
+        int headerLen = v2 ? HEADER_LENGTH_V2 : HEADER_LENGTH;
+        if (buffer.remaining() < headerLen + CRC_LENGTH - 1) {
+            buffer.position(startPos);
+            throw new BufferUnderflowException();
         }
         int payloadLen = buffer.get() & 0xff;
-        if (buffer.remaining() < payloadLen + NON_PAYLOAD_LENGTH - 2) { // 2 bytes was read already
+        int incompatFlags = 0;
+        if (v2) {
+            incompatFlags = buffer.get() & 0xff;
+            buffer.get();   // Compatible flags can be ignored
+        }
+        int frameLen = headerLen + payloadLen + CRC_LENGTH;
+        if ((incompatFlags & INCOMPAT_FLAG_SIGNED) != 0) {
+            frameLen += SIGNATURE_LENGTH;
+        }
+        if (buffer.remaining() < frameLen - (buffer.position() - startPos)) {
             buffer.position(startPos);
             throw new BufferUnderflowException();
         }
         sequence = buffer.get();
         systemID = buffer.get() & 0xff;
         componentID = buffer.get() & 0xff;
-        msgID = buffer.get() & 0xff;
+        if (v2) {
+            msgID = (buffer.get() & 0xff) | ((buffer.get() & 0xff) << 8) | ((buffer.get() & 0xff) << 16);
+        } else {
+            msgID = buffer.get() & 0xff;
+        }
         this.schema = schema;
         this.definition = schema.getMessageDefinition(msgID);
         if (definition == null) {
             // Unknown message skip it
-            buffer.position(buffer.position() + payloadLen + CRC_LENGTH);
+            buffer.position(startPos + frameLen);
             throw new MAVLinkUnknownMessage(String.format("Unknown message: %s", msgID));
         }
-        if (payloadLen != definition.payloadLength) {
-            buffer.position(buffer.position() + payloadLen + CRC_LENGTH);
+        if ((incompatFlags & ~INCOMPAT_FLAG_SIGNED) != 0) {
+            buffer.position(startPos + frameLen);
+            throw new MAVLinkUnknownMessage(
+                    String.format("Unsupported incompatibility flags for msg %s (%s): %02x", definition.name, msgID,
+                            incompatFlags));
+        }
+        if (v2 ? payloadLen > definition.extendedPayloadLength : payloadLen != definition.payloadLength) {
+            buffer.position(startPos + frameLen);
             throw new MAVLinkUnknownMessage(
                     String.format("Invalid payload len for msg %s (%s): %s, should be %s", definition.name, msgID,
-                            payloadLen, definition.payloadLength));
+                            payloadLen, v2 ? definition.extendedPayloadLength : definition.payloadLength));
         }
-        this.payload = new byte[definition.payloadLength];
-        buffer.get(payload);
-        crc = Short.reverseBytes(buffer.getShort()) & 0xffff;
-        int endPos = buffer.position();
-        buffer.position(startPos);
-        int crcCalc = calculateCRC(buffer);
-        buffer.position(endPos);
+        this.payload = new byte[definition.extendedPayloadLength];
+        buffer.get(payload, 0, payloadLen);
+        crc = (buffer.get() & 0xff) | ((buffer.get() & 0xff) << 8);
+        int crcCalc = MAVLinkCRC.accumulateCRC(buffer, startPos + 1, startPos + headerLen + payloadLen,
+                MAVLinkCRC.X25_INIT_CRC);
+        crcCalc = MAVLinkCRC.accumulateCRC(definition.extraCRC, crcCalc);
+        buffer.position(startPos + frameLen);
         if (crc != crcCalc) {
             throw new MAVLinkUnknownMessage(
                     String.format("CRC error for msg %s (%s): %02x, should be %02x", definition.name, msgID, crc,
@@ -117,9 +165,18 @@ public class MAVLinkMessage {
         payloadBB.order(schema.getByteOrder());
     }
 
+    /**
+     * Encode message as MAVLink 1 frame.
+     *
+     * @param sequence
+     * @return buffer with the frame
+     */
     public ByteBuffer encode(byte sequence) {
+        if (msgID > 255) {
+            throw new RuntimeException("Message ID not supported by MAVLink 1: " + msgID);
+        }
         this.sequence = sequence;
-        ByteBuffer buf = ByteBuffer.allocate(payload.length + NON_PAYLOAD_LENGTH);
+        ByteBuffer buf = ByteBuffer.allocate(definition.payloadLength + NON_PAYLOAD_LENGTH);
         buf.order(schema.getByteOrder());
         buf.put(START_OF_FRAME);
         buf.put((byte) definition.payloadLength);
@@ -127,30 +184,45 @@ public class MAVLinkMessage {
         buf.put((byte) systemID);
         buf.put((byte) componentID);
         buf.put((byte) msgID);
-        buf.put(payload);
-        buf.flip();
-        crc = calculateCRC(buf);
-        buf.limit(buf.capacity());
-        buf.put((byte) crc);
-        buf.put((byte) (crc >> 8));
-        buf.flip();
-        return buf;
+        buf.put(payload, 0, definition.payloadLength);
+        return appendCRC(buf);
     }
 
     /**
-     * Calculate CRC of the message, buffer position should be set to start of the message.
+     * Encode message as unsigned MAVLink 2 frame, trailing zero bytes of the payload are truncated.
      *
-     * @param buf
-     * @return CRC
+     * @param sequence
+     * @return buffer with the frame
      */
-    private int calculateCRC(ByteBuffer buf) {
-        buf.get();  // Skip start sign
-        int c = 0xFFFF;
-        for (int i = 0; i < definition.payloadLength + HEADER_LENGTH - 1; i++) {
-            c = MAVLinkCRC.accumulateCRC(buf.get(), c);
+    public ByteBuffer encodeV2(byte sequence) {
+        this.sequence = sequence;
+        int len = definition.extendedPayloadLength;
+        while (len > 1 && payload[len - 1] == 0) {
+            len--;
         }
-        c = MAVLinkCRC.accumulateCRC(definition.extraCRC, c);
-        return c;
+        ByteBuffer buf = ByteBuffer.allocate(len + HEADER_LENGTH_V2 + CRC_LENGTH);
+        buf.order(schema.getByteOrder());
+        buf.put(START_OF_FRAME_V2);
+        buf.put((byte) len);
+        buf.put((byte) 0);  // Incompatibility flags
+        buf.put((byte) 0);  // Compatibility flags
+        buf.put(sequence);
+        buf.put((byte) systemID);
+        buf.put((byte) componentID);
+        buf.put((byte) msgID);
+        buf.put((byte) (msgID >> 8));
+        buf.put((byte) (msgID >> 16));
+        buf.put(payload, 0, len);
+        return appendCRC(buf);
+    }
+
+    private ByteBuffer appendCRC(ByteBuffer buf) {
+        crc = MAVLinkCRC.accumulateCRC(buf, 1, buf.position(), MAVLinkCRC.X25_INIT_CRC);
+        crc = MAVLinkCRC.accumulateCRC(definition.extraCRC, crc);
+        buf.put((byte) crc);
+        buf.put((byte) (crc >> 8));
+        buf.flip();
+        return buf;
     }
 
     public int getMsgType() {
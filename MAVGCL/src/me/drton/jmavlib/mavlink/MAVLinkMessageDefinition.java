@@ -13,26 +13,52 @@ public class MAVLinkMessageDefinition {
     public final byte extraCRC;
     public final Map<String, MAVLinkField> fieldsByName;
     public final MAVLinkField[] fields;
+    /**
+     * Length of the payload without extension fields (MAVLink 1 wire length)
+     */
     public final int payloadLength;
+    /**
+     * Length of the payload including extension fields (maximum MAVLink 2 wire length)
+     */
+    public final int extendedPayloadLength;
+    private final int baseFieldsCount;
 
     public MAVLinkMessageDefinition(int id, String name, MAVLinkField[] fields) {
+        this(id, name, fields, fields.length);
+    }
+
+    /**
+     * Message definition with MAVLink 2 extension fields.
+     *
+     * @param fields          all fields, extension fields at the end in declaration order
+     * @param baseFieldsCount number of fields before the extension fields
+     */
+    public MAVLinkMessageDefinition(int id, String name, MAVLinkField[] fields, int baseFieldsCount) {
         this.id = id;
         this.name = name;
         this.fields = fields;
+        this.baseFieldsCount = baseFieldsCount;
         this.fieldsByName = new HashMap<String, MAVLinkField>(fields.length);
         int len = 0;
-        for (MAVLinkField field : fields) {
+        int baseLen = 0;
+        for (int i = 0; i < fields.length; i++) {
+            MAVLinkField field = fields[i];
             fieldsByName.put(field.name, field);
             field.offset = len;
             len += field.size;
+            if (i < baseFieldsCount) {
+                baseLen = len;
+            }
         }
-        this.payloadLength = len;
+        this.payloadLength = baseLen;
+        this.extendedPayloadLength = len;
         this.extraCRC = calculateExtraCRC();
     }
 
     private byte calculateExtraCRC() {
         String extraCRCStr = name + " ";
-        for (MAVLinkField field : fields) {
+        for (int i = 0; i < baseFieldsCount; i++) {
+            MAVLinkField field = fields[i];
             extraCRCStr += field.type.ctype + " " + field.name + " ";
             if (field.isArray()) {
                 extraCRCStr += (char) field.arraySize;
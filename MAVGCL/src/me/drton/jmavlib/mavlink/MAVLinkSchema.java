@@ -3,9 +3,11 @@ package me.drton.jmavlib.mavlink;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteOrder;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -22,7 +24,10 @@ import org.xml.sax.SAXException;
  */
 public class MAVLinkSchema {
     private ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+    public final static int MAX_MESSAGE_ID = 0xFFFFFF;
     private final MAVLinkMessageDefinition[] definitions = new MAVLinkMessageDefinition[256];
+    private final Map<Integer, MAVLinkMessageDefinition> definitionsExt
+            = new HashMap<Integer, MAVLinkMessageDefinition>();
     private final Map<String, MAVLinkMessageDefinition> definitionsByName
             = new HashMap<String, MAVLinkMessageDefinition>();
     private DocumentBuilder xmlBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
@@ -57,20 +62,32 @@ public class MAVLinkSchema {
             Element msg = (Element) msgElems.item(i);
             int msgID = Integer.parseInt(msg.getAttribute("id"));
             String msgName = msg.getAttribute("name");
-            NodeList fieldsElems = msg.getElementsByTagName("field");
-            MAVLinkField[] fields = new MAVLinkField[fieldsElems.getLength()];
-            for (int j = 0; j < fieldsElems.getLength(); j++) {
-                Element fieldElem = (Element) fieldsElems.item(j);
+            // Fields after <extensions/> are MAVLink 2 extensions, they are not reordered
+            List<MAVLinkField> baseFields = new ArrayList<MAVLinkField>();
+            List<MAVLinkField> extFields = new ArrayList<MAVLinkField>();
+            List<MAVLinkField> target = baseFields;
+            NodeList children = msg.getChildNodes();
+            for (int j = 0; j < children.getLength(); j++) {
+                if (!(children.item(j) instanceof Element)) {
+                    continue;
+                }
+                Element fieldElem = (Element) children.item(j);
+                if (fieldElem.getNodeName().equals("extensions")) {
+                    target = extFields;
+                    continue;
+                }
+                if (!fieldElem.getNodeName().equals("field")) {
+                    continue;
+                }
                 String[] typeStr = fieldElem.getAttribute("type").split("\\[");
                 MAVLinkDataType fieldType = MAVLinkDataType.fromCType(typeStr[0]);
                 int arraySize = -1;
                 if (typeStr.length > 1) {
                     arraySize = Integer.parseInt(typeStr[1].split("\\]")[0]);
                 }
-                MAVLinkField field = new MAVLinkField(fieldType, arraySize, fieldElem.getAttribute("name"));
-                fields[j] = field;
+                target.add(new MAVLinkField(fieldType, arraySize, fieldElem.getAttribute("name")));
             }
-            Arrays.sort(fields, new Comparator<MAVLinkField>() {
+            Collections.sort(baseFields, new Comparator<MAVLinkField>() {
                 @Override
                 public int compare(MAVLinkField field2, MAVLinkField field1) {
                     // Sort on type size
@@ -82,14 +99,25 @@ public class MAVLinkSchema {
                     return 0;
                 }
             });
-            if (msgID >= 0 && msgID < 256) {
-                addMessageDefinition(new MAVLinkMessageDefinition(msgID, msgName, fields));
+            MAVLinkField[] fields = new MAVLinkField[baseFields.size() + extFields.size()];
+            for (int j = 0; j < baseFields.size(); j++) {
+                fields[j] = baseFields.get(j);
+            }
+            for (int j = 0; j < extFields.size(); j++) {
+                fields[baseFields.size() + j] = extFields.get(j);
+            }
+            if (msgID >= 0 && msgID <= MAX_MESSAGE_ID) {
+                addMessageDefinition(new MAVLinkMessageDefinition(msgID, msgName, fields, baseFields.size()));
             }
         }
     }
 
     public MAVLinkMessageDefinition getMessageDefinition(int msgID) {
-        return definitions[msgID];
+        if (msgID >= 0 && msgID < definitions.length) {
+            return definitions[msgID];
+        }
+        // MAVLink 2 message IDs above 255
+        return definitionsExt.get(msgID);
     }
 
     public MAVLinkMessageDefinition getMessageDefinition(String msgName) {
@@ -101,7 +129,11 @@ public class MAVLinkSchema {
     }
 
     public void addMessageDefinition(MAVLinkMessageDefinition definition) {
-        definitions[definition.id] = definition;
+        if (definition.id < definitions.length) {
+            definitions[definition.id] = definition;
+        } else {
+            definitionsExt.put(definition.id, definition);
+        }
         definitionsByName.put(definition.name, definition);
     }
 }
@@ -1,7 +1,6 @@
 package me.drton.jmavlib.mavlink;
 
 import java.io.IOException;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.FileChannel;
@@ -10,22 +9,45 @@ import java.nio.channels.FileChannel;
  * User: ton Date: 03.06.14 Time: 12:31
  */
 public class MAVLinkStream {
+    private final static int FRAME_OK = 0;
+    private final static int FRAME_INCOMPLETE = 1;
+    private final static int FRAME_SKIPPED = 2;
     private final MAVLinkSchema schema;
     private final ByteChannel channel;
+    private final MAVLinkFrame frame;
     private byte txSeq = 0;
     private ByteBuffer buffer = ByteBuffer.allocate(8192);
     private boolean debug = false;
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private int txVersion = 1;
+    private long framesReceived = 0;
+    private long framesV2Received = 0;
+    private long crcErrors = 0;
+    private long unknownMessages = 0;
+    private long bytesSkipped = 0;
 
     public MAVLinkStream(MAVLinkSchema schema, ByteChannel channel) {
         this.schema = schema;
         this.channel = channel;
+        this.frame = new MAVLinkFrame(schema);
+        buffer.order(schema.getByteOrder());
         buffer.flip();
+        scratch.order(schema.getByteOrder());
     }
 
     public void setDebug(boolean debug) {
         this.debug = debug;
     }
 
+    /**
+     * Set protocol version used for writing messages.
+     *
+     * @param version 1 or 2
+     */
+    public void setProtocolVersion(int version) {
+        this.txVersion = version;
+    }
+
     /**
      * Write message.
      *
@@ -33,7 +55,11 @@ public class MAVLinkStream {
      * @throws IOException on IO error
      */
     public void write(MAVLinkMessage msg) throws IOException {
-        channel.write(msg.encode(txSeq++));
+        if (txVersion == 2) {
+            channel.write(msg.encodeV2(txSeq++));
+        } else {
+            channel.write(msg.encode(txSeq++));
+        }
     }
 
     /**
@@ -43,36 +69,180 @@ public class MAVLinkStream {
      * @throws java.io.IOException on IO error
      */
     public MAVLinkMessage read() throws IOException {
+        MAVLinkFrame f = readFrame();
+        return f != null ? f.toMessage() : null;
+    }
+
+    /**
+     * Read next valid frame without copying its payload.
+     *
+     * @return flyweight frame view, valid until the next call, or null if no more frames available at the moment
+     * @throws java.io.IOException on IO error
+     */
+    public MAVLinkFrame readFrame() throws IOException {
         while (true) {
-            try {
-                return new MAVLinkMessage(schema, buffer);
-            } catch (MAVLinkProtocolException e) {
-                // Message is corrupted, try to sync on the next byte
-                if (debug) {
-                    System.err.println(String.format("%s: %s", channel, e));
-                }
-            } catch (MAVLinkUnknownMessage e) {
-                // Message looks ok but with another protocol, skip it
-                if (debug) {
-                    System.err.println(String.format("%s: %s", channel, e));
-                }
-            } catch (BufferUnderflowException e) {
-                // Try to refill buffer
-                buffer.compact();
-                int n = 0;
-                try {
-                    n = channel.read(buffer);
-                } catch (IOException ioe) {
-                    // In case of exception don't forget to flip the buffer
-                    buffer.flip();
-                    throw ioe;
-                }
-                buffer.flip();
-                if (n <= 0) {
-                    return null;
-                }
+            switch (parseFrame()) {
+                case FRAME_OK:
+                    framesReceived++;
+                    return frame;
+                case FRAME_INCOMPLETE:
+                    if (!refill()) {
+                        return null;
+                    }
+                    break;
+                default:
+                    // Frame skipped, continue with next one
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Try to parse a frame at the current buffer position. Invalid data is skipped.
+     *
+     * @return FRAME_OK, FRAME_INCOMPLETE or FRAME_SKIPPED
+     */
+    private int parseFrame() {
+        int start = buffer.position();
+        int remaining = buffer.remaining();
+        if (remaining < MAVLinkMessage.NON_PAYLOAD_LENGTH) {
+            return FRAME_INCOMPLETE;
+        }
+        byte startSign = buffer.get(start);
+        if (!isStartSign(startSign)) {
+            // Not synchronized, search the next start sign
+            int pos = start + 1;
+            int limit = buffer.limit();
+            while (pos < limit && !isStartSign(buffer.get(pos))) {
+                pos++;
+            }
+            bytesSkipped += pos - start;
+            buffer.position(pos);
+            return FRAME_SKIPPED;
+        }
+        boolean v2 = startSign == MAVLinkMessage.START_OF_FRAME_V2;
+        int headerLen = v2 ? MAVLinkMessage.HEADER_LENGTH_V2 : MAVLinkMessage.HEADER_LENGTH;
+        if (remaining < headerLen + MAVLinkMessage.CRC_LENGTH) {
+            return FRAME_INCOMPLETE;
+        }
+        int payloadLen = buffer.get(start + 1) & 0xff;
+        int incompatFlags = v2 ? buffer.get(start + 2) & 0xff : 0;
+        int frameLen = headerLen + payloadLen + MAVLinkMessage.CRC_LENGTH;
+        if ((incompatFlags & MAVLinkMessage.INCOMPAT_FLAG_SIGNED) != 0) {
+            // Signature is skipped, not verified
+            frameLen += MAVLinkMessage.SIGNATURE_LENGTH;
+        }
+        if (remaining < frameLen) {
+            return FRAME_INCOMPLETE;
+        }
+        int msgID;
+        int seqPos;
+        if (v2) {
+            msgID = (buffer.get(start + 7) & 0xff) | ((buffer.get(start + 8) & 0xff) << 8)
+                    | ((buffer.get(start + 9) & 0xff) << 16);
+            seqPos = start + 4;
+        } else {
+            msgID = buffer.get(start + 5) & 0xff;
+            seqPos = start + 2;
+        }
+        MAVLinkMessageDefinition definition = schema.getMessageDefinition(msgID);
+        if (definition == null || (incompatFlags & ~MAVLinkMessage.INCOMPAT_FLAG_SIGNED) != 0
+                || (v2 ? payloadLen > definition.extendedPayloadLength : payloadLen != definition.payloadLength)) {
+            unknownMessages++;
+            if (debug) {
+                System.err.println(String.format("%s: Unknown message or invalid length: %s (%s)",
+                        channel, msgID, payloadLen));
             }
+            // Unknown message or false start sign, CRC can't be checked, so try to sync on the next byte
+            bytesSkipped++;
+            buffer.position(start + 1);
+            return FRAME_SKIPPED;
         }
+        int payloadStart = start + headerLen;
+        int crcPos = payloadStart + payloadLen;
+        int crcCalc = MAVLinkCRC.accumulateCRC(buffer, start + 1, crcPos, MAVLinkCRC.X25_INIT_CRC);
+        crcCalc = MAVLinkCRC.accumulateCRC(definition.extraCRC, crcCalc);
+        int crc = (buffer.get(crcPos) & 0xff) | ((buffer.get(crcPos + 1) & 0xff) << 8);
+        if (crc != crcCalc) {
+            // Message is corrupted, try to sync on the next byte
+            crcErrors++;
+            if (debug) {
+                System.err.println(String.format("%s: CRC error for msg %s (%s): %02x, should be %02x",
+                        channel, definition.name, msgID, crc, crcCalc));
+            }
+            bytesSkipped++;
+            buffer.position(start + 1);
+            return FRAME_SKIPPED;
+        }
+        if (payloadLen < definition.extendedPayloadLength) {
+            // Truncated payload or missing extension fields, zero-extend in scratch buffer
+            if (scratch.capacity() < definition.extendedPayloadLength) {
+                scratch = ByteBuffer.allocate(definition.extendedPayloadLength);
+                scratch.order(schema.getByteOrder());
+            }
+            for (int i = 0; i < payloadLen; i++) {
+                scratch.put(i, buffer.get(payloadStart + i));
+            }
+            for (int i = payloadLen; i < definition.extendedPayloadLength; i++) {
+                scratch.put(i, (byte) 0);
+            }
+            frame.wrap(definition, scratch, 0, buffer.get(seqPos),
+                    buffer.get(seqPos + 1) & 0xff, buffer.get(seqPos + 2) & 0xff, crc, v2 ? 2 : 1);
+        } else {
+            frame.wrap(definition, buffer, payloadStart, buffer.get(seqPos),
+                    buffer.get(seqPos + 1) & 0xff, buffer.get(seqPos + 2) & 0xff, crc, v2 ? 2 : 1);
+        }
+        if (v2) {
+            framesV2Received++;
+        }
+        buffer.position(start + frameLen);
+        return FRAME_OK;
+    }
+
+    private static boolean isStartSign(byte b) {
+        return b == MAVLinkMessage.START_OF_FRAME || b == MAVLinkMessage.START_OF_FRAME_V2;
+    }
+
+    private boolean refill() throws IOException {
+        buffer.compact();
+        int n = 0;
+        try {
+            n = channel.read(buffer);
+        } catch (IOException ioe) {
+            // In case of exception don't forget to flip the buffer
+            buffer.flip();
+            throw ioe;
+        }
+        buffer.flip();
+        return n > 0;
+    }
+
+    public long getFramesReceived() {
+        return framesReceived;
+    }
+
+    public long getFramesV2Received() {
+        return framesV2Received;
+    }
+
+    public long getCRCErrors() {
+        return crcErrors;
+    }
+
+    public long getUnknownMessages() {
+        return unknownMessages;
+    }
+
+    public long getBytesSkipped() {
+        return bytesSkipped;
+    }
+
+    public void resetCounters() {
+        framesReceived = 0;
+        framesV2Received = 0;
+        crcErrors = 0;
+        unknownMessages = 0;
+        bytesSkipped = 0;
     }
 
     public long position() throws IOException {
@@ -0,0 +1,87 @@
+package me.drton.jmavlib.mavlink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * Throughput benchmark of the MAVLink parsers over recorded MAVLink 1/2 captures (e.g. tlogs).
+ * Usage: MAVLinkStreamBenchmark <schema.xml> <capture> [<capture> ...]
+ */
+public class MAVLinkStreamBenchmark {
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: MAVLinkStreamBenchmark <schema.xml> <capture> [<capture> ...]");
+            return;
+        }
+        MAVLinkSchema schema = new MAVLinkSchema(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            File file = new File(args[i]);
+            System.out.println(String.format("%s (%d kb)", file.getName(), file.length() / 1024));
+            // First run is warm up
+            for (int r = 0; r <= RUNS; r++) {
+                long t0 = System.nanoTime();
+                MAVLinkStream stream = readFrames(schema, file);
+                long t1 = System.nanoTime();
+                int messages = readMessages(schema, file);
+                long t2 = System.nanoTime();
+                int legacy = readLegacy(schema, file);
+                long t3 = System.nanoTime();
+                if (r == RUNS) {
+                    System.out.println(String.format("  frames: %d (v2: %d), crc errors: %d, unknown: %d, skipped: %d bytes",
+                            stream.getFramesReceived(), stream.getFramesV2Received(), stream.getCRCErrors(),
+                            stream.getUnknownMessages(), stream.getBytesSkipped()));
+                    print("readFrame()", file.length(), stream.getFramesReceived(), t1 - t0);
+                    print("read()", file.length(), messages, t2 - t1);
+                    print("MAVLinkMessage(buffer)", file.length(), legacy, t3 - t2);
+                }
+            }
+        }
+    }
+
+    private static MAVLinkStream readFrames(MAVLinkSchema schema, File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MAVLinkStream stream = new MAVLinkStream(schema, raf.getChannel());
+        while (stream.readFrame() != null) {
+        }
+        raf.close();
+        return stream;
+    }
+
+    private static int readMessages(MAVLinkSchema schema, File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MAVLinkStream stream = new MAVLinkStream(schema, raf.getChannel());
+        int n = 0;
+        while (stream.read() != null) {
+            n++;
+        }
+        raf.close();
+        return n;
+    }
+
+    private static int readLegacy(MAVLinkSchema schema, File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        int n = 0;
+        while (buffer.hasRemaining()) {
+            try {
+                new MAVLinkMessage(schema, buffer);
+                n++;
+            } catch (MAVLinkProtocolException e) {
+            } catch (MAVLinkUnknownMessage e) {
+            } catch (BufferUnderflowException e) {
+                break;
+            }
+        }
+        return n;
+    }
+
+    private static void print(String name, long bytes, long frames, long ns) {
+        System.out.println(String.format("  %-24s %8.1f MB/s %10.0f frames/s", name,
+                bytes / 1.048576 / (ns / 1e3), frames / (ns / 1e9)));
+    }
+}
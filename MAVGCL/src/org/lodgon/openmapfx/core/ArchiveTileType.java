@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2014, 2015, OpenMapFX and LodgON
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of LodgON, OpenMapFX, any associated website, nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL LODGON BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.lodgon.openmapfx.core;
+
+import javafx.concurrent.Worker;
+import javafx.scene.image.Image;
+
+/** Tile type serving tiles from a {@link TileArchive} without network access.
+ * Tiles missing in the archive are requested from the fallback type if one is given,
+ * otherwise they fail and the covering tile of a lower zoom level is shown.
+ */
+public class ArchiveTileType extends TileType {
+
+    private final TileArchive archive;
+    private final TileType fallback;
+
+    private final TileLoader loader = TileLoader.getInstance();
+
+    public ArchiveTileType(String typeName, TileArchive archive, String attributionNotice) {
+        this(typeName, archive, null, attributionNotice);
+    }
+
+    public ArchiveTileType(String typeName, TileArchive archive, TileType fallback, String attributionNotice) {
+        super(typeName, null, attributionNotice);
+        this.archive = archive;
+        this.fallback = fallback;
+    }
+
+    public TileArchive getArchive() {
+        return archive;
+    }
+
+    @Override
+    public Worker<Image> getImage(int zoom, long i, long j) {
+        if (fallback != null && !archive.contains(zoom, i, j)) {
+            return fallback.getImage(zoom, i, j);
+        }
+        return loader.load(calculateURL(zoom, i, j), () -> archive.getImage(zoom, i, j));
+    }
+
+    @Override
+    public void prefetchImage(int zoom, long i, long j) {
+        if (archive.contains(zoom, i, j)) {
+            loader.prefetch(calculateURL(zoom, i, j), () -> archive.getImage(zoom, i, j));
+        } else if (fallback != null) {
+            fallback.prefetchImage(zoom, i, j);
+        }
+    }
+
+    @Override
+    public void cancelImage(int zoom, long i, long j) {
+        if (fallback != null && !archive.contains(zoom, i, j)) {
+            fallback.cancelImage(zoom, i, j);
+        } else {
+            loader.cancel(calculateURL(zoom, i, j));
+        }
+    }
+
+    @Override
+    public void setFileStorageBase(String store) {
+        if (fallback != null) {
+            fallback.setFileStorageBase(store);
+        }
+    }
+
+    @Override
+    protected String calculateURL(int zoom, long i, long j) {
+        return "archive:" + archive.getFile().getPath() + "/" + zoom + "/" + i + "/" + j;
+    }
+}
@@ -29,10 +29,10 @@ package org.lodgon.openmapfx.core;
 import static java.lang.Math.ceil;
 import static java.lang.Math.floor;
 
-import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -44,9 +44,10 @@ import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.ObservableList;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import javafx.scene.Node;
-import javafx.scene.Parent;
 import javafx.scene.layout.Pane;
 import javafx.scene.shape.Rectangle;
 
@@ -66,7 +67,30 @@ public class MapArea extends Pane implements BaseMap {
      * The maximum zoom level this map supports.
      */
     public static final int MAX_ZOOM = 20;
-    private final Map<Long, SoftReference<MapTile>>[] tiles = new HashMap[MAX_ZOOM];
+    /**
+     * Maximum number of unused tile nodes kept for reuse.
+     */
+    private static final int POOL_SIZE = 128;
+
+    /**
+     * Tiles within this distance (pixels) outside the scene are kept in the scene
+     * graph to avoid recreating them while panning.
+     */
+    private static final double MARGIN = 256;
+
+    /**
+     * A failed tile is requested again after this delay, doubled with each
+     * further failure up to MAX_RETRY_MS.
+     */
+    private static final long RETRY_MS = 2000;
+    private static final long MAX_RETRY_MS = 60000;
+    private static final int MAX_FAILURES = 1024;
+
+    // tiles in the scene graph, per zoom level
+    private final Map<Long, MapTile>[] tiles = new HashMap[MAX_ZOOM];
+    private final Deque<MapTile> pool = new ArrayDeque<>();
+    // failed tiles per zoom level and key: number of retries and time of the next retry
+    private final Map<Long, long[]> failures = new HashMap<>();
 
     private int nearestZoom;
 
@@ -314,33 +338,48 @@ public class MapArea extends Pane implements BaseMap {
             for (long j = jmin; j < jmax; j++) {
                 Long key = i * i_max + j;
                 // LongTuple it = new LongTuple(i,j);
-                SoftReference<MapTile> ref = tiles[nearestZoom].get(key);
-                if ((ref == null) || (ref.get() == null)) {
-                    if (ref != null) {
-                        System.out.println("RECLAIMED: z=" + nearestZoom + ",i=" + i + ",j=" + j);
-                    }
-                    MapTile tile = new MapTile(this, nearestZoom, i, j);
-                    tiles[nearestZoom].put(key, new SoftReference<>(tile));
-                    MapTile covering = tile.getCoveringTile();
-                    if (covering != null) {
-                        if (!getChildren().contains(covering)) {
-                            getChildren().add(covering);
-                        }
-                    }
-
+                MapTile tile = tiles[nearestZoom].get(key);
+                if (tile == null) {
+                    tile = obtainTile(nearestZoom, i, j);
+                    tiles[nearestZoom].put(key, tile);
                     getChildren().add(tile);
-                } else {
-                    MapTile tile = ref.get();
-                    if (!getChildren().contains(tile)) {
-                        getChildren().add(tile);
+                } else if (tile.failed()) {
+                    if (retryDue(nearestZoom, key)) {
+                        if (debug) {
+                            System.out.println("RELOAD: z=" + nearestZoom + ",i=" + i + ",j=" + j);
+                        }
+                        tile.release();
+                        tile.assign(nearestZoom, i, j);
                     }
+                } else if (!failures.isEmpty() && !tile.loading()) {
+                    failures.remove(failureKey(nearestZoom, key));
                 }
             }
         }
+        prefetchTiles(imin, imax, jmin, jmax, i_max, j_max);
         calculateCenterCoords();
         cleanupTiles();
     }
 
+    /**
+     * Prefetch the ring of tiles around the visible range into the image cache
+     */
+    private void prefetchTiles(long imin, long imax, long jmin, long jmax, long i_max, long j_max) {
+        MapTileType type = tileType.get();
+        if (type == null) {
+            return;
+        }
+        for (long i = imin - 1; i <= imax; i++) {
+            for (long j = jmin - 1; j <= jmax; j++) {
+                boolean ring = i == imin - 1 || i == imax || j == jmin - 1 || j == jmax;
+                if (ring && i >= 0 && j >= 0 && i < i_max && j < j_max
+                        && findTile(nearestZoom, i, j) == null) {
+                    type.prefetchImage(nearestZoom, i, j);
+                }
+            }
+        }
+    }
+
     /**
      * Find the "nearest" lower-zoom tile that covers a specific tile. This is
      * used to find out what tile we have to show while a new tile is still
@@ -357,7 +396,7 @@ public class MapArea extends Pane implements BaseMap {
             i = i / 2;
             j = j / 2;
             MapTile candidate = findTile(zoom, i, j);
-            if ((candidate != null) && (!candidate.loading())) {
+            if ((candidate != null) && (!candidate.loading()) && (!candidate.failed())) {
                 return candidate;
             }
         }
@@ -374,8 +413,39 @@ public class MapArea extends Pane implements BaseMap {
      */
     private MapTile findTile(int zoom, long i, long j) {
         Long key = i * (1 << zoom) + j;
-        SoftReference<MapTile> exists = tiles[zoom].get(key);
-        return (exists == null) ? null : exists.get();
+        return tiles[zoom].get(key);
+    }
+
+    /**
+     * Return a tile node from the pool or create a new one. A tile that failed
+     * before is not requested again until its retry is due.
+     */
+    private MapTile obtainTile(int zoom, long i, long j) {
+        MapTile tile = pool.poll();
+        if (tile == null) {
+            tile = new MapTile(this);
+        }
+        long key = i * (1 << zoom) + j;
+        if (failures.containsKey(failureKey(zoom, key)) && !retryDue(zoom, key)) {
+            tile.assignFailed(zoom, i, j);
+        } else {
+            tile.assign(zoom, i, j);
+        }
+        return tile;
+    }
+
+    /**
+     * Remove tiles from the scene graph and return their nodes to the pool
+     */
+    private void recycleTiles(List<MapTile> toRemove) {
+        getChildren().removeAll(toRemove);
+        for (MapTile tile : toRemove) {
+            tiles[tile.getZoomLevel()].remove(tile.getKey());
+            tile.release();
+            if (pool.size() < POOL_SIZE) {
+                pool.push(tile);
+            }
+        }
     }
 
     private void cleanupTiles() {
@@ -383,23 +453,21 @@ public class MapArea extends Pane implements BaseMap {
             System.out.println("START CLEANUP");
         }
         double zp = zoomProperty.get();
-        List<MapTile> toRemove = new LinkedList<>();
-        Parent parent = this.getParent();
+        List<MapTile> toRemove = new ArrayList<>();
+        Bounds b = area.getBoundsInParent();
+        Bounds near = new BoundingBox(b.getMinX() - MARGIN, b.getMinY() - MARGIN,
+                b.getWidth() + 2 * MARGIN, b.getHeight() + 2 * MARGIN);
         ObservableList<Node> children = this.getChildren();
         for (Node child : children) {
             if (child instanceof MapTile) {
                 MapTile tile = (MapTile) child;
-                boolean intersects = tile.getBoundsInParent().intersects(area.getBoundsInParent());
+                boolean intersects = tile.getBoundsInParent().intersects(near);
                 if (debug) {
                     System.out.println("evaluate tile " + tile + ", is = " + intersects + ", tzoom = " + tile.getZoomLevel());
                 }
                 if (!intersects) {
                     if (debug) System.out.println("not shown");
-                    boolean loading = tile.loading();
-                    //    System.out.println("Reap "+tile+" loading? "+loading);
-                    if (!loading) {
-                        toRemove.add(tile);
-                    }
+                    toRemove.add(tile);
                 } else if (tile.getZoomLevel() > ceil(zp)) {
                     if (debug) System.out.println("too detailed");
                     toRemove.add(tile);
@@ -410,13 +478,35 @@ public class MapArea extends Pane implements BaseMap {
             }
         }
 
-        getChildren().removeAll(toRemove);
+        recycleTiles(toRemove);
 
         if (debug) {
             System.out.println("DONE CLEANUP");
         }
     }
 
+    private boolean retryDue(int zoom, long key) {
+        long now = System.currentTimeMillis();
+        long[] failure = failures.get(failureKey(zoom, key));
+        if (failure == null) {
+            // forget tiles that are due anyway but no longer shown
+            if (failures.size() >= MAX_FAILURES) {
+                failures.values().removeIf(f -> f[1] < now);
+            }
+            failures.put(failureKey(zoom, key), new long[]{0, now + RETRY_MS});
+            return false;
+        }
+        if (now < failure[1]) {
+            return false;
+        }
+        failure[0]++;
+        failure[1] = now + Math.min(MAX_RETRY_MS, RETRY_MS << Math.min(failure[0], 5));
+        return true;
+    }
+
+    private static long failureKey(int zoom, long key) {
+        return (long) zoom << 58 | key;
+    }
 
     /** Reload all tiles on a change in provider. There could be a more
      * efficient way?
@@ -433,14 +523,16 @@ public class MapArea extends Pane implements BaseMap {
 
     private void clearTiles() {
 
-        List<Node> toRemove = new ArrayList<>();
+        failures.clear();
+
+        List<MapTile> toRemove = new ArrayList<>();
         ObservableList<Node> children = this.getChildren();
         for (Node child : children) {
             if (child instanceof MapTile) {
-                toRemove.add(child);
+                toRemove.add((MapTile) child);
             }
         }
-        getChildren().removeAll(children);
+        recycleTiles(toRemove);
 
         for (int i = 0; i < tiles.length; i++) {
             tiles[i].clear();
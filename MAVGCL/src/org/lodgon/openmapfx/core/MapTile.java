@@ -33,9 +33,9 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javafx.beans.InvalidationListener;
-import javafx.beans.WeakInvalidationListener;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.value.ChangeListener;
 import javafx.concurrent.Worker;
 import javafx.scene.control.Label;
 import javafx.scene.image.Image;
@@ -54,8 +54,8 @@ public class MapTile extends Region {
     //static final String TILESERVER = "http://tile.openstreetmap.org/";//
     //static final String TILESERVER = "http://otile1.mqcdn.com/tiles/1.0.0/map/";
     private final MapArea mapArea;
-    private final int myZoom;
-    private final long i, j;
+    private int myZoom;
+    private long i, j;
     private final List<MapTile> covering = new LinkedList<>();
 
     private boolean debug = false;
@@ -80,11 +80,14 @@ public class MapTile extends Region {
         temporaryImage = writableImage;
     }
 
+    private final ImageView iv = new ImageView(temporaryImage);
     private final InvalidationListener zl;
     private final InvalidationListener iwpl;
+    private final ChangeListener<Worker.State> iwsl;
     private final BooleanProperty loading = new SimpleBooleanProperty();
-    private final MapTile parentTile;
-    private final Worker<Image> imageWorker;
+    private MapTile parentTile;
+    private Worker<Image> imageWorker;
+    private boolean deferred;
 
     /**
      * Create a specific MapTile for a zoomlevel, x-index and y-index
@@ -96,32 +99,54 @@ public class MapTile extends Region {
      * @param j the y-index (between 0 and 2^zoom)
      */
     public MapTile(final MapArea mapArea, final int zoom, final long i, final long j) {
+        this(mapArea);
+        assign(zoom, i, j);
+    }
+
+    /**
+     * Create an unassigned tile node, which is shown after
+     * {@link #assign(int, long, long)}. Tile nodes are pooled by the MapArea.
+     *
+     * @param mapArea the mapArea that will hold this tile
+     */
+    MapTile(final MapArea mapArea) {
         int ig = createcnt.incrementAndGet();
         if (debug) System.out.println("Create tile #" + ig);
         this.mapArea = mapArea;
-        this.myZoom = zoom;
-        this.i = i;
-        this.j = j;
         scale.setPivotX(0);
         scale.setPivotY(0);
         getTransforms().add(scale);
-        //String url = TILESERVER + zoom + "/" + i + "/" + j + ".png";
-//        InputStream is = mapArea.tileTypeProperty().get().getInputStream(zoom, i, j);// , ig, ig).getBaseURL() + zoom + "/" + i + "/" + j + ".png";
-//        if (debug) {
-//            System.out.println("Creating maptile " + this + " with is = " + is);
-//        }
-
-        ImageView iv = new ImageView(temporaryImage);
-        if (debug) debugLabel.setText("[" + zoom + "-" + i + "-" + j + "]");
         getChildren().addAll(iv, debugLabel);
 
-        imageWorker = mapArea.tileTypeProperty().get().getImage(zoom, i, j);
-        loading.bind(imageWorker.progressProperty().lessThan(1.));
-        imageWorker.stateProperty().addListener((obs, ov, nv) -> {
+        iwsl = (obs, ov, nv) -> {
             if (nv.equals(Worker.State.SUCCEEDED)) {
                 iv.setImage(imageWorker.getValue());
             }
-        });
+        };
+        iwpl = createImageWorkerProgressListener();
+        zl = recalculate();
+    }
+
+    /**
+     * Bind this tile node to a zoomlevel, x-index and y-index and start loading
+     * its image.
+     */
+    void assign(final int zoom, final long i, final long j) {
+        this.myZoom = zoom;
+        this.i = i;
+        this.j = j;
+        this.deferred = false;
+
+        iv.setImage(temporaryImage);
+        if (debug) debugLabel.setText("[" + zoom + "-" + i + "-" + j + "]");
+
+        imageWorker = mapArea.tileTypeProperty().get().getImage(zoom, i, j);
+        loading.bind(imageWorker.progressProperty().lessThan(1.));
+        imageWorker.stateProperty().addListener(iwsl);
+        // images from the memory cache are delivered immediately
+        if (imageWorker.getState() == Worker.State.SUCCEEDED) {
+            iv.setImage(imageWorker.getValue());
+        }
 
         parentTile = mapArea.findCovering(zoom, i, j);
         if (parentTile != null) {
@@ -130,22 +155,62 @@ public class MapTile extends Region {
             parentTile.addCovering(this);
         }
 
-        iwpl = createImageWorkerProgressListener();
-        imageWorker.progressProperty().addListener(new WeakInvalidationListener(iwpl));
+        imageWorker.progressProperty().addListener(iwpl);
         if (imageWorker.getProgress() >= 1) {
             if (debug) System.out.println("[JVDBG] ASK " + parentTile + " to NOWFORGET for " + this);
             if (parentTile != null) {
                 parentTile.removeCovering(this);
             }
         }
-        zl = recalculate();
 
-        mapArea.zoomProperty().addListener(new WeakInvalidationListener(zl));
-        mapArea.translateXProperty().addListener(new WeakInvalidationListener(zl));
-        mapArea.translateYProperty().addListener(new WeakInvalidationListener(zl));
+        mapArea.zoomProperty().addListener(zl);
         calculatePosition();
     }
 
+    /**
+     * Bind this tile node to a zoomlevel, x-index and y-index without loading
+     * its image, e.g. while a failed tile waits for its retry. The tile reports
+     * {@link #failed()} until it is assigned again.
+     */
+    void assignFailed(final int zoom, final long i, final long j) {
+        this.myZoom = zoom;
+        this.i = i;
+        this.j = j;
+        this.deferred = true;
+
+        iv.setImage(temporaryImage);
+        if (debug) debugLabel.setText("[" + zoom + "-" + i + "-" + j + "]");
+
+        mapArea.zoomProperty().addListener(zl);
+        calculatePosition();
+    }
+
+    /**
+     * Detach this tile node from its zoomlevel and indices, so that it can be
+     * reused for another tile. Pending image requests are cancelled.
+     */
+    void release() {
+        cancel();
+        mapArea.zoomProperty().removeListener(zl);
+        if (imageWorker != null) {
+            imageWorker.stateProperty().removeListener(iwsl);
+            imageWorker.progressProperty().removeListener(iwpl);
+        }
+        loading.unbind();
+        loading.set(false);
+        imageWorker = null;
+        deferred = false;
+        if (parentTile != null) {
+            parentTile.removeCovering(this);
+            parentTile = null;
+        }
+        for (MapTile tile : covering) {
+            tile.parentTile = null;
+        }
+        covering.clear();
+        iv.setImage(temporaryImage);
+    }
+
     /**
      * Return the zoomLevel of this tile. This can not be changed, it is a fixed
      * property of the tile.
@@ -156,6 +221,13 @@ public class MapTile extends Region {
         return myZoom;
     }
 
+    /**
+     * Return the key of this tile within its zoom level
+     */
+    Long getKey() {
+        return i * (1 << myZoom) + j;
+    }
+
     /**
      * Check if the image in this tile is still loading
      *
@@ -166,6 +238,28 @@ public class MapTile extends Region {
         return loading.get();
     }
 
+    /**
+     * Cancel loading the image of this tile if it has not been started yet.
+     */
+    public void cancel() {
+        if (loading.get()) {
+            mapArea.tileTypeProperty().get().cancelImage(myZoom, i, j);
+            if (failed() && parentTile != null) {
+                parentTile.removeCovering(this);
+                parentTile = null;
+            }
+        }
+    }
+
+    /**
+     * Check if loading the image of this tile was cancelled or failed
+     *
+     * @return true if the tile will not get its image
+     */
+    public boolean failed() {
+        return deferred || imageWorker != null && (imageWorker.getState() == Worker.State.CANCELLED || imageWorker.getState() == Worker.State.FAILED);
+    }
+
     /**
      * Indicate that we are used to cover the loading tile. As soon as we are
      * covering for at least 1 tile, we are visible.
@@ -61,6 +61,19 @@ public interface MapTileType {
 
     Worker<Image> getImage(int zoom, long x, long y);
 
+    /**
+     * Loads the image in the background for later use, e.g. for tiles next to the
+     * visible area.
+     */
+    default void prefetchImage(int zoom, long x, long y) {
+    }
+
+    /**
+     * Cancels loading the image of a tile that is no longer shown.
+     */
+    default void cancelImage(int zoom, long x, long y) {
+    }
+
     void setFileStorageBase(String store);
 
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2014, 2015, OpenMapFX and LodgON
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of LodgON, OpenMapFX, any associated website, nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL LODGON BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.lodgon.openmapfx.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javafx.scene.image.Image;
+
+/** Read-only single file archive of map tiles. The index (zoom/x/y to offset and
+ * length, sorted by key) is memory mapped and searched binary, the tile images
+ * are read from the file at their offset. Archives are built by
+ * {@link TileArchiveBuilder}.
+ *
+ * <pre>
+ * header: int magic, int version, int count, long index offset
+ * data:   image bytes of all tiles
+ * index:  count x (long key, long offset, int length), ascending by key
+ * </pre>
+ */
+public class TileArchive implements Closeable {
+
+    static final int MAGIC = 0x4d544152; // "MTAR"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 20;
+    static final int ENTRY_SIZE = 20;
+
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer index;
+    private final int count;
+
+    public TileArchive(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a tile archive");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(file.getName() + ": unsupported archive version " + version);
+            }
+            this.count = header.getInt();
+            long offset = header.getLong();
+            if (offset + (long) count * ENTRY_SIZE > channel.size()) {
+                throw new IOException(file.getName() + " is truncated");
+            }
+            this.index = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) count * ENTRY_SIZE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static long key(int zoom, long x, long y) {
+        return ((long) zoom << 58) | (x << 29) | y;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getTileCount() {
+        return count;
+    }
+
+    public boolean contains(int zoom, long x, long y) {
+        return find(key(zoom, x, y)) >= 0;
+    }
+
+    /** Returns the encoded image of the tile or null if it is not in the archive.
+     */
+    public byte[] getBytes(int zoom, long x, long y) throws IOException {
+        int i = find(key(zoom, x, y));
+        if (i < 0) {
+            return null;
+        }
+        int pos = i * ENTRY_SIZE;
+        long offset = index.getLong(pos + 8);
+        int length = index.getInt(pos + 16);
+        ByteBuffer data = ByteBuffer.allocate(length);
+        readFully(data, offset);
+        return data.array();
+    }
+
+    /** Returns the decoded image of the tile.
+     *
+     * @throws IOException if the tile is not in the archive
+     */
+    public Image getImage(int zoom, long x, long y) throws IOException {
+        byte[] data = getBytes(zoom, x, y);
+        if (data == null) {
+            throw new IOException("Tile " + zoom + "/" + x + "/" + y + " not in " + file.getName());
+        }
+        return new Image(new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + ": " + count + " tiles";
+    }
+
+    private int find(long key) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = index.getLong(mid * ENTRY_SIZE);
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException(file.getName() + " is truncated");
+            }
+            position += n;
+        }
+    }
+}
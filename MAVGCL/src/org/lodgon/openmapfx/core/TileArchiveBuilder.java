@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2014, 2015, OpenMapFX and LodgON
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of LodgON, OpenMapFX, any associated website, nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL LODGON BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.lodgon.openmapfx.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Writes a {@link TileArchive} from an existing tile cache directory
+ * (zoom/x/y.png, as written by {@link TileType#setFileStorageBase(String)}) and/or
+ * by downloading all tiles of a bounding box for a range of zoom levels.
+ *
+ * <pre>
+ * TileArchiveBuilder &lt;archive&gt; -dir &lt;cache directory&gt;
+ * TileArchiveBuilder &lt;archive&gt; -bbox &lt;lat0&gt; &lt;lon0&gt; &lt;lat1&gt; &lt;lon1&gt; &lt;zoom min&gt; &lt;zoom max&gt; [url template]
+ * </pre>
+ *
+ * The URL template may contain {z}, {x}, {y} and {q} (Bing quadkey).
+ */
+public class TileArchiveBuilder implements Closeable {
+
+    private static final String DEFAULT_TEMPLATE = "http://t0.tiles.virtualearth.net/tiles/a{q}?g=1";
+
+    private final File file;
+    private final FileChannel channel;
+    private final Map<Long, long[]> entries = new TreeMap<>();
+
+    private long position = TileArchive.HEADER_SIZE;
+    private int failed = 0;
+
+    public TileArchiveBuilder(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /** Adds the encoded image of a tile. A tile added twice is replaced.
+     */
+    public void add(int zoom, long x, long y, byte[] data) throws IOException {
+        write(ByteBuffer.wrap(data), position);
+        entries.put(TileArchive.key(zoom, x, y), new long[] { position, data.length });
+        position += data.length;
+    }
+
+    public boolean contains(int zoom, long x, long y) {
+        return entries.containsKey(TileArchive.key(zoom, x, y));
+    }
+
+    /** Adds all tiles of a cache directory with the layout zoom/x/y.png.
+     *
+     * @return the number of tiles added
+     */
+    public int addDirectory(File dir) throws IOException {
+        int added = 0;
+        for (File z : list(dir)) {
+            for (File x : list(z)) {
+                for (File y : list(x)) {
+                    String name = y.getName();
+                    if (!name.endsWith(".png") || !isNumber(name.substring(0, name.length() - 4))) {
+                        continue;
+                    }
+                    add(Integer.parseInt(z.getName()), Long.parseLong(x.getName()),
+                            Long.parseLong(name.substring(0, name.length() - 4)), Files.readAllBytes(y.toPath()));
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    /** Downloads all tiles of the bounding box for the given zoom levels. Tiles already
+     * added, e.g. from a cache directory, are not downloaded again.
+     *
+     * @return the number of tiles added
+     */
+    public int addBoundingBox(TileType type, double lat0, double lon0, double lat1, double lon1,
+            int zoomMin, int zoomMax) {
+        int added = 0;
+        for (int zoom = zoomMin; zoom <= zoomMax; zoom++) {
+            long x0 = tileX(Math.min(lon0, lon1), zoom), x1 = tileX(Math.max(lon0, lon1), zoom);
+            long y0 = tileY(Math.max(lat0, lat1), zoom), y1 = tileY(Math.min(lat0, lat1), zoom);
+            System.out.println("Zoom " + zoom + ": " + (x1 - x0 + 1) * (y1 - y0 + 1) + " tiles");
+            for (long x = x0; x <= x1; x++) {
+                for (long y = y0; y <= y1; y++) {
+                    if (contains(zoom, x, y)) {
+                        continue;
+                    }
+                    try {
+                        add(zoom, x, y, download(type.calculateURL(zoom, x, y)));
+                        added++;
+                    } catch (IOException e) {
+                        failed++;
+                        System.err.println(getClass().getSimpleName() + ":" + e.getMessage());
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    public int getTileCount() {
+        return entries.size();
+    }
+
+    public int getFailedCount() {
+        return failed;
+    }
+
+    /** Writes the index and the header and closes the archive.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            ByteBuffer index = ByteBuffer.allocate(entries.size() * TileArchive.ENTRY_SIZE);
+            for (Map.Entry<Long, long[]> e : entries.entrySet()) {
+                index.putLong(e.getKey()).putLong(e.getValue()[0]).putInt((int) e.getValue()[1]);
+            }
+            index.flip();
+            write(index, position);
+
+            ByteBuffer header = ByteBuffer.allocate(TileArchive.HEADER_SIZE);
+            header.putInt(TileArchive.MAGIC).putInt(TileArchive.VERSION).putInt(entries.size()).putLong(position);
+            header.flip();
+            write(header, 0);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + ": " + entries.size() + " tiles, " + (position / 1024) + " kb";
+    }
+
+    static long tileX(double lon, int zoom) {
+        long n = 1L << zoom;
+        return clamp((long) Math.floor((lon + 180) / 360 * n), n);
+    }
+
+    static long tileY(double lat, int zoom) {
+        long n = 1L << zoom;
+        double r = Math.toRadians(lat);
+        return clamp((long) Math.floor((1 - Math.log(Math.tan(r) + 1 / Math.cos(r)) / Math.PI) / 2 * n), n);
+    }
+
+    private static long clamp(long v, long n) {
+        return Math.max(0, Math.min(n - 1, v));
+    }
+
+    private void write(ByteBuffer buffer, long pos) throws IOException {
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
+    }
+
+    private static byte[] download(String url) throws IOException {
+        try (InputStream in = TileLoader.openConnection(url).getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(32768);
+            byte[] buff = new byte[8192];
+            int len;
+            while ((len = in.read(buff)) > 0) {
+                out.write(buff, 0, len);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static File[] list(File dir) {
+        File[] files = dir.listFiles(f -> f.isDirectory() ? isNumber(f.getName()) : f.getName().endsWith(".png"));
+        if (files == null) {
+            return new File[0];
+        }
+        return files;
+    }
+
+    private static boolean isNumber(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static TileType fromTemplate(String template) {
+        return new TileType("Archive", null) {
+            @Override
+            protected String calculateURL(int zoom, long i, long j) {
+                StringBuilder q = new StringBuilder();
+                for (int b = zoom; b > 0; b--) {
+                    long mask = 1L << (b - 1);
+                    q.append((char) ('0' + ((i & mask) != 0 ? 1 : 0) + ((j & mask) != 0 ? 2 : 0)));
+                }
+                return template.replace("{z}", String.valueOf(zoom)).replace("{x}", String.valueOf(i))
+                        .replace("{y}", String.valueOf(j)).replace("{q}", q);
+            }
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || !(args[1].equals("-dir") || (args[1].equals("-bbox") && args.length >= 8))) {
+            System.out.println("TileArchiveBuilder <archive> -dir <cache directory>");
+            System.out.println("TileArchiveBuilder <archive> -bbox <lat0> <lon0> <lat1> <lon1> <zoom min> <zoom max> [url template]");
+            return;
+        }
+        long tms = System.currentTimeMillis();
+        try (TileArchiveBuilder builder = new TileArchiveBuilder(new File(args[0]))) {
+            if (args[1].equals("-dir")) {
+                builder.addDirectory(new File(args[2]));
+            } else {
+                builder.addBoundingBox(fromTemplate(args.length > 8 ? args[8] : DEFAULT_TEMPLATE),
+                        Double.parseDouble(args[2]), Double.parseDouble(args[3]),
+                        Double.parseDouble(args[4]), Double.parseDouble(args[5]),
+                        Integer.parseInt(args[6]), Integer.parseInt(args[7]));
+            }
+            System.out.println(builder + " written in " + (System.currentTimeMillis() - tms) + " ms, "
+                    + builder.getFailedCount() + " failed");
+        }
+    }
+}
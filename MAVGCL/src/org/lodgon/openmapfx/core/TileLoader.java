@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2014, 2015, OpenMapFX and LodgON
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of LodgON, OpenMapFX, any associated website, nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL LODGON BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.lodgon.openmapfx.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.scene.image.Image;
+
+/** Loads tile images on a fixed pool of worker threads. Requests for a tile that is
+ * already being loaded share one worker, requests for tiles no longer shown can be
+ * cancelled. Decoded images are kept in an LRU cache limited by their size in memory.
+ * Tiles around the viewport can be prefetched with lower priority into the cache.
+ */
+public class TileLoader {
+
+    private static final int THREADS = 4;
+    private static final long DEFAULT_BUDGET = 64 * 1024 * 1024;
+    private static final int TIMEOUT_MS = 5000;
+
+    private static TileLoader instance = null;
+
+    private final ThreadPoolExecutor pool;
+    private final Map<String, Job> pending = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Image> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private long budget = DEFAULT_BUDGET;
+    private long used = 0;
+
+    private final AtomicLong loaded = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong prefetched = new AtomicLong();
+
+    public static synchronized TileLoader getInstance() {
+        if (instance == null) {
+            instance = new TileLoader();
+        }
+        return instance;
+    }
+
+    private TileLoader() {
+        pool = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "TileLoader");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** Returns a worker delivering the image of the tile. If the image is cached, the
+     * worker has already succeeded when returned.
+     *
+     * @param key unique key of the tile, e.g. its URL
+     * @param url the URL to load the image from
+     * @param store the file to store downloaded images in, or null
+     */
+    public Worker<Image> load(String key, String url, File store) {
+        return load(key, () -> read(url, store));
+    }
+
+    /** Returns a worker delivering the image of the tile read from the given source.
+     */
+    public Worker<Image> load(String key, ImageSource source) {
+        Image image = getCached(key);
+        if (image != null) {
+            hits.incrementAndGet();
+            Task<Image> done = new Task<Image>() {
+                @Override
+                protected Image call() {
+                    return image;
+                }
+            };
+            done.run();
+            return done;
+        }
+        Job job = submit(key, source, false);
+        if (job.prefetch && pool.remove(job)) {
+            // a prefetched tile became visible: move it ahead of the other prefetches
+            job.prefetch = false;
+            pool.execute(job);
+        }
+        return job.task;
+    }
+
+    /** Loads the image of the tile into the cache with low priority.
+     */
+    public void prefetch(String key, String url, File store) {
+        prefetch(key, () -> read(url, store));
+    }
+
+    public void prefetch(String key, ImageSource source) {
+        if (getCached(key) == null && !pending.containsKey(key)) {
+            submit(key, source, true);
+        }
+    }
+
+    /** Cancels the request of a tile if it has not been started yet.
+     */
+    public void cancel(String key) {
+        Job job = pending.get(key);
+        if (job != null && pool.remove(job)) {
+            pending.remove(key, job);
+            job.task.cancel();
+            cancelled.incrementAndGet();
+        }
+    }
+
+    public synchronized void setBudget(long bytes) {
+        this.budget = bytes;
+        evict();
+    }
+
+    public synchronized long getUsedBytes() {
+        return used;
+    }
+
+    public int getQueueSize() {
+        return pool.getQueue().size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TileLoader: %d cached (%d kb), queued %d, loaded %d, hits %d, shared %d, cancelled %d, prefetched %d",
+                cache.size(), used / 1024, pool.getQueue().size(), loaded.get(), hits.get(), shared.get(),
+                cancelled.get(), prefetched.get());
+    }
+
+    private synchronized Job submit(String key, ImageSource source, boolean prefetch) {
+        Job job = pending.get(key);
+        if (job != null) {
+            shared.incrementAndGet();
+            return job;
+        }
+        job = new Job(key, source, prefetch);
+        pending.put(key, job);
+        pool.execute(job);
+        return job;
+    }
+
+    private synchronized Image getCached(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized void put(String key, Image image) {
+        Image old = cache.put(key, image);
+        if (old != null) {
+            used -= size(old);
+        }
+        used += size(image);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Image> i = cache.values().iterator();
+        while (used > budget && i.hasNext()) {
+            used -= size(i.next());
+            i.remove();
+        }
+    }
+
+    private static long size(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+
+    /**
+     * Open a connection to a tile server. A stalled connection must not block
+     * a worker for long.
+     */
+    static URLConnection openConnection(String url) throws IOException {
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        return connection;
+    }
+
+    private Image read(String url, File store) throws IOException {
+        if (!url.startsWith("http")) {
+            return new Image(url, false);
+        }
+        byte[] data;
+        try (InputStream in = openConnection(url).getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(32768);
+            byte[] buff = new byte[8192];
+            int len;
+            while ((len = in.read(buff)) > 0) {
+                out.write(buff, 0, len);
+            }
+            data = out.toByteArray();
+        }
+        if (store != null) {
+            // the downloaded bytes are stored and decoded, no second download for the cache
+            store.getParentFile().mkdirs();
+            Files.write(store.toPath(), data);
+        }
+        return new Image(new ByteArrayInputStream(data));
+    }
+
+    /** Supplies the decoded image of a tile, called in a worker thread.
+     */
+    public interface ImageSource {
+        Image read() throws IOException;
+    }
+
+    private class Job implements Runnable, Comparable<Job> {
+
+        final String key;
+        final ImageSource source;
+        final long seq = sequence.incrementAndGet();
+        volatile boolean prefetch;
+        final Task<Image> task;
+
+        Job(String key, ImageSource source, boolean prefetch) {
+            this.key = key;
+            this.source = source;
+            this.prefetch = prefetch;
+            this.task = new Task<Image>() {
+                @Override
+                protected Image call() throws Exception {
+                    Image image = source.read();
+                    if (image.isError()) {
+                        throw new IOException("Cannot decode " + Job.this.key);
+                    }
+                    put(Job.this.key, image);
+                    loaded.incrementAndGet();
+                    if (Job.this.prefetch) {
+                        prefetched.incrementAndGet();
+                    }
+                    return image;
+                }
+            };
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                pending.remove(key, this);
+            }
+        }
+
+        // visible tiles first, most recent requests first
+        @Override
+        public int compareTo(Job o) {
+            if (prefetch != o.prefetch) {
+                return prefetch ? 1 : -1;
+            }
+            return Long.compare(o.seq, seq);
+        }
+    }
+}
@@ -27,20 +27,7 @@
 package org.lodgon.openmapfx.core;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.TimeUnit;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import javafx.concurrent.Task;
+
 import javafx.concurrent.Worker;
 import javafx.scene.image.Image;
 
@@ -58,7 +45,9 @@ public class TileType implements MapTileType {
     private final String baseURL;
     private final String attributionNotice;
 
-    private CacheThread cacheThread = null;
+    private String basePath = null;
+
+    private final TileLoader loader = TileLoader.getInstance();
 
     public TileType(String typeName, String baseURL) {
         this(typeName, baseURL,"");
@@ -71,13 +60,7 @@ public class TileType implements MapTileType {
     }
 
     public void setFileStorageBase(String store) {
-        if (cacheThread != null) {
-            cacheThread.deactivate();
-            cacheThread = null;
-        }
-
-        this.cacheThread = new CacheThread(store);
-        this.cacheThread.start();
+        this.basePath = store;
     }
 
     /** The display name for this type of tile, for use in the user interface.
@@ -100,16 +83,19 @@ public class TileType implements MapTileType {
     }
 
     public Worker<Image> getImage(int zoom, long i, long j) {
-        Task<Image> worker = new Task<Image>() {
-            @Override
-            protected Image call() throws Exception {
-                String imageUrl = getImageURL(zoom, i, j);
-                boolean bg = imageUrl.startsWith("http");
-                return new Image(getImageURL(zoom, i, j), bg);
-            }
-        };
-        new Thread(worker).start();
-        return worker;
+        String url = calculateURL(zoom, i, j);
+        return loader.load(url, getImageURL(zoom, i, j), getStoreFile(zoom, i, j));
+    }
+
+    @Override
+    public void prefetchImage(int zoom, long i, long j) {
+        String url = calculateURL(zoom, i, j);
+        loader.prefetch(url, getImageURL(zoom, i, j), getStoreFile(zoom, i, j));
+    }
+
+    @Override
+    public void cancelImage(int zoom, long i, long j) {
+        loader.cancel(calculateURL(zoom, i, j));
     }
 
     protected String getImageURL(int zoom, long i, long j) {
@@ -117,21 +103,27 @@ public class TileType implements MapTileType {
         if (cached != null) {
             return cached;
         } else {
-            String url = calculateURL(zoom, i, j);
-            if (cacheThread != null) {
-                cacheThread.cacheImage(url, zoom, i, j);
-            }
-            return url;
+            return calculateURL(zoom, i, j);
         }
     }
 
     private String getFileCached(int zoom, long i, long j) {
-        if (cacheThread != null) {
-            return cacheThread.getCachedFile(zoom, i, j);
+        File candidate = getStoreFile(zoom, i, j);
+        if (candidate != null && candidate.exists()) {
+            return candidate.toURI().toString();
         }
         return null;
     }
 
+    private File getStoreFile(int zoom, long i, long j) {
+        if (basePath == null) {
+            return null;
+        }
+        String enc = File.separator + zoom + File.separator + i + File.separator + j + ".png";
+        if (debug) System.out.println("looking for " + enc + " in " + basePath);
+        return new File(basePath, enc);
+    }
+
     protected String calculateURL(int zoom, long i, long j) {
         return getBaseURL() + zoom + "/" + i + "/" + j + ".png";
     }
@@ -146,86 +138,4 @@ public class TileType implements MapTileType {
         return getTypeName();
     }
 
-    private static class CacheThread extends Thread {
-
-        private boolean active = true;
-        private String basePath;
-        private final Set<String> offered = new HashSet<>();
-        private final BlockingDeque<String> deque = new LinkedBlockingDeque<>();
-
-        public CacheThread(String basePath) {
-            this.basePath = basePath;
-            setDaemon(true);
-            setName("TileType CacheImagesThread");
-        }
-
-        public void deactivate() {
-            this.active = false;
-        }
-
-        public void run() {
-            while (active) {
-                try {
-                    String key = deque.pollFirst(10, TimeUnit.SECONDS);
-                    if (key != null) {
-                        String url = key.substring(0, key.lastIndexOf(";"));
-                        String[] split = key.substring(key.lastIndexOf(";") + 1).split("/");
-                        int zoom = Integer.parseInt(split[0]);
-                        long i = Long.parseLong(split[1]);
-                        long j = Long.parseLong(split[2]);
-                        doCache(url, zoom, i, j);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-            if (debug) System.out.println("Thread Has Ended!!!");
-        }
-
-        public void cacheImage(String url, int zoom, long i, long j) {
-            String key = url + ";" + zoom + "/" + i + "/" + j;
-            synchronized (offered) {
-                if (!offered.contains(key)) {
-                    offered.add(key);
-                    deque.offerFirst(key);
-                }
-            }
-        }
-
-        public String getCachedFile(int zoom, long i, long j) {
-            String enc = File.separator + zoom + File.separator + i + File.separator + j + ".png";
-            if (debug) System.out.println("looking for " + enc + " in " + basePath);
-            File candidate = new File(basePath, enc);
-            if (candidate.exists()) {
-                return candidate.toURI().toString();
-            }
-            return null;
-        }
-
-        private void doCache(String urlString, int zoom, long i, long j) {
-            try {
-                URL url = new URL(urlString);
-                if (debug) System.out.println("Loading tile from URL " + urlString);
-                try (InputStream inputStream = url.openConnection().getInputStream()) {
-                    String enc = File.separator + zoom + File.separator + i + File.separator + j + ".png";
-                    File candidate = new File(basePath, enc);
-                    candidate.getParentFile().mkdirs();
-                    try (FileOutputStream fos = new FileOutputStream(candidate)) {
-                        byte[] buff = new byte[4096];
-                        int len = inputStream.read(buff);
-                        while (len > 0) {
-                            fos.write(buff, 0, len);
-                            len = inputStream.read(buff);
-                        }
-                    }
-                    if (debug) System.out.println("Written tile from URL " + urlString + " to " + candidate);
-                }
-            } catch (MalformedURLException ex) {
-                Logger.getLogger(TileType.class.getName()).log(Level.SEVERE, null, ex);
-            } catch (IOException ex) {
-                Logger.getLogger(TileType.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        }
-    }
-
 }